@@ -0,0 +1,36 @@
+package com.casino.backend.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs the JMH suite once per thread count, since JMH cannot parameterize the thread count itself,
+ * and writes one JSON result file per run. The GC profiler is always on, so every result also reports
+ * the bytes allocated per operation ({@code gc.alloc.rate.norm}).
+ * <p>
+ * Arguments: output directory, comma separated thread counts, benchmark include pattern.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        var outputDirectory = Files.createDirectories(Path.of(args[0]));
+        var include = args.length > 2 ? args[2] : ".*";
+        for (var threads : args[1].split(",")) {
+            var options = new OptionsBuilder()
+                    .include(include)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(outputDirectory.resolve("results-threads-" + threads.trim() + ".json").toString())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
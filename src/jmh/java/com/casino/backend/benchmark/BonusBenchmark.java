@@ -0,0 +1,100 @@
+package com.casino.backend.benchmark;
+
+import com.casino.backend.bonus.BonusWallet;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.Player;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.money.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bonus bookkeeping of a bet, as {@code updateBalance} runs it after the balance was changed. {@code noBonus} is
+ * a player without a bonus, which costs the {@link BonusWallet#isTracked} check, and {@code activeBonus} a player
+ * whose bonus is being wagered. {@code recomputedFromHistory} derives the split from the player's last
+ * {@value #HISTORY} transactions instead, which is what the incremental update avoids.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BonusBenchmark {
+
+    private static final int PLAYERS = 1000;
+    private static final int HISTORY = 1000;
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000.00");
+    // Large enough that the wagering requirement is never met during a run
+    private static final long BONUS = Money.toMinorUnits(new BigDecimal("100000000.00"));
+
+    private final BonusWallet bonusWallet = new BonusWallet(new WalletProperties());
+    private final TransactionType[] types = {TransactionType.WAGER, TransactionType.WIN};
+    private final long[] amounts = {1_250, 99};
+    private final Player[] players = new Player[PLAYERS];
+    private final Player[] bonusPlayers = new Player[PLAYERS];
+    private final TransactionType[] historyTypes = new TransactionType[HISTORY];
+    private final long[] historyAmounts = new long[HISTORY];
+
+    @Setup
+    public void prepare() {
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = new Player(i, "player" + i, OPENING_BALANCE, 0L, null, null, null, null);
+            bonusPlayers[i] = new Player(i, "bonus_player" + i, OPENING_BALANCE, 0L, null, null, null, null);
+            bonusWallet.apply(bonusPlayers[i], TransactionType.BONUS_GRANT, BONUS);
+        }
+        var random = ThreadLocalRandom.current();
+        for (int i = 0; i < HISTORY; i++) {
+            historyTypes[i] = types[random.nextInt(types.length)];
+            historyAmounts[i] = amounts[random.nextInt(amounts.length)];
+        }
+    }
+
+    @Benchmark
+    public Player noBonus() {
+        return bet(players);
+    }
+
+    @Benchmark
+    public Player activeBonus() {
+        return bet(bonusPlayers);
+    }
+
+    @Benchmark
+    public Player recomputedFromHistory() {
+        var player = new Player(0, "player", OPENING_BALANCE, 0L, null, null, null, null);
+        bonusWallet.apply(player, TransactionType.BONUS_GRANT, BONUS);
+        for (int i = 0; i < HISTORY; i++) {
+            move(player, historyTypes[i], historyAmounts[i]);
+        }
+        return player;
+    }
+
+    private Player bet(Player[] players) {
+        var random = ThreadLocalRandom.current();
+        var player = players[random.nextInt(PLAYERS)];
+        move(player, types[random.nextInt(types.length)], amounts[random.nextInt(amounts.length)]);
+        return player;
+    }
+
+    private void move(Player player, TransactionType type, long amount) {
+        var balance = Money.toMinorUnits(player.getBalance());
+        balance = type == TransactionType.WAGER ? Money.subtract(balance, amount) : Money.add(balance, amount);
+        player.setBalance(Money.toDecimal(balance));
+        if (bonusWallet.isTracked(player, type)) {
+            bonusWallet.apply(player, type, amount);
+        }
+    }
+}
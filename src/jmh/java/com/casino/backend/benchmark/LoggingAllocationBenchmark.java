@@ -0,0 +1,89 @@
+package com.casino.backend.benchmark;
+
+import com.casino.backend.CasinoBackendSystemApplication;
+import com.casino.backend.entity.Player;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.response.Last10TransactionResponse;
+import com.casino.backend.response.UpdateBalanceResponse;
+import com.casino.backend.service.PlayerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The wallet hot paths with the logging configuration of a deployed instance: the application loggers stay at INFO
+ * and write to a log file instead of the console. Compare {@code gc.alloc.rate.norm} (bytes allocated per operation)
+ * and the average time with {@link WalletBenchmark}, which silences the application loggers, to see what logging costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingAllocationBenchmark {
+
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000.00");
+    private static final int PLAYERS = 100;
+
+    private ConfigurableApplicationContext context;
+    private PlayerService playerService;
+    private Player[] players;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = new SpringApplicationBuilder(CasinoBackendSystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:logging_benchmark",
+                        "logging.file.name=target/jmh/logging-benchmark.log",
+                        "logging.threshold.console=OFF")
+                .run();
+        playerService = context.getBean(PlayerService.class);
+        var playerRepository = context.getBean(PlayerRepository.class);
+
+        players = new Player[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = playerRepository.save(Player.builder().username("logging_benchmark_" + i).balance(OPENING_BALANCE).build());
+            for (int j = 0; j < 10; j++) {
+                playerService.updateBalance(players[i].getPlayerId(), new UpdateBalanceRequest(BigDecimal.ONE, TransactionType.WIN));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public UpdateBalanceResponse updateBalance() {
+        var random = ThreadLocalRandom.current();
+        var transactionType = random.nextBoolean() ? TransactionType.WIN : TransactionType.WAGER;
+        return playerService.updateBalance(players[random.nextInt(PLAYERS)].getPlayerId(), new UpdateBalanceRequest(BigDecimal.ONE, transactionType));
+    }
+
+    @Benchmark
+    public List<Last10TransactionResponse> getLast10Transactions() {
+        return playerService.getLast10Transactions(players[ThreadLocalRandom.current().nextInt(PLAYERS)]);
+    }
+}
@@ -0,0 +1,90 @@
+package com.casino.backend.benchmark;
+
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.money.Money;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.response.UpdateBalanceResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-memory part of {@code updateBalance}, as the wallet engine runs it: validate the amount, check a wager
+ * against the balance, apply it and answer with the new balance. Once with {@link BigDecimal} balances, as the wallet
+ * kept them before, and once with balances in minor units, converting only the request amount and the answered
+ * balance. Compare throughput and {@code gc.alloc.rate.norm}. {@link WalletBenchmark} measures the whole call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private static final int PLAYERS = 1000;
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000.00");
+
+    private final UpdateBalanceRequest[] requests = {
+            new UpdateBalanceRequest(new BigDecimal("12.50"), TransactionType.WAGER),
+            new UpdateBalanceRequest(new BigDecimal("12.50"), TransactionType.WIN),
+            new UpdateBalanceRequest(new BigDecimal("0.99"), TransactionType.WAGER),
+            new UpdateBalanceRequest(new BigDecimal("0.99"), TransactionType.WIN)};
+    private final BigDecimal[] decimalBalances = new BigDecimal[PLAYERS];
+    private final long[] minorUnitBalances = new long[PLAYERS];
+
+    @Setup
+    public void prepare() {
+        Arrays.fill(decimalBalances, OPENING_BALANCE);
+        Arrays.fill(minorUnitBalances, Money.toMinorUnits(OPENING_BALANCE));
+    }
+
+    @Benchmark
+    public UpdateBalanceResponse bigDecimal() {
+        var random = ThreadLocalRandom.current();
+        var player = random.nextInt(PLAYERS);
+        var request = requests[random.nextInt(requests.length)];
+        if (request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException();
+        }
+        var balance = decimalBalances[player];
+        var wager = TransactionType.WAGER.equals(request.getTransactionType());
+        if (wager && balance.compareTo(request.getAmount()) < 0) {
+            throw new IllegalStateException();
+        }
+        balance = wager ? balance.subtract(request.getAmount()) : balance.add(request.getAmount());
+        decimalBalances[player] = balance;
+        return new UpdateBalanceResponse(player, balance);
+    }
+
+    @Benchmark
+    public UpdateBalanceResponse minorUnits() {
+        var random = ThreadLocalRandom.current();
+        var player = random.nextInt(PLAYERS);
+        var request = requests[random.nextInt(requests.length)];
+        var amount = Money.toMinorUnits(request.getAmount());
+        if (amount <= 0) {
+            throw new IllegalArgumentException();
+        }
+        var balance = minorUnitBalances[player];
+        var wager = TransactionType.WAGER.equals(request.getTransactionType());
+        if (wager && balance < amount) {
+            throw new IllegalStateException();
+        }
+        balance = wager ? Money.subtract(balance, amount) : Money.add(balance, amount);
+        minorUnitBalances[player] = balance;
+        return new UpdateBalanceResponse(player, Money.toDecimal(balance));
+    }
+}
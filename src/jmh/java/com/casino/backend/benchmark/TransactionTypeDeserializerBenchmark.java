@@ -0,0 +1,48 @@
+package com.casino.backend.benchmark;
+
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading an update request body, which goes through the case-insensitive TransactionType deserializer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionTypeDeserializerBenchmark {
+
+    @Param({"WAGER", "win"})
+    public String transactionType;
+
+    private ObjectReader reader;
+    private byte[] body;
+
+    @Setup
+    public void prepare() {
+        reader = new ObjectMapper().readerFor(UpdateBalanceRequest.class);
+        body = ("{\"amount\":12.50,\"transactionType\":\"" + transactionType + "\"}").getBytes();
+    }
+
+    @Benchmark
+    public UpdateBalanceRequest readUpdateRequest() throws IOException {
+        return reader.readValue(body);
+    }
+}
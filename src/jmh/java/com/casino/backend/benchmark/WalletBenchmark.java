@@ -0,0 +1,102 @@
+package com.casino.backend.benchmark;
+
+import com.casino.backend.CasinoBackendSystemApplication;
+import com.casino.backend.entity.Player;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.response.BalanceResponse;
+import com.casino.backend.response.Last10TransactionResponse;
+import com.casino.backend.response.UpdateBalanceResponse;
+import com.casino.backend.service.PlayerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The wallet hot paths against a real application context and H2 database. With one player every thread
+ * contends for the same lock and row, with many players the load is spread like in production.
+ * Throughput and sampled latency (percentiles) are reported for each benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WalletBenchmark {
+
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000.00");
+    private static final int TRANSACTIONS_PER_PLAYER = 10;
+
+    @Param({"1", "1000"})
+    public int players;
+
+    private ConfigurableApplicationContext context;
+    private PlayerService playerService;
+    private int[] playerIds;
+    private Player[] playerEntities;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = new SpringApplicationBuilder(CasinoBackendSystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:wallet_benchmark",
+                        "logging.level.com.casino.backend=WARN",
+                        "logging.level.org.hibernate=WARN")
+                .run();
+        playerService = context.getBean(PlayerService.class);
+        var playerRepository = context.getBean(PlayerRepository.class);
+
+        playerIds = new int[players];
+        playerEntities = new Player[players];
+        for (int i = 0; i < players; i++) {
+            playerEntities[i] = playerRepository.save(Player.builder().username("benchmark_" + i).balance(OPENING_BALANCE).build());
+            playerIds[i] = playerEntities[i].getPlayerId();
+            for (int j = 0; j < TRANSACTIONS_PER_PLAYER; j++) {
+                playerService.updateBalance(playerIds[i], new UpdateBalanceRequest(BigDecimal.ONE, TransactionType.WIN));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public UpdateBalanceResponse updateBalance() {
+        var random = ThreadLocalRandom.current();
+        var transactionType = random.nextBoolean() ? TransactionType.WIN : TransactionType.WAGER;
+        return playerService.updateBalance(playerIds[random.nextInt(players)], new UpdateBalanceRequest(BigDecimal.ONE, transactionType));
+    }
+
+    @Benchmark
+    public BalanceResponse getBalance() {
+        return playerService.getBalance(playerIds[ThreadLocalRandom.current().nextInt(players)]);
+    }
+
+    @Benchmark
+    public List<Last10TransactionResponse> getLast10Transactions() {
+        return playerService.getLast10Transactions(playerEntities[ThreadLocalRandom.current().nextInt(players)]);
+    }
+}
@@ -0,0 +1,96 @@
+package com.casino.backend.bonus;
+
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.Player;
+import com.casino.backend.enums.BonusWagerOrder;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.money.Money;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Splits a player's balance into cash and bonus money and tracks the wagering requirement of the bonus.
+ * The split is kept on the player and updated by every movement from its previous state, so a bet costs a few
+ * arithmetic operations and never reads the player's transactions.
+ * <p>
+ * {@code players.balance} stays the total, which is what the guarded updates check a wager against, and the bonus
+ * is the part of it in {@code bonus_balance}. Each call is made after the movement was applied to the balance.
+ * <ul>
+ *     <li>A wager spends cash or bonus money first, as {@code casino.wallet.bonus.wager-order} says, and counts in full
+ *     towards the wagering requirement. Once the requirement is met, what is left of the bonus becomes cash.</li>
+ *     <li>A win is split in the proportion of bonus money to cash the balance had before it.</li>
+ *     <li>A grant adds to the bonus and raises the requirement by the amount times the wagering multiplier.</li>
+ * </ul>
+ * A player whose bonus is used up, spent or released, has no bonus state left, so {@link #isTracked} is false for
+ * the vast majority of bets.
+ */
+@Component
+public class BonusWallet {
+
+    private final WalletProperties properties;
+
+    public BonusWallet(WalletProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @return whether a movement of this type changes the player's bonus state
+     */
+    public boolean isTracked(Player player, TransactionType transactionType) {
+        return transactionType == TransactionType.BONUS_GRANT || player.getBonusBalance() != null;
+    }
+
+    /**
+     * Updates the player's bonus state after a movement, the player's balance must already include it.
+     */
+    public void apply(Player player, TransactionType transactionType, long amount) {
+        if (!isTracked(player, transactionType)) {
+            return;
+        }
+        var balance = Money.toMinorUnits(player.getBalance());
+        var bonus = minorUnits(player.getBonusBalance());
+        var required = minorUnits(player.getWageringRequired());
+        var progress = minorUnits(player.getWageringProgress());
+
+        switch (transactionType) {
+            case WAGER -> {
+                bonus = properties.getBonus().getWagerOrder() == BonusWagerOrder.BONUS_FIRST
+                        ? Math.max(bonus - amount, 0)
+                        : bonus;
+                progress = Money.add(progress, amount);
+                if (progress >= required) {
+                    // The requirement is met, the rest of the bonus is released as cash
+                    bonus = 0;
+                }
+            }
+            case WIN -> {
+                var balanceBefore = balance - amount;
+                if (balanceBefore > 0) {
+                    bonus = Money.add(bonus, Math.multiplyExact(amount, Math.min(bonus, balanceBefore)) / balanceBefore);
+                }
+            }
+            case BONUS_GRANT -> {
+                bonus = Money.add(bonus, amount);
+                required = Money.add(required, Math.multiplyExact(amount, (long) properties.getBonus().getWageringMultiplier()));
+            }
+        }
+        // When cash goes first, the bonus only shrinks once the balance falls below it. This also covers a balance
+        // lowered by a writer that keeps no split, such as the wallet engine.
+        bonus = Math.min(bonus, balance);
+
+        if (bonus == 0) {
+            player.setBonusBalance(null);
+            player.setWageringRequired(null);
+            player.setWageringProgress(null);
+        } else {
+            player.setBonusBalance(Money.toDecimal(bonus));
+            player.setWageringRequired(Money.toDecimal(required));
+            player.setWageringProgress(Money.toDecimal(progress));
+        }
+    }
+
+    private static long minorUnits(BigDecimal amount) {
+        return amount == null ? 0 : Money.toMinorUnits(amount);
+    }
+}
@@ -1,23 +1,29 @@
 package com.casino.backend.bootstrap;
 
+import com.casino.backend.config.WalletProperties;
 import com.casino.backend.entity.Player;
 import com.casino.backend.entity.Transaction;
 import com.casino.backend.enums.TransactionType;
 import com.casino.backend.repository.PlayerRepository;
 import com.casino.backend.repository.TransactionRepository;
+import com.casino.backend.shard.PlayerDirectory;
+import com.casino.backend.shard.ShardRouter;
 import lombok.AllArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Random;
 
 @AllArgsConstructor
+@Profile("!reactive")
 @Component
 public class DataLoader implements CommandLineRunner {
 
@@ -29,35 +35,65 @@ public class DataLoader implements CommandLineRunner {
     @Autowired
     private TransactionRepository transactionRepository;
 
+    @Autowired
+    private WalletProperties walletProperties;
+
+    @Autowired
+    private PlayerDirectory playerDirectory;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
     @Override
     public void run(String... args) {
+        // A persistent database keeps the sample data of an earlier start
+        if (playerDirectory.findPlayerId("test_player").isPresent()) {
+            logger.info("Sample data already present");
+            return;
+        }
+
         // Create a single player
         var newPlayer = new Player(
                 null,
                 "test_player",
-                new BigDecimal("1000.00")
-
+                new BigDecimal("1000.00"),
+                null,
+                null,
+                null,
+                null,
+                null
         );
 
-        var savedPlayer = playerRepository.save(newPlayer);
+        var savedPlayer = playerDirectory.create(newPlayer);
         logger.info("saved player: {}", savedPlayer);
+        shardRouter.onShardOf(savedPlayer.getPlayerId(), () -> {
+            saveTransactions(savedPlayer);
+            return null;
+        });
+    }
 
+    private void saveTransactions(Player savedPlayer) {
         // Create 11 transactions
         Random random = new Random();
+        var balance = savedPlayer.getBalance();
+        var transactions = new ArrayList<Transaction>();
         for (int i = 0; i < 11; i++) {
             var transaction = new Transaction();
             transaction.setPlayer(savedPlayer);
             transaction.setAmount(BigDecimal.valueOf(random.nextDouble() * 100).setScale(2, RoundingMode.HALF_UP));
+            transaction.setCurrency(walletProperties.getDefaultCurrency());
             transaction.setTransactionType(random.nextBoolean() ? TransactionType.WAGER : TransactionType.WIN);
             transaction.setTimestamp(LocalDateTime.now().minusDays(random.nextInt(30)));
-            transactionRepository.save(transaction);
-            logger.info("saved transaction: {}", transaction);
-            var newBalance = TransactionType.WAGER.equals(transaction.getTransactionType())
-                    ? newPlayer.getBalance().subtract(transaction.getAmount())
-                    : newPlayer.getBalance().add(transaction.getAmount());
-            newPlayer.setBalance(newBalance);
-            playerRepository.save(newPlayer);
-
+            balance = TransactionType.WAGER.equals(transaction.getTransactionType())
+                    ? balance.subtract(transaction.getAmount())
+                    : balance.add(transaction.getAmount());
+            transaction.setBalanceAfter(balance);
+            transactions.add(transaction);
         }
+        // One transaction and one JDBC batch for all rows, instead of a round trip per row
+        transactionRepository.saveAll(transactions);
+        logger.info("saved {} transactions for player: {}", transactions.size(), savedPlayer.getPlayerId());
+        savedPlayer.setBalance(balance);
+        playerRepository.save(savedPlayer);
     }
 }
@@ -0,0 +1,170 @@
+package com.casino.backend.cache;
+
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.Player;
+import com.casino.backend.entity.PlayerBalance;
+import com.casino.backend.entity.PlayerBalanceId;
+import com.casino.backend.money.Money;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Keeps the balances of recently active players in memory, bounded by size (Caffeine's frequency-based eviction).
+ * There is one entry per player and currency, so updates in different currencies never write the same entry.
+ * Every balance change writes through once its database transaction has committed. Each entry carries the balance's
+ * version, so a write that arrives late never replaces a newer balance. Balances are held in minor units, and only
+ * turned into a decimal when one is read.
+ * <p>
+ * Only changes made by this instance are seen: when several instances update the same players, reads may be stale.
+ */
+@Component
+public class BalanceCache implements MeterBinder {
+
+    /**
+     * The version of a balance the player does not have yet. It reads as zero, and any stored balance replaces it.
+     */
+    private static final long NOT_OPENED = -1;
+
+    private final WalletProperties properties;
+    private final Cache<PlayerBalanceId, CachedBalance> cache;
+
+    public BalanceCache(WalletProperties properties) {
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getBalanceCache().getSize())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * The balances are loaded outside the cache's internal lock. A loader running inside {@code Cache.get} would hold a
+     * {@code synchronized} map bin during the database read, pinning the carrier thread when requests run on virtual threads.
+     * Two concurrent misses for the same player may both load it, the version check in {@link #put} keeps the newer one.
+     *
+     * @param loader loads all balances of the player on a miss, it may throw to signal an unknown player
+     * @return the balance in every accepted currency, the default currency first
+     */
+    public Map<String, BigDecimal> get(Integer playerId, Function<Integer, List<PlayerBalance>> loader) {
+        var cached = getIfPresent(playerId);
+        if (cached != null) {
+            return cached;
+        }
+        var loaded = loader.apply(playerId);
+        putAll(playerId, loaded);
+        var balances = zeroBalances();
+        for (var balance : loaded) {
+            balances.replace(balance.getCurrency(), balance.getBalance());
+        }
+        return balances;
+    }
+
+    /**
+     * @return the balance in every accepted currency, or {@code null} when any of them is missing
+     */
+    public Map<String, BigDecimal> getIfPresent(Integer playerId) {
+        var currencies = properties.acceptedCurrencies();
+        var balances = new LinkedHashMap<String, BigDecimal>(currencies.size() * 2);
+        for (var currency : currencies) {
+            var cached = cache.getIfPresent(new PlayerBalanceId(playerId, currency));
+            if (cached == null) {
+                return null;
+            }
+            balances.put(currency, Money.toDecimal(cached.balance()));
+        }
+        return balances;
+    }
+
+    /**
+     * Writes all balances of a player, as loaded in one read, and a zero balance for every accepted currency the player
+     * has none in. Callers must only pass committed state.
+     */
+    public void putAll(Integer playerId, List<PlayerBalance> balances) {
+        var opened = new LinkedHashMap<String, PlayerBalance>();
+        for (var balance : balances) {
+            opened.put(balance.getCurrency(), balance);
+        }
+        for (var currency : properties.acceptedCurrencies()) {
+            var balance = opened.get(currency);
+            put(new PlayerBalanceId(playerId, currency), balance == null ? new CachedBalance(NOT_OPENED, 0) : CachedBalance.of(balance.getVersion(), balance.getBalance()));
+        }
+    }
+
+    /**
+     * Writes the player's balance in the default currency through after the current database transaction commits,
+     * or immediately when there is none. Nothing is written when the transaction rolls back.
+     */
+    public void putAfterCommit(Player player) {
+        // The version is read when the write runs, after the flush on commit has incremented it
+        afterCommit(() -> put(player));
+    }
+
+    /**
+     * Like {@link #putAfterCommit(Player)}, for a balance in another currency.
+     */
+    public void putAfterCommit(PlayerBalance balance) {
+        afterCommit(() -> put(balance));
+    }
+
+    /**
+     * Writes the player's balance in the default currency now. Callers must only pass committed state.
+     */
+    public void put(Player player) {
+        put(new PlayerBalanceId(player.getPlayerId(), properties.getDefaultCurrency()), CachedBalance.of(player.getVersion(), player.getBalance()));
+    }
+
+    /**
+     * Writes a balance in another currency now. Callers must only pass committed state.
+     */
+    public void put(PlayerBalance balance) {
+        put(new PlayerBalanceId(balance.getPlayerId(), balance.getCurrency()), CachedBalance.of(balance.getVersion(), balance.getBalance()));
+    }
+
+    private void put(PlayerBalanceId balanceId, CachedBalance balance) {
+        cache.asMap().merge(balanceId, balance, (cached, updated) -> updated.version() >= cached.version() ? updated : cached);
+    }
+
+    private static void afterCommit(Runnable write) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                write.run();
+            }
+        });
+    }
+
+    private LinkedHashMap<String, BigDecimal> zeroBalances() {
+        var balances = new LinkedHashMap<String, BigDecimal>();
+        for (var currency : properties.acceptedCurrencies()) {
+            balances.put(currency, Money.toDecimal(0));
+        }
+        return balances;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "balance");
+    }
+
+    private record CachedBalance(long version, long balance) {
+
+        static CachedBalance of(Long version, BigDecimal balance) {
+            return new CachedBalance(version == null ? 0 : version, Money.toMinorUnits(balance));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.casino.backend.cache;
+
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.exception.InvalidTransactionException;
+import com.casino.backend.response.UpdateBalanceResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+/**
+ * Remembers the outcome of recent keyed balance updates, bounded by size and time to live.
+ * Retries spike when the system is already overloaded, so a hit is a single map lookup that returns the stored
+ * response as is, without allocating and without taking a player lock or touching the database.
+ */
+@Component
+public class IdempotencyCache implements MeterBinder {
+
+    private final Cache<String, RecordedUpdate> cache;
+
+    public IdempotencyCache(WalletProperties properties) {
+        var idempotency = properties.getIdempotency();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(idempotency.getCacheSize())
+                .expireAfterWrite(idempotency.getCacheTtl())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return the original response, or {@code null} when the key is absent or unknown
+     * @throws InvalidTransactionException when the key was already used for another player
+     */
+    public UpdateBalanceResponse find(Integer playerId, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return null;
+        }
+        var recorded = cache.getIfPresent(idempotencyKey);
+        if (recorded == null) {
+            return null;
+        }
+        if (recorded.playerId() != playerId.intValue()) {
+            throw new InvalidTransactionException("The idempotency key you provided has already been used for another player. Please use a new key.");
+        }
+        return recorded.response();
+    }
+
+    public void put(Integer playerId, String idempotencyKey, UpdateBalanceResponse response) {
+        if (idempotencyKey != null) {
+            cache.put(idempotencyKey, new RecordedUpdate(playerId, response));
+        }
+    }
+
+    /**
+     * Forgets every outcome, as a restart does.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "idempotency");
+    }
+
+    private record RecordedUpdate(int playerId, UpdateBalanceResponse response) {
+    }
+}
@@ -0,0 +1,184 @@
+package com.casino.backend.cache;
+
+import com.casino.backend.config.HistoryProperties;
+import com.casino.backend.entity.Transaction;
+import com.casino.backend.response.Last10TransactionResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keeps the {@value #CAPACITY} most recent transactions of recently active players in memory, newest first, so the
+ * last 10 transactions are answered without a query or a sort. Each player has a fixed size ring buffer, so a player
+ * never holds more than {@value #CAPACITY} transactions. The number of buffers is capped too, Caffeine drops the
+ * buffers of the players it sees read least often.
+ * <p>
+ * Every transaction the ledger stores is added once it is committed, which is also what creates a player's buffer.
+ * A buffer only knows the transactions added since it was created, so the first read of a player loads the latest
+ * ones from the database and merges them in. A transaction committed while they load is in one or both, and is kept once.
+ * <p>
+ * Like the balance cache, only transactions recorded by this instance are seen.
+ */
+@Component
+public class RecentTransactionsCache implements MeterBinder {
+
+    /**
+     * Transactions kept per player.
+     */
+    public static final int CAPACITY = 10;
+
+    /**
+     * The order of the history endpoints: newest first, ties by transaction ID.
+     */
+    private static final Comparator<Last10TransactionResponse> HISTORY_ORDER =
+            Comparator.comparing(Last10TransactionResponse::getTimestamp).reversed()
+                    .thenComparing(Last10TransactionResponse::getTransactionId);
+
+    private final Cache<Integer, RecentTransactions> cache;
+
+    public RecentTransactionsCache(HistoryProperties properties) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getRecentCacheSize())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * The transactions are loaded outside the cache's internal lock, as in {@link BalanceCache#get}.
+     *
+     * @param loader loads the player's latest {@value #CAPACITY} transactions, newest first, on the first read
+     * @return the player's latest transactions, newest first
+     */
+    public List<Last10TransactionResponse> get(Integer playerId, Function<Integer, List<Last10TransactionResponse>> loader) {
+        var recent = cache.getIfPresent(playerId);
+        if (recent != null && recent.isWarm()) {
+            return recent.newestFirst();
+        }
+        // Created before loading, so that a transaction committed during the load is added to it
+        recent = cache.get(playerId, id -> new RecentTransactions());
+        recent.warm(loader.apply(playerId));
+        return recent.newestFirst();
+    }
+
+    /**
+     * Adds the transactions after the current database transaction commits, or immediately when there is none.
+     * Nothing is added when the transaction rolls back.
+     */
+    public void addAfterCommit(List<Transaction> transactions) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            addAll(transactions);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                addAll(transactions);
+            }
+        });
+    }
+
+    /**
+     * Adds committed transactions now.
+     */
+    public void addAll(List<Transaction> transactions) {
+        for (var transaction : transactions) {
+            cache.asMap().computeIfAbsent(transaction.getPlayer().getPlayerId(), id -> new RecentTransactions())
+                    .add(new Last10TransactionResponse(transaction.getTransactionType(), transaction.getTransactionId(),
+                            transaction.getAmount(), transaction.getTimestamp(), transaction.getCurrency()));
+        }
+    }
+
+    /**
+     * @return the transactions held over all players, at most {@value #CAPACITY} per player
+     */
+    public long heldTransactions() {
+        return cache.asMap().values().stream().mapToLong(RecentTransactions::size).sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "recent_transactions");
+        Gauge.builder("casino.history.recent.transactions", this, RecentTransactionsCache::heldTransactions)
+                .description("Transactions held by the recent transactions cache")
+                .register(registry);
+    }
+
+    /**
+     * A ring buffer of one player's transactions. {@code head} is the slot of the newest one, older ones precede it.
+     * Transactions almost always arrive newest last, which overwrites the oldest slot; one that arrives out of order,
+     * such as a row loaded from the database, is sorted in.
+     */
+    private static final class RecentTransactions {
+
+        private final Last10TransactionResponse[] slots = new Last10TransactionResponse[CAPACITY];
+        private int head = -1;
+        private int size;
+        private boolean warm;
+
+        synchronized boolean isWarm() {
+            return warm;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void warm(List<Last10TransactionResponse> loaded) {
+            if (warm) {
+                return;
+            }
+            loaded.forEach(this::add);
+            warm = true;
+        }
+
+        synchronized void add(Last10TransactionResponse transaction) {
+            for (int i = 0; i < size; i++) {
+                if (slots[slot(i)].getTransactionId().equals(transaction.getTransactionId())) {
+                    return;
+                }
+            }
+            if (size == 0 || HISTORY_ORDER.compare(transaction, slots[head]) < 0) {
+                head = (head + 1) % CAPACITY;
+                slots[head] = transaction;
+                size = Math.min(size + 1, CAPACITY);
+                return;
+            }
+            var sorted = new ArrayList<>(newestFirst());
+            sorted.add(transaction);
+            sorted.sort(HISTORY_ORDER);
+            Arrays.fill(slots, null);
+            size = Math.min(sorted.size(), CAPACITY);
+            head = size - 1;
+            for (int i = 0; i < size; i++) {
+                slots[head - i] = sorted.get(i);
+            }
+        }
+
+        synchronized List<Last10TransactionResponse> newestFirst() {
+            var transactions = new ArrayList<Last10TransactionResponse>(size);
+            for (int i = 0; i < size; i++) {
+                transactions.add(slots[slot(i)]);
+            }
+            return transactions;
+        }
+
+        /**
+         * @return the slot of the transaction {@code age} places older than the newest one
+         */
+        private int slot(int age) {
+            return Math.floorMod(head - age, CAPACITY);
+        }
+    }
+}
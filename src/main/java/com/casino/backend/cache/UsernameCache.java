@@ -0,0 +1,205 @@
+package com.casino.backend.cache;
+
+import com.casino.backend.config.HistoryProperties;
+import com.casino.backend.entity.Player;
+import com.casino.backend.shard.PlayerDirectory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Resolves usernames to player IDs for the admin endpoints, so a lookup is answered from memory in the common case:
+ * <ul>
+ *     <li>known usernames are kept up to a maximum count, beyond which the ones looked up least often make room,</li>
+ *     <li>a {@link UsernameFilter} of every username rejects most unknown ones without a query,</li>
+ *     <li>the unknown usernames it lets through are remembered for a short time.</li>
+ * </ul>
+ * The filter is filled from the {@code players} table, or the player directory when players are sharded, on startup.
+ * Players created, renamed or deleted through JPA are applied once their transaction commits, and players created by
+ * the {@link PlayerDirectory} once they were inserted: a new username is added to the filter and forgotten as unknown,
+ * an old one is forgotten as known. Players inserted into the database by anything else, such as another instance,
+ * are only seen after a restart.
+ */
+@Profile("!reactive")
+@Component
+public class UsernameCache implements MeterBinder {
+
+    private static final Logger logger = LogManager.getLogger(UsernameCache.class);
+
+    private final HistoryProperties.UsernameCache properties;
+    private final EntityManagerFactory entityManagerFactory;
+    private final PlayerDirectory playerDirectory;
+    private final Cache<String, Integer> known;
+    private final Cache<String, Boolean> unknown;
+
+    /**
+     * Counts creations, renames and deletions, so that a lookup that raced with one does not cache what it read.
+     */
+    private final AtomicLong changes = new AtomicLong();
+    private final LongAdder filterRejections = new LongAdder();
+
+    private volatile UsernameFilter filter;
+    private int usernameIndex;
+
+    public UsernameCache(HistoryProperties properties, EntityManagerFactory entityManagerFactory, PlayerDirectory playerDirectory) {
+        this.properties = properties.getUsernameCache();
+        this.entityManagerFactory = entityManagerFactory;
+        this.playerDirectory = playerDirectory;
+        this.known = Caffeine.newBuilder()
+                .maximumSize(this.properties.getSize())
+                .recordStats()
+                .build();
+        this.unknown = Caffeine.newBuilder()
+                .maximumSize(this.properties.getNegativeSize())
+                .expireAfterWrite(this.properties.getNegativeTtl())
+                .recordStats()
+                .build();
+    }
+
+    @PostConstruct
+    void start() {
+        var players = playerDirectory.countPlayers();
+        // Room for as many new players again before the false positive rate rises
+        filter = new UsernameFilter(Math.max(2 * players, properties.getSize()));
+
+        // Listening before reading the table, so a player created in between is not missed
+        var sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        usernameIndex = Arrays.asList(sessionFactory.getMappingMetamodel().getEntityDescriptor(Player.class).getPropertyNames())
+                .indexOf("username");
+        var listener = new PlayerChangeListener();
+        var registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+        playerDirectory.onCreated(this::created);
+
+        playerDirectory.forEachUsername(filter::add);
+        logger.info("Username filter filled with {} players", players);
+    }
+
+    /**
+     * @param loader reads the player ID from the database, for a username the cache cannot answer
+     * @return the player ID, or {@code null} when no player has the username
+     */
+    public Integer getPlayerId(String username, Function<String, Optional<Integer>> loader) {
+        var playerId = known.getIfPresent(username);
+        if (playerId != null) {
+            return playerId;
+        }
+        if (!filter.mightContain(username)) {
+            filterRejections.increment();
+            return null;
+        }
+        if (unknown.getIfPresent(username) != null) {
+            return null;
+        }
+
+        var changesBefore = changes.get();
+        var loaded = loader.apply(username);
+        if (changes.get() == changesBefore) {
+            if (loaded.isPresent()) {
+                known.put(username, loaded.get());
+            } else {
+                unknown.put(username, Boolean.TRUE);
+            }
+        }
+        return loaded.orElse(null);
+    }
+
+    private void created(String username) {
+        changes.incrementAndGet();
+        filter.add(username);
+        unknown.invalidate(username);
+    }
+
+    private void removed(String username) {
+        changes.incrementAndGet();
+        known.invalidate(username);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, known, "username");
+        CaffeineCacheMetrics.monitor(registry, unknown, "unknown_username");
+        FunctionCounter.builder("casino.history.username.filter.rejections", filterRejections, LongAdder::sum)
+                .description("Unknown usernames rejected by the username filter without a query")
+                .register(registry);
+    }
+
+    /**
+     * Applies committed changes of players. An update of anything but the username, such as every balance change in
+     * optimistic mode, costs one comparison.
+     */
+    private class PlayerChangeListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+            PostCommitDeleteEventListener {
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return persister.getMappedClass() == Player.class;
+        }
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            if (event.getEntity() instanceof Player player) {
+                created(player.getUsername());
+            }
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            if (!(event.getEntity() instanceof Player player) || event.getOldState() == null) {
+                return;
+            }
+            var oldUsername = (String) event.getOldState()[usernameIndex];
+            if (!Objects.equals(oldUsername, player.getUsername())) {
+                removed(oldUsername);
+                created(player.getUsername());
+            }
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            if (event.getEntity() instanceof Player player) {
+                removed(player.getUsername());
+            }
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.casino.backend.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of usernames: {@link #mightContain} is never false for a username that was added, and is false for
+ * about one in a hundred others as long as no more usernames are added than it was sized for. Past that the false
+ * positive rate rises, but a username that was added is still never rejected.
+ * <p>
+ * Adding and reading are lock free, bits are only ever set.
+ */
+final class UsernameFilter {
+
+    private static final int BITS_PER_USERNAME = 10;
+    private static final int HASHES = 7;
+
+    private final AtomicLongArray words;
+    private final long bits;
+
+    UsernameFilter(long expectedUsernames) {
+        var words = (Math.max(expectedUsernames, 1) * BITS_PER_USERNAME + Long.SIZE - 1) / Long.SIZE;
+        this.words = new AtomicLongArray(Math.toIntExact(words));
+        this.bits = words * Long.SIZE;
+    }
+
+    void add(String username) {
+        var hash = hash(username);
+        for (int i = 0; i < HASHES; i++) {
+            var bit = bit(hash, i);
+            var word = (int) (bit >>> 6);
+            var mask = 1L << bit;
+            long current;
+            while (((current = words.get(word)) & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    boolean mightContain(String username) {
+        var hash = hash(username);
+        for (int i = 0; i < HASHES; i++) {
+            var bit = bit(hash, i);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The i-th probe of double hashing, from the two halves of the 64-bit hash.
+     */
+    private long bit(long hash, int i) {
+        var combined = (int) hash + i * (int) (hash >>> 32);
+        return Integer.toUnsignedLong(combined) % bits;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, with a final mix so that both halves are well distributed.
+     */
+    private static long hash(String username) {
+        var hash = 0xcbf29ce484222325L;
+        for (var b : username.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,144 @@
+package com.casino.backend.concurrency;
+
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.PlayerBalanceId;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed table of locks keyed by player ID and currency.
+ * Updates of the same balance always map to the same stripe and are therefore strictly ordered,
+ * while updates of balances on different stripes run in parallel, including a player's balances in two currencies.
+ * Every acquisition first tries the lock without blocking so that contention can be counted per stripe.
+ */
+@Component
+public class PlayerLockStripes implements MeterBinder {
+
+    private final ReentrantLock[] locks;
+    private final LongAdder[] contendedByStripe;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contendedAcquisitions = new LongAdder();
+    private final int mask;
+
+    public PlayerLockStripes(WalletProperties properties) {
+        int stripes = ceilingPowerOfTwo(properties.getLockStripes());
+        this.locks = new ReentrantLock[stripes];
+        this.contendedByStripe = new LongAdder[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+            contendedByStripe[i] = new LongAdder();
+        }
+        this.mask = stripes - 1;
+    }
+
+    /**
+     * Acquires the stripe guarding the player's balance in the currency and returns it so the caller can release it
+     * in a finally block.
+     */
+    public Lock lock(int playerId, String currency) {
+        return acquire(stripeFor(playerId, currency));
+    }
+
+    /**
+     * Acquires the stripes of all given balances. Stripes are always taken in ascending order, so two callers
+     * locking overlapping sets of balances can never deadlock, and a stripe shared by several balances is taken once.
+     *
+     * @return the acquired locks, to be passed to {@link #unlockAll(List)}
+     */
+    public List<Lock> lockAll(Collection<PlayerBalanceId> balanceIds) {
+        var stripes = new TreeSet<Integer>();
+        for (var balanceId : balanceIds) {
+            stripes.add(stripeFor(balanceId.getPlayerId(), balanceId.getCurrency()));
+        }
+        var acquired = new ArrayList<Lock>(stripes.size());
+        for (var stripe : stripes) {
+            acquired.add(acquire(stripe));
+        }
+        return acquired;
+    }
+
+    public void unlockAll(List<Lock> acquired) {
+        for (int i = acquired.size() - 1; i >= 0; i--) {
+            acquired.get(i).unlock();
+        }
+    }
+
+    private Lock acquire(int stripe) {
+        var lock = locks[stripe];
+        acquisitions.increment();
+        if (!lock.tryLock()) {
+            contendedByStripe[stripe].increment();
+            contendedAcquisitions.increment();
+            lock.lock();
+        }
+        return lock;
+    }
+
+    public int stripeCount() {
+        return locks.length;
+    }
+
+    int stripeFor(int playerId, String currency) {
+        // Spread sequential IDs so neighbouring players do not share a stripe when the table is resized
+        int hash = (playerId * 31 + currency.hashCode()) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    public long contendedAcquisitions() {
+        return contendedAcquisitions.sum();
+    }
+
+    /**
+     * The highest number of contended acquisitions seen by a single stripe, which shows whether contention is
+     * spread evenly or concentrated on a hot player.
+     */
+    public long hottestStripeContention() {
+        long max = 0;
+        for (var counter : contendedByStripe) {
+            max = Math.max(max, counter.sum());
+        }
+        return max;
+    }
+
+    public int waitingThreads() {
+        int waiting = 0;
+        for (var lock : locks) {
+            waiting += lock.getQueueLength();
+        }
+        return waiting;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("casino.wallet.lock.acquisitions", acquisitions, LongAdder::sum)
+                .description("Player lock acquisitions")
+                .register(registry);
+        FunctionCounter.builder("casino.wallet.lock.contended", contendedAcquisitions, LongAdder::sum)
+                .description("Player lock acquisitions that had to wait for another thread")
+                .register(registry);
+        Gauge.builder("casino.wallet.lock.hottest.stripe.contended", this, PlayerLockStripes::hottestStripeContention)
+                .description("Contended acquisitions on the most contended stripe")
+                .register(registry);
+        Gauge.builder("casino.wallet.lock.waiting", this, PlayerLockStripes::waitingThreads)
+                .description("Threads currently queued on a player lock")
+                .register(registry);
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        if (value <= 1) {
+            return 1;
+        }
+        return Integer.highestOneBit(value - 1) << 1;
+    }
+}
@@ -0,0 +1,87 @@
+package com.casino.backend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Paging, caching and archival of the transaction history, bound from the {@code casino.history.*} properties.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "casino.history")
+public class HistoryProperties {
+
+    /**
+     * Page size used when the request does not ask for one.
+     */
+    private int defaultPageSize = 50;
+
+    /**
+     * Largest page size a request may ask for.
+     */
+    private int maxPageSize = 500;
+
+    /**
+     * Players whose most recent transactions are kept in memory for the last 10 transactions endpoint.
+     */
+    private long recentCacheSize = 100_000;
+
+    private final UsernameCache usernameCache = new UsernameCache();
+
+    private final Archive archive = new Archive();
+
+    @Getter
+    @Setter
+    public static class UsernameCache {
+
+        /**
+         * Maximum number of known usernames kept in memory. The ones looked up least often are evicted first.
+         */
+        private long size = 100_000;
+
+        /**
+         * Maximum number of unknown usernames remembered.
+         */
+        private long negativeSize = 100_000;
+
+        /**
+         * How long an unknown username is remembered. Creating the player forgets it at once on this instance.
+         */
+        private Duration negativeTtl = Duration.ofSeconds(30);
+    }
+
+    @Getter
+    @Setter
+    public static class Archive {
+
+        /**
+         * Whether transactions older than the retention are rolled up and archived in the background.
+         */
+        private boolean enabled = false;
+
+        /**
+         * How long transactions stay in the {@code transactions} table. Older days are archived, except each player's
+         * most recent transactions.
+         */
+        private Duration retention = Duration.ofDays(90);
+
+        /**
+         * How often the archiver looks for days to archive.
+         */
+        private Duration interval = Duration.ofHours(1);
+
+        /**
+         * Where the archived transactions are written, one compressed file per day and run.
+         */
+        private Path directory = Path.of("data", "archive");
+
+        /**
+         * Archived rows deleted per JDBC batch.
+         */
+        private int deleteBatchSize = 1000;
+    }
+}
@@ -0,0 +1,48 @@
+package com.casino.backend.config;
+
+import com.casino.backend.enums.ReplicaReadPolicy;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * The read replica, bound from the {@code casino.datasource.replica.*} properties. Without a URL every query runs on
+ * the primary datasource. The replica's pool is configured through {@code casino.datasource.replica.hikari.*}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "casino.datasource.replica")
+public class ReplicaProperties {
+
+    /**
+     * JDBC URL of the replica, {@code null} when there is none.
+     */
+    private String url;
+
+    private String username;
+
+    private String password;
+
+    /**
+     * Which reads go to the replica.
+     */
+    private ReplicaReadPolicy readPolicy = ReplicaReadPolicy.READ_YOUR_WRITES;
+
+    /**
+     * How far the replica may lag behind the primary. A player written more recently is read from the primary under
+     * the {@code read-your-writes} policy.
+     */
+    private Duration maxLag = Duration.ofSeconds(1);
+
+    /**
+     * Maximum number of recently written players remembered. Beyond it the least recently written are forgotten
+     * early, and may be read from the replica within the lag.
+     */
+    private long trackedPlayers = 100_000;
+
+    public boolean isEnabled() {
+        return url != null && !url.isBlank();
+    }
+}
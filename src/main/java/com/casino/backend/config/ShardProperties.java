@@ -0,0 +1,59 @@
+package com.casino.backend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Horizontal sharding of players and their transactions, bound from the {@code casino.datasource.shards.*} properties.
+ * The {@code spring.datasource.*} database is shard 0 and also holds the player directory, every URL listed here adds
+ * one more shard. Without URLs there is a single database and nothing is sharded.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "casino.datasource.shards")
+public class ShardProperties {
+
+    /**
+     * JDBC URLs of shards 1 to N, in shard order. They use the credentials and pool settings of
+     * {@code spring.datasource.*}.
+     */
+    private List<String> urls = new ArrayList<>();
+
+    /**
+     * Points of each shard on the consistent hash ring. More points spread players more evenly.
+     */
+    private int virtualNodes = 256;
+
+    /**
+     * Maximum number of players whose shard is kept in memory.
+     */
+    private long directoryCacheSize = 100_000;
+
+    /**
+     * How long a player's shard is remembered. Another instance sees a player moved between shards once it expired.
+     */
+    private Duration directoryCacheTtl = Duration.ofMinutes(1);
+
+    /**
+     * Transactions copied per round trip when a player is moved between shards.
+     */
+    private int moveBatchSize = 1000;
+
+    /**
+     * How often a move is retried when the player's balance changed while the rows were copied.
+     */
+    private int moveAttempts = 3;
+
+    public boolean isEnabled() {
+        return !urls.isEmpty();
+    }
+
+    public int shardCount() {
+        return urls.size() + 1;
+    }
+}
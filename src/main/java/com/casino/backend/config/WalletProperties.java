@@ -0,0 +1,216 @@
+package com.casino.backend.config;
+
+import com.casino.backend.enums.BonusWagerOrder;
+import com.casino.backend.enums.ConcurrencyMode;
+import com.casino.backend.enums.LedgerMode;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Tunables for the wallet (balance update) path, bound from the {@code casino.wallet.*} properties.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "casino.wallet")
+public class WalletProperties {
+
+    /**
+     * Number of lock stripes used to serialise updates per player. Rounded up to a power of two.
+     */
+    private int lockStripes = 1024;
+
+    /**
+     * How concurrent balance updates for the same player are kept consistent.
+     */
+    private ConcurrencyMode concurrencyMode = ConcurrencyMode.ATOMIC;
+
+    /**
+     * Currency of the {@code players.balance} column, and of every request that does not name one.
+     * A deployment that used to run for a single currency sets it to that currency, so its data stays valid as it is.
+     */
+    private String defaultCurrency = "ZAR";
+
+    /**
+     * Further currencies (ISO 4217 codes) players may hold, each in its own sub-balance.
+     */
+    private List<String> currencies = List.of();
+
+    /**
+     * Built from the two above on first use, so the balance reads that walk it do not rebuild it every time.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile List<String> acceptedCurrencies;
+
+    private final Optimistic optimistic = new Optimistic();
+
+    private final Idempotency idempotency = new Idempotency();
+
+    private final Ledger ledger = new Ledger();
+
+    private final BalanceCache balanceCache = new BalanceCache();
+
+    private final Engine engine = new Engine();
+
+    private final Bonus bonus = new Bonus();
+
+    /**
+     * @return the default currency followed by the other accepted currencies
+     */
+    public List<String> acceptedCurrencies() {
+        var accepted = acceptedCurrencies;
+        if (accepted == null) {
+            var distinct = new LinkedHashSet<String>();
+            distinct.add(defaultCurrency);
+            distinct.addAll(currencies);
+            accepted = List.copyOf(distinct);
+            acceptedCurrencies = accepted;
+        }
+        return accepted;
+    }
+
+    public void setDefaultCurrency(String defaultCurrency) {
+        this.defaultCurrency = defaultCurrency;
+        this.acceptedCurrencies = null;
+    }
+
+    public void setCurrencies(List<String> currencies) {
+        this.currencies = currencies;
+        this.acceptedCurrencies = null;
+    }
+
+    /**
+     * @param currency {@code null} stands for the default currency, as on rows recorded before there were several
+     */
+    public boolean isDefaultCurrency(String currency) {
+        return currency == null || defaultCurrency.equals(currency);
+    }
+
+    @Getter
+    @Setter
+    public static class Optimistic {
+
+        /**
+         * Total attempts, including the first one, before a conflicting update is rejected.
+         */
+        private int maxAttempts = 5;
+
+        /**
+         * Delay before the first retry. It doubles on every further retry, up to {@link #maxBackoff}.
+         */
+        private Duration initialBackoff = Duration.ofMillis(2);
+
+        private Duration maxBackoff = Duration.ofMillis(50);
+    }
+
+    @Getter
+    @Setter
+    public static class Idempotency {
+
+        /**
+         * Maximum number of recent outcomes kept in memory. Older keys are still found through the ledger, in the
+         * {@code transactions} table or, in journal mode, among the rows not drained yet.
+         */
+        private long cacheSize = 100_000;
+
+        /**
+         * How long an outcome stays in memory after it was recorded.
+         */
+        private Duration cacheTtl = Duration.ofMinutes(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Ledger {
+
+        /**
+         * Whether transaction rows are inserted with the balance change or written behind through a local journal.
+         */
+        private LedgerMode mode = LedgerMode.DIRECT;
+
+        /**
+         * Directory holding the journal segments. It must survive restarts, otherwise acknowledged rows can be lost.
+         */
+        private Path journalDirectory = Path.of("data", "journal");
+
+        /**
+         * Size after which the journal starts a new segment. Drained segments are deleted.
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Maximum number of rows inserted by one JDBC batch.
+         */
+        private int drainBatchSize = 1000;
+
+        /**
+         * How long the drainer waits for new entries before checking again whether it should stop.
+         */
+        private Duration drainInterval = Duration.ofMillis(20);
+
+        /**
+         * Longest wait between two attempts to drain a batch while the database cannot be reached. The wait starts at
+         * the drain interval and doubles with every failed attempt.
+         */
+        private Duration drainRetryMaxBackoff = Duration.ofSeconds(30);
+    }
+
+    @Getter
+    @Setter
+    public static class BalanceCache {
+
+        /**
+         * Maximum number of player balances kept in memory. Past it, the balances read least often are evicted.
+         */
+        private long size = 100_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Engine {
+
+        /**
+         * Number of engine partitions. Each one owns the players whose ID maps to it and applies their updates on its own thread.
+         */
+        private int partitions = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Capacity of each partition's ring buffer. Rounded up to a power of two. Callers wait when it is full.
+         */
+        private int ringSize = 4096;
+
+        /**
+         * Directory holding the balance snapshots. Only the two most recent ones are kept.
+         */
+        private Path snapshotDirectory = Path.of("data", "snapshots");
+
+        /**
+         * How often the balances are written to a snapshot, which bounds how many transactions a restart replays.
+         */
+        private Duration snapshotInterval = Duration.ofMinutes(1);
+    }
+
+    @Getter
+    @Setter
+    public static class Bonus {
+
+        /**
+         * Whether a wager spends the player's cash or bonus money first.
+         */
+        private BonusWagerOrder wagerOrder = BonusWagerOrder.CASH_FIRST;
+
+        /**
+         * How many times a granted bonus must be wagered before what is left of it becomes cash.
+         */
+        private int wageringMultiplier = 30;
+    }
+}
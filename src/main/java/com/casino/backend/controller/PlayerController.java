@@ -1,24 +1,42 @@
 package com.casino.backend.controller;
 
 
+import com.casino.backend.request.BatchUpdateBalanceRequest;
+import com.casino.backend.request.GrantBonusRequest;
 import com.casino.backend.request.Last10TransactionRequest;
 import com.casino.backend.request.UpdateBalanceRequest;
 import com.casino.backend.response.BalanceResponse;
+import com.casino.backend.response.BatchUpdateBalanceResponse;
+import com.casino.backend.response.BonusResponse;
 import com.casino.backend.response.Last10TransactionResponse;
+import com.casino.backend.response.PlayerActivityResponse;
+import com.casino.backend.response.PlayerShardResponse;
+import com.casino.backend.response.ShardRebalanceResponse;
+import com.casino.backend.response.TransactionHistoryResponse;
 import com.casino.backend.response.UpdateBalanceResponse;
 import com.casino.backend.service.PlayerService;
+import com.casino.backend.service.TransactionExportService;
+import com.casino.backend.shard.ShardRebalancer;
 import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @AllArgsConstructor
 @Log4j2
 @CrossOrigin("*")
+@Profile("!reactive")
 @RestController
 @RequestMapping("/casino")
 public class PlayerController {
@@ -26,6 +44,12 @@ public class PlayerController {
     @Autowired
     private PlayerService playerService;
 
+    @Autowired
+    private TransactionExportService transactionExportService;
+
+    @Autowired
+    private ShardRebalancer shardRebalancer;
+
     @GetMapping("/player/{playerId}/balance")
     public ResponseEntity<BalanceResponse> getBalance(@PathVariable Integer playerId) {
         var balance = playerService.getBalance(playerId);
@@ -39,10 +63,68 @@ public class PlayerController {
         return new ResponseEntity<>(updatedBalance, HttpStatus.OK);
     }
 
+    @PostMapping("/player/balance/batch-update")
+    public ResponseEntity<List<BatchUpdateBalanceResponse>> updateBalances(@RequestBody List<BatchUpdateBalanceRequest> requests) {
+        var results = playerService.updateBalances(requests);
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
+    @PostMapping("/admin/player/{playerId}/bonus")
+    public ResponseEntity<UpdateBalanceResponse> grantBonus(@PathVariable Integer playerId,
+                                                            @RequestBody GrantBonusRequest request) {
+        var updatedBalance = playerService.grantBonus(playerId, request);
+        return new ResponseEntity<>(updatedBalance, HttpStatus.OK);
+    }
+
+    @GetMapping("/admin/player/{playerId}/bonus")
+    public ResponseEntity<BonusResponse> getBonus(@PathVariable Integer playerId) {
+        var bonus = playerService.getBonus(playerId);
+        return new ResponseEntity<>(bonus, HttpStatus.OK);
+    }
+
     @PostMapping("/admin/player/transactions")
     public ResponseEntity<List<Last10TransactionResponse>> getLast10Transactions(@RequestBody Last10TransactionRequest request) {
         var player = playerService.getPlayerByUsername(request.getUsername());
         List<Last10TransactionResponse> transactions = playerService.getLast10Transactions(player);
         return new ResponseEntity<>(transactions, HttpStatus.OK);
     }
+
+    @GetMapping("/admin/player/{playerId}/transactions")
+    public ResponseEntity<TransactionHistoryResponse> getTransactionHistory(@PathVariable Integer playerId,
+                                                                            @RequestParam(required = false) Integer size,
+                                                                            @RequestParam(required = false) String cursor) {
+        var history = playerService.getTransactionHistory(playerId, size, cursor);
+        return new ResponseEntity<>(history, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/admin/player/{playerId}/transactions/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(@PathVariable Integer playerId,
+                                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        var export = transactionExportService.prepareExport(playerId, from, to);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"player-" + playerId + "-transactions.ndjson\"")
+                .body(export::writeTo);
+    }
+
+    @GetMapping("/admin/player/{playerId}/activity")
+    public ResponseEntity<PlayerActivityResponse> getDailyActivity(@PathVariable Integer playerId,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        var activity = playerService.getDailyActivity(playerId, from, to);
+        return new ResponseEntity<>(activity, HttpStatus.OK);
+    }
+
+    @PostMapping("/admin/player/{playerId}/shard/{shard}")
+    public ResponseEntity<PlayerShardResponse> movePlayer(@PathVariable Integer playerId, @PathVariable Integer shard) {
+        shardRebalancer.move(playerId, shard);
+        return new ResponseEntity<>(new PlayerShardResponse(playerId, shard), HttpStatus.OK);
+    }
+
+    @PostMapping("/admin/shards/rebalance")
+    public ResponseEntity<ShardRebalanceResponse> rebalanceShards() {
+        var movedPlayers = shardRebalancer.rebalance();
+        return new ResponseEntity<>(new ShardRebalanceResponse(movedPlayers), HttpStatus.OK);
+    }
 }
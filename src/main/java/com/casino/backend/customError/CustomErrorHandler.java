@@ -2,6 +2,7 @@ package com.casino.backend.customError;
 
 import com.casino.backend.exception.*;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -11,6 +12,7 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.time.LocalDateTime;
 
+@Profile("!reactive")
 @ControllerAdvice
 public class CustomErrorHandler {
 
@@ -77,4 +79,48 @@ public class CustomErrorHandler {
         getServletRequestAttributesAndSetPath(error);
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
     }
+
+    @ExceptionHandler(ConcurrentBalanceUpdateException.class)
+    public ResponseEntity<ErrorDetail> handleConcurrentBalanceUpdateException(ConcurrentBalanceUpdateException e) {
+        ErrorDetail error = new ErrorDetail();
+        error.setTimestamp(LocalDateTime.now());
+        error.setStatus(HttpStatus.CONFLICT.value());
+        error.setError(HttpStatus.CONFLICT.name());
+        error.setReason(e.getMessage());
+        getServletRequestAttributesAndSetPath(error);
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+
+    @ExceptionHandler(InvalidPageRequestException.class)
+    public ResponseEntity<ErrorDetail> handleInvalidPageRequestException(InvalidPageRequestException e) {
+        ErrorDetail error = new ErrorDetail();
+        error.setTimestamp(LocalDateTime.now());
+        error.setStatus(HttpStatus.BAD_REQUEST.value());
+        error.setError(HttpStatus.BAD_REQUEST.name());
+        error.setReason(e.getMessage());
+        getServletRequestAttributesAndSetPath(error);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+    }
+
+    @ExceptionHandler(InvalidDateRangeException.class)
+    public ResponseEntity<ErrorDetail> handleInvalidDateRangeException(InvalidDateRangeException e) {
+        ErrorDetail error = new ErrorDetail();
+        error.setTimestamp(LocalDateTime.now());
+        error.setStatus(HttpStatus.BAD_REQUEST.value());
+        error.setError(HttpStatus.BAD_REQUEST.name());
+        error.setReason(e.getMessage());
+        getServletRequestAttributesAndSetPath(error);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+    }
+
+    @ExceptionHandler(InvalidShardException.class)
+    public ResponseEntity<ErrorDetail> handleInvalidShardException(InvalidShardException e) {
+        ErrorDetail error = new ErrorDetail();
+        error.setTimestamp(LocalDateTime.now());
+        error.setStatus(HttpStatus.BAD_REQUEST.value());
+        error.setError(HttpStatus.BAD_REQUEST.name());
+        error.setReason(e.getMessage());
+        getServletRequestAttributesAndSetPath(error);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+    }
 }
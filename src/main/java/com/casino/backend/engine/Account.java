@@ -0,0 +1,31 @@
+package com.casino.backend.engine;
+
+/**
+ * The in-memory balance of one player in one currency, owned by the partition the balance maps to. Balances are in
+ * minor units, see {@link com.casino.backend.money.Money}.
+ */
+final class Account {
+
+    /**
+     * Includes updates that are decided but not yet journaled. Only the owning partition thread reads or writes it.
+     */
+    long balance;
+
+    /**
+     * The state after the last journaled update, which is what any other thread may see.
+     */
+    volatile Committed committed;
+
+    Account(long balance, int lastTransactionId) {
+        this.balance = balance;
+        this.committed = new Committed(balance, lastTransactionId);
+    }
+
+    /**
+     * A balance and the ID of the transaction that produced it, published together so a reader never mixes two updates.
+     *
+     * @param lastTransactionId 0 when no transaction was recorded for the balance
+     */
+    record Committed(long balance, int lastTransactionId) {
+    }
+}
@@ -0,0 +1,164 @@
+package com.casino.backend.engine;
+
+import com.casino.backend.entity.PlayerBalanceId;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshots of the engine's committed balances, one file per snapshot.
+ * <p>
+ * A snapshot holds, for every balance in memory, the player, the currency, the balance and the ID of the transaction
+ * that produced it, plus a watermark: every transaction that is not reflected in the snapshot has a higher ID. A file
+ * is written under a temporary name, synced, and only then renamed, so a crash never leaves a partial snapshot behind
+ * under a real name. A checksum over the whole file catches any other damage. The binary layout is private to this class.
+ */
+class BalanceSnapshotStore {
+
+    private static final Logger logger = LogManager.getLogger(BalanceSnapshotStore.class);
+
+    private static final int MAGIC = 0x43534E50;
+    // Version 1 stored the balances as decimals and version 2 had no currency. Such a snapshot is unreadable and the
+    // engine starts without it
+    private static final byte FORMAT_VERSION = 3;
+    private static final String PREFIX = "balances-";
+    private static final String SUFFIX = ".snapshot";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SNAPSHOTS_KEPT = 2;
+
+    private final Path directory;
+
+    BalanceSnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Writes a snapshot and deletes all but the most recent ones.
+     */
+    void write(int watermark, Map<PlayerBalanceId, Account> accounts) throws IOException {
+        // Copied first, so the count in the header matches the entries even while balances are being added
+        var entries = new ArrayList<Map.Entry<PlayerBalanceId, Account.Committed>>(accounts.size());
+        for (var account : accounts.entrySet()) {
+            entries.add(Map.entry(account.getKey(), account.getValue().committed));
+        }
+
+        Files.createDirectories(directory);
+        var temporary = directory.resolve(PREFIX + System.nanoTime() + TEMPORARY_SUFFIX);
+        var crc = new CRC32C();
+        try (var file = new FileOutputStream(temporary.toFile())) {
+            var out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(watermark);
+            out.writeInt(entries.size());
+            for (var entry : entries) {
+                out.writeInt(entry.getKey().getPlayerId());
+                out.writeUTF(entry.getKey().getCurrency());
+                out.writeInt(entry.getValue().lastTransactionId());
+                out.writeLong(entry.getValue().balance());
+            }
+            out.flush();
+            // The checksum trailer bypasses the checked stream
+            new DataOutputStream(file).writeLong(crc.getValue());
+            file.getFD().sync();
+        }
+        var snapshots = list();
+        var number = snapshots.isEmpty() ? 0 : snapshotNumber(snapshots.get(0)) + 1;
+        var target = directory.resolve(String.format("%s%019d%s", PREFIX, number, SUFFIX));
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Wrote balance snapshot {} with {} balances", target.getFileName(), entries.size());
+
+        snapshots = list();
+        for (int i = SNAPSHOTS_KEPT; i < snapshots.size(); i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+
+    /**
+     * Also deletes temporary files left behind by a snapshot that was interrupted.
+     *
+     * @return the most recent snapshot that can be read, or nothing when there is none
+     */
+    Optional<Loaded> loadLatest() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return Optional.empty();
+        }
+        try (Stream<Path> listing = Files.list(directory)) {
+            for (var file : listing.filter(path -> path.getFileName().toString().endsWith(TEMPORARY_SUFFIX)).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        for (var file : list()) {
+            try {
+                return Optional.of(read(file));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Ignoring unreadable balance snapshot {}", file, e);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Loaded read(Path file) throws IOException {
+        var crc = new CRC32C();
+        var accounts = new HashMap<PlayerBalanceId, Account>();
+        int watermark;
+        try (var in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE), crc))) {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                throw new IOException("Not a balance snapshot");
+            }
+            watermark = in.readInt();
+            var count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                var balanceId = new PlayerBalanceId(in.readInt(), in.readUTF());
+                var lastTransactionId = in.readInt();
+                accounts.put(balanceId, new Account(in.readLong(), lastTransactionId));
+            }
+            // Read before the trailer passes through the checked stream
+            var expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Checksum mismatch");
+            }
+        }
+        return new Loaded(file, watermark, accounts);
+    }
+
+    /**
+     * @return the snapshot files, newest first
+     */
+    private List<Path> list() throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing.filter(path -> path.getFileName().toString().startsWith(PREFIX)
+                            && path.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparing(Path::getFileName).reversed())
+                    .toList();
+        }
+    }
+
+    private static long snapshotNumber(Path file) {
+        var name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    record Loaded(Path file, int watermark, Map<PlayerBalanceId, Account> accounts) {
+    }
+}
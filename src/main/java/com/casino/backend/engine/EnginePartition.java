@@ -0,0 +1,239 @@
+package com.casino.backend.engine;
+
+import com.casino.backend.cache.IdempotencyCache;
+import com.casino.backend.entity.Player;
+import com.casino.backend.entity.PlayerBalanceId;
+import com.casino.backend.entity.Transaction;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.exception.InsufficientBalanceException;
+import com.casino.backend.exception.PlayerNotFoundException;
+import com.casino.backend.ledger.TransactionLedger;
+import com.casino.backend.money.Money;
+import com.casino.backend.repository.PlayerBalanceRepository;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.response.UpdateBalanceResponse;
+import com.lmax.disruptor.EventHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies the update commands of one partition, on the partition's single thread.
+ * <p>
+ * Commands are decided one by one against the in-memory balances, without a lock or a database call. The transactions
+ * of everything the ring buffer delivered in one go are then journaled with a single append, and only once that append
+ * is durable are the new balances published and the callers answered. The busier the partition, the larger the batches,
+ * so the cost of a journal sync is shared by more updates exactly when it matters.
+ */
+class EnginePartition implements EventHandler<UpdateCommand> {
+
+    private static final Logger logger = LogManager.getLogger(EnginePartition.class);
+
+    private final Map<PlayerBalanceId, Account> accounts;
+    private final String defaultCurrency;
+    private final PlayerRepository playerRepository;
+    private final PlayerBalanceRepository playerBalanceRepository;
+    private final TransactionLedger transactionLedger;
+    private final IdempotencyCache idempotencyCache;
+    private final IdempotencyKeys idempotencyKeys;
+    private final LongAdder batches;
+
+    /**
+     * The highest transaction ID this partition has journaled. IDs are handed out in increasing order, so every
+     * update the partition journals later has a higher ID.
+     */
+    private volatile int committedThrough;
+
+    /**
+     * Set while the partition journals and publishes a batch, from before its IDs are handed out until it is answered.
+     */
+    private volatile boolean committing;
+
+    // Only touched by the partition thread
+    private final List<PendingUpdate> pending = new ArrayList<>();
+    private final HashSet<String> pendingKeys = new HashSet<>();
+
+    EnginePartition(Map<PlayerBalanceId, Account> accounts,
+                    String defaultCurrency,
+                    PlayerRepository playerRepository,
+                    PlayerBalanceRepository playerBalanceRepository,
+                    TransactionLedger transactionLedger,
+                    IdempotencyCache idempotencyCache,
+                    IdempotencyKeys idempotencyKeys,
+                    LongAdder batches,
+                    int committedThrough) {
+        this.accounts = accounts;
+        this.defaultCurrency = defaultCurrency;
+        this.playerRepository = playerRepository;
+        this.playerBalanceRepository = playerBalanceRepository;
+        this.transactionLedger = transactionLedger;
+        this.idempotencyCache = idempotencyCache;
+        this.idempotencyKeys = idempotencyKeys;
+        this.batches = batches;
+        this.committedThrough = committedThrough;
+    }
+
+    /**
+     * @param journaledThrough the highest ID the ledger has journaled, read before calling this
+     * @return the ID through which every update of the partition is journaled and in memory. A partition that is not
+     * committing a batch has nothing in flight, whatever it journals next gets a higher ID than the ledger's, so it
+     * reports that one instead of its own last update.
+     */
+    int committedThrough(int journaledThrough) {
+        var through = committedThrough;
+        return committing ? through : Math.max(through, journaledThrough);
+    }
+
+    @Override
+    public void onEvent(UpdateCommand command, long sequence, boolean endOfBatch) {
+        var balanceId = command.balanceId;
+        var request = command.request;
+        var result = command.result;
+        command.clear();
+
+        try {
+            decide(balanceId, request, result);
+        } catch (RuntimeException e) {
+            idempotencyKeys.release(request.getIdempotencyKey());
+            result.completeExceptionally(e);
+        }
+        if (endOfBatch) {
+            commit();
+        }
+    }
+
+    private void decide(PlayerBalanceId balanceId, UpdateBalanceRequest request, CompletableFuture<UpdateBalanceResponse> result) {
+        var playerId = balanceId.getPlayerId();
+        var key = request.getIdempotencyKey();
+        if (key != null) {
+            // A retry of an update that is still in this batch: settle the batch first, then answer like any retry
+            if (pendingKeys.contains(key)) {
+                commit();
+            }
+            var replayed = idempotencyCache.find(playerId, key);
+            if (replayed != null) {
+                idempotencyKeys.release(key);
+                result.complete(replayed);
+                return;
+            }
+        }
+
+        var account = accounts.get(balanceId);
+        if (account == null) {
+            account = load(balanceId);
+        }
+        // The service has validated the amount, so the conversion is exact
+        var amount = Money.toMinorUnits(request.getAmount());
+        if (TransactionType.WAGER.equals(request.getTransactionType()) && account.balance < amount) {
+            throw new InsufficientBalanceException("You do not have sufficient balance to place this wager. Please adjust your wager to be within your available balance.");
+        }
+        account.balance = TransactionType.WAGER.equals(request.getTransactionType())
+                ? Money.subtract(account.balance, amount)
+                : Money.add(account.balance, amount);
+
+        var transaction = Transaction.builder()
+                .player(Player.builder().playerId(playerId).build())
+                .amount(request.getAmount())
+                .currency(balanceId.getCurrency())
+                .transactionType(request.getTransactionType())
+                .timestamp(LocalDateTime.now())
+                .balanceAfter(Money.toDecimal(account.balance))
+                .idempotencyKey(key)
+                .build();
+        pending.add(new PendingUpdate(account, account.balance, transaction, result));
+        if (key != null) {
+            pendingKeys.add(key);
+        }
+    }
+
+    /**
+     * Loads a balance that is not in memory: one of a player created after the engine started, left out of the snapshot
+     * it started from, or in a currency the player has not used yet. The ledger replays its journal before the engine
+     * starts, and a balance that is not in memory has no events, so the stored balance is current.
+     */
+    private Account load(PlayerBalanceId balanceId) {
+        Account account;
+        if (defaultCurrency.equals(balanceId.getCurrency())) {
+            var player = playerRepository.findById(balanceId.getPlayerId())
+                    .orElseThrow(() -> new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID."));
+            account = new Account(Money.toMinorUnits(player.getBalance()), player.getLastTransactionId() == null ? 0 : player.getLastTransactionId());
+        } else {
+            var balance = playerBalanceRepository.findById(balanceId);
+            if (balance.isEmpty() && !playerRepository.existsById(balanceId.getPlayerId())) {
+                throw new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID.");
+            }
+            account = balance.map(stored -> new Account(Money.toMinorUnits(stored.getBalance()),
+                            stored.getLastTransactionId() == null ? 0 : stored.getLastTransactionId()))
+                    .orElseGet(() -> new Account(0, 0));
+        }
+        // A balance read may have loaded it meanwhile, see WalletEngine#balances
+        var loaded = accounts.putIfAbsent(balanceId, account);
+        return loaded == null ? account : loaded;
+    }
+
+    private void commit() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        batches.increment();
+        committing = true;
+        try {
+            publish();
+        } finally {
+            committing = false;
+        }
+    }
+
+    private void publish() {
+        try {
+            transactionLedger.journalEvents(pending.stream().map(PendingUpdate::transaction).toList());
+        } catch (RuntimeException e) {
+            logger.error("Could not journal {} balance updates, rolling them back", pending.size(), e);
+            for (var update : pending) {
+                update.account().balance = update.account().committed.balance();
+            }
+            for (var update : pending) {
+                idempotencyKeys.release(update.transaction().getIdempotencyKey());
+                update.result().completeExceptionally(e);
+            }
+            clear();
+            return;
+        }
+
+        for (var update : pending) {
+            var transaction = update.transaction();
+            var playerId = transaction.getPlayer().getPlayerId();
+            update.account().committed = new Account.Committed(update.balanceAfter(), transaction.getTransactionId());
+            committedThrough = Math.max(committedThrough, transaction.getTransactionId());
+            var response = UpdateBalanceResponse.builder()
+                    .transactionId(transaction.getTransactionId())
+                    .balance(transaction.getBalanceAfter())
+                    .currency(transaction.getCurrency())
+                    .build();
+            // The outcome is cached before the key is released, so a retry finds one or the other
+            idempotencyCache.put(playerId, transaction.getIdempotencyKey(), response);
+            idempotencyKeys.release(transaction.getIdempotencyKey());
+            logger.info("Balance updated player={} transaction={} type={} amount={} currency={} balance={}", playerId,
+                    transaction.getTransactionId(), transaction.getTransactionType(), transaction.getAmount(), transaction.getCurrency(),
+                    transaction.getBalanceAfter());
+            update.result().complete(response);
+        }
+        clear();
+    }
+
+    private void clear() {
+        pending.clear();
+        pendingKeys.clear();
+    }
+
+    private record PendingUpdate(Account account, long balanceAfter, Transaction transaction, CompletableFuture<UpdateBalanceResponse> result) {
+    }
+}
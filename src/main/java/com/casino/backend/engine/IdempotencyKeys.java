@@ -0,0 +1,47 @@
+package com.casino.backend.engine;
+
+import com.casino.backend.exception.InvalidTransactionException;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Idempotency keys of updates that are queued or being applied, with the player they belong to.
+ * <p>
+ * A key's uniqueness is only checked by the database when its row is drained, long after the update was acknowledged.
+ * Two players' updates can run on different partitions, so a key is reserved for its player before the command is
+ * queued and released once the outcome is in the {@link com.casino.backend.cache.IdempotencyCache}.
+ * Retries for the same player share the reservation, their partition answers them from the cache.
+ */
+class IdempotencyKeys {
+
+    private final ConcurrentHashMap<String, Reservation> reservations = new ConcurrentHashMap<>();
+
+    /**
+     * @throws InvalidTransactionException when the key is reserved for another player
+     */
+    void reserve(int playerId, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return;
+        }
+        reservations.compute(idempotencyKey, (key, reservation) -> {
+            if (reservation == null) {
+                return new Reservation(playerId, 1);
+            }
+            if (reservation.playerId() != playerId) {
+                throw new InvalidTransactionException("The idempotency key you provided has already been used for another player. Please use a new key.");
+            }
+            return new Reservation(playerId, reservation.holders() + 1);
+        });
+    }
+
+    void release(String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return;
+        }
+        reservations.computeIfPresent(idempotencyKey, (key, reservation) ->
+                reservation.holders() == 1 ? null : new Reservation(reservation.playerId(), reservation.holders() - 1));
+    }
+
+    private record Reservation(int playerId, int holders) {
+    }
+}
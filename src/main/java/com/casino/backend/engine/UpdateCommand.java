@@ -0,0 +1,30 @@
+package com.casino.backend.engine;
+
+import com.casino.backend.entity.PlayerBalanceId;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.response.UpdateBalanceResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A slot of a partition's ring buffer. Slots are allocated once and reused, the partition copies the fields out
+ * and clears them before the slot is handed back to the producers.
+ */
+final class UpdateCommand {
+
+    PlayerBalanceId balanceId;
+    UpdateBalanceRequest request;
+    CompletableFuture<UpdateBalanceResponse> result;
+
+    void set(PlayerBalanceId balanceId, UpdateBalanceRequest request, CompletableFuture<UpdateBalanceResponse> result) {
+        this.balanceId = balanceId;
+        this.request = request;
+        this.result = result;
+    }
+
+    void clear() {
+        balanceId = null;
+        request = null;
+        result = null;
+    }
+}
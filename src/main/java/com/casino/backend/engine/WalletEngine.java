@@ -0,0 +1,344 @@
+package com.casino.backend.engine;
+
+import com.casino.backend.cache.IdempotencyCache;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.enums.ConcurrencyMode;
+import com.casino.backend.entity.PlayerBalanceId;
+import com.casino.backend.enums.LedgerMode;
+import com.casino.backend.exception.PlayerNotFoundException;
+import com.casino.backend.ledger.TransactionLedger;
+import com.casino.backend.money.Money;
+import com.casino.backend.repository.PlayerBalanceRepository;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.response.UpdateBalanceResponse;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The wallet engine used by the {@code engine} concurrency mode. Every balance, one per player and currency, lives in
+ * memory and is owned by one of {@code casino.wallet.engine.partitions} partitions. Each partition has a ring buffer (an LMAX Disruptor)
+ * and a single thread that applies the commands in arrival order, so an update needs neither a lock nor a database
+ * round trip to be decided. Every applied update is journaled as an event before it is acknowledged; the ledger's
+ * drainer then inserts the rows and writes the balances to the database in the background.
+ * <p>
+ * Every {@code casino.wallet.engine.snapshot-interval} the committed balances are written to a binary snapshot.
+ * On startup the ledger first replays the events the drainer had not finished, so the database holds every
+ * acknowledged update. The engine then loads the latest snapshot and replays only the transactions recorded after it,
+ * which keeps startup time independent of the size of the {@code transactions} table. Without a snapshot every balance
+ * is loaded from the {@code players} and {@code player_balances} tables. The balances in memory are the only ones that are current, so the engine
+ * assumes it is the only writer and one application instance.
+ */
+@Profile("!reactive")
+@Component
+public class WalletEngine implements MeterBinder {
+
+    private static final Logger logger = LogManager.getLogger(WalletEngine.class);
+
+    private final WalletProperties walletProperties;
+    private final PlayerRepository playerRepository;
+    private final PlayerBalanceRepository playerBalanceRepository;
+    private final TransactionLedger transactionLedger;
+    private final IdempotencyCache idempotencyCache;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentHashMap<PlayerBalanceId, Account> accounts = new ConcurrentHashMap<>();
+    private final IdempotencyKeys idempotencyKeys = new IdempotencyKeys();
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final List<Disruptor<UpdateCommand>> disruptors = new ArrayList<>();
+    private final List<EnginePartition> partitions = new ArrayList<>();
+    private RingBuffer<UpdateCommand>[] ringBuffers;
+    private BalanceSnapshotStore snapshotStore;
+    private ScheduledExecutorService snapshotScheduler;
+    private long snapshotProgress = -1;
+
+    public WalletEngine(WalletProperties walletProperties,
+                        PlayerRepository playerRepository,
+                        PlayerBalanceRepository playerBalanceRepository,
+                        TransactionLedger transactionLedger,
+                        IdempotencyCache idempotencyCache,
+                        JdbcTemplate jdbcTemplate) {
+        this.walletProperties = walletProperties;
+        this.playerRepository = playerRepository;
+        this.playerBalanceRepository = playerBalanceRepository;
+        this.transactionLedger = transactionLedger;
+        this.idempotencyCache = idempotencyCache;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    void start() throws IOException {
+        if (walletProperties.getConcurrencyMode() != ConcurrencyMode.ENGINE) {
+            return;
+        }
+        if (walletProperties.getLedger().getMode() != LedgerMode.JOURNAL) {
+            throw new IllegalStateException("The engine concurrency mode requires the journal ledger mode");
+        }
+        var startNanos = System.nanoTime();
+        var engine = walletProperties.getEngine();
+        snapshotStore = new BalanceSnapshotStore(engine.getSnapshotDirectory());
+        // The ledger has already replayed its journal, so the database holds every acknowledged update
+        var storedThrough = jdbcTemplate.queryForObject("select coalesce(max(transaction_id), 0) from transactions", Integer.class);
+        var defaultCurrency = walletProperties.getDefaultCurrency();
+        var snapshot = snapshotStore.loadLatest();
+        if (snapshot.isPresent() && snapshot.get().watermark() > storedThrough) {
+            // Typically a database that was recreated while the snapshot directory was kept
+            logger.warn("Ignoring balance snapshot {}, it is ahead of the database", snapshot.get().file());
+            snapshot = Optional.empty();
+        }
+        if (snapshot.isPresent()) {
+            accounts.putAll(snapshot.get().accounts());
+            var replayed = replayAfter(snapshot.get().watermark());
+            logger.info("Loaded balance snapshot {} with {} balances and replayed {} later transactions",
+                    snapshot.get().file().getFileName(), snapshot.get().accounts().size(), replayed);
+        } else {
+            jdbcTemplate.query("select player_id, balance, last_transaction_id from players",
+                    row -> {
+                        accounts.put(new PlayerBalanceId(row.getInt(1), defaultCurrency),
+                                new Account(Money.toMinorUnits(row.getBigDecimal(2)), row.getInt(3)));
+                    });
+            jdbcTemplate.query("select player_id, currency, balance, last_transaction_id from player_balances",
+                    row -> {
+                        accounts.put(new PlayerBalanceId(row.getInt(1), row.getString(2)),
+                                new Account(Money.toMinorUnits(row.getBigDecimal(3)), row.getInt(4)));
+                    });
+        }
+
+        ringBuffers = new RingBuffer[engine.getPartitions()];
+        for (int i = 0; i < engine.getPartitions(); i++) {
+            var threadName = "wallet-engine-" + i;
+            var disruptor = new Disruptor<>(UpdateCommand::new, ceilingPowerOfTwo(engine.getRingSize()), runnable -> {
+                var thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }, ProducerType.MULTI, new BlockingWaitStrategy());
+            var partition = new EnginePartition(accounts, defaultCurrency, playerRepository, playerBalanceRepository, transactionLedger,
+                    idempotencyCache, idempotencyKeys, batches, storedThrough);
+            disruptor.handleEventsWith(partition);
+            ringBuffers[i] = disruptor.start();
+            disruptors.add(disruptor);
+            partitions.add(partition);
+        }
+
+        var interval = engine.getSnapshotInterval().toMillis();
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "wallet-engine-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::snapshotQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        logger.info("Wallet engine started with {} partitions and {} balances in {} ms", engine.getPartitions(), accounts.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Waits until every queued command has been applied and journaled, then writes a final snapshot.
+     */
+    @PreDestroy
+    void stop() throws IOException {
+        if (ringBuffers == null) {
+            return;
+        }
+        disruptors.forEach(Disruptor::shutdown);
+        snapshotScheduler.shutdown();
+        try {
+            snapshotScheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshot();
+    }
+
+    /**
+     * Applies the transactions recorded after the snapshot's watermark to the balances it holds. Each balance only
+     * takes the ones newer than its own snapshot entry. Balances that are not in the snapshot are loaded on first use.
+     *
+     * @return the number of transactions applied
+     */
+    private int replayAfter(int watermark) {
+        var defaultCurrency = walletProperties.getDefaultCurrency();
+        var replayed = new int[1];
+        jdbcTemplate.query("select player_id, currency, transaction_id, balance_after from transactions where transaction_id > ? order by transaction_id",
+                row -> {
+                    var currency = row.getString(2);
+                    var account = accounts.get(new PlayerBalanceId(row.getInt(1), currency == null ? defaultCurrency : currency));
+                    var transactionId = row.getInt(3);
+                    if (account != null && transactionId > account.committed.lastTransactionId()) {
+                        var balance = Money.toMinorUnits(row.getBigDecimal(4));
+                        account.balance = balance;
+                        account.committed = new Account.Committed(balance, transactionId);
+                        replayed[0]++;
+                    }
+                },
+                watermark);
+        return replayed[0];
+    }
+
+    /**
+     * Writes a snapshot, unless no partition has journaled anything since the last one.
+     */
+    void snapshot() throws IOException {
+        // The watermarks are read before the balances: an update journaled after this point has a higher ID,
+        // so it is replayed on startup whether or not the walk over the balances below already saw it. The ledger's
+        // is read first, so an idle partition that reports it cannot have journaled anything below it since.
+        var journaledThrough = transactionLedger.journaledThrough();
+        var watermark = Integer.MAX_VALUE;
+        long progress = 0;
+        for (var partition : partitions) {
+            var committedThrough = partition.committedThrough(journaledThrough);
+            watermark = Math.min(watermark, committedThrough);
+            progress += committedThrough;
+        }
+        if (progress == snapshotProgress) {
+            return;
+        }
+        snapshotStore.write(watermark, accounts);
+        snapshotProgress = progress;
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            // The previous snapshot stays valid, startup just replays more transactions
+            logger.error("Could not write a balance snapshot", e);
+        }
+    }
+
+    /**
+     * Queues the update on the partition of the player's balance in the currency. The caller must have validated the
+     * request and resolved its currency. The call only waits when the partition's ring buffer is full.
+     *
+     * @return completes with the outcome once the update is durable, or exceptionally when it is rejected
+     */
+    public CompletableFuture<UpdateBalanceResponse> submit(Integer playerId, String currency, UpdateBalanceRequest request) {
+        if (ringBuffers == null) {
+            throw new IllegalStateException("The wallet engine only runs in the engine concurrency mode");
+        }
+        idempotencyKeys.reserve(playerId, request.getIdempotencyKey());
+        var result = new CompletableFuture<UpdateBalanceResponse>();
+        var balanceId = new PlayerBalanceId(playerId, currency);
+        try {
+            // A player's balances in different currencies are spread over the partitions like any two balances
+            ringBuffers[Math.floorMod(playerId * 31 + currency.hashCode(), ringBuffers.length)].publishEvent(
+                    (command, sequence, id, updateRequest, future) -> command.set(id, updateRequest, future),
+                    balanceId, request, result);
+        } catch (RuntimeException e) {
+            idempotencyKeys.release(request.getIdempotencyKey());
+            throw e;
+        }
+        commands.increment();
+        return result;
+    }
+
+    /**
+     * @return the balance after the last journaled update, or {@code null} when it is not in memory
+     */
+    public BigDecimal balance(Integer playerId, String currency) {
+        var account = accounts.get(new PlayerBalanceId(playerId, currency));
+        return account == null ? null : Money.toDecimal(account.committed.balance());
+    }
+
+    /**
+     * The player's balance in every accepted currency, after the last journaled update. Balances that are not in memory
+     * are current in the database: they are all read with one query and kept, so the next read is answered from memory.
+     *
+     * @return the default currency first
+     */
+    public Map<String, BigDecimal> balances(Integer playerId) {
+        var currencies = walletProperties.acceptedCurrencies();
+        var balances = new LinkedHashMap<String, BigDecimal>(currencies.size() * 2);
+        Map<String, Account> stored = null;
+        for (var currency : currencies) {
+            var balanceId = new PlayerBalanceId(playerId, currency);
+            var account = accounts.get(balanceId);
+            if (account == null) {
+                if (stored == null) {
+                    stored = loadStored(playerId);
+                }
+                var loaded = stored.getOrDefault(currency, new Account(0, 0));
+                // A partition that loaded the balance first keeps its own, which may already be ahead
+                var present = accounts.putIfAbsent(balanceId, loaded);
+                account = present == null ? loaded : present;
+            }
+            balances.put(currency, Money.toDecimal(account.committed.balance()));
+        }
+        return balances;
+    }
+
+    private Map<String, Account> loadStored(Integer playerId) {
+        var stored = playerRepository.findAllBalances(playerId, walletProperties.getDefaultCurrency());
+        if (stored.isEmpty()) {
+            throw new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID.");
+        }
+        var accounts = new LinkedHashMap<String, Account>();
+        for (var balance : stored) {
+            accounts.put(balance.getCurrency(), new Account(Money.toMinorUnits(balance.getBalance()),
+                    balance.getLastTransactionId() == null ? 0 : balance.getLastTransactionId()));
+        }
+        return accounts;
+    }
+
+    private long backlog() {
+        long backlog = 0;
+        for (var ringBuffer : ringBuffers) {
+            backlog += ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
+        }
+        return backlog;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (ringBuffers == null) {
+            return;
+        }
+        FunctionCounter.builder("casino.wallet.engine.commands", commands, LongAdder::sum)
+                .description("Balance updates queued on the engine")
+                .register(registry);
+        FunctionCounter.builder("casino.wallet.engine.batches", batches, LongAdder::sum)
+                .description("Groups of engine updates journaled with one append")
+                .register(registry);
+        Gauge.builder("casino.wallet.engine.backlog", this, WalletEngine::backlog)
+                .description("Balance updates queued on the engine and not yet applied")
+                .register(registry);
+        Gauge.builder("casino.wallet.engine.players", accounts, ConcurrentHashMap::size)
+                .description("Player balances held in memory, one per player and currency")
+                .register(registry);
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        if (value <= 1) {
+            return 1;
+        }
+        return Integer.highestOneBit(value - 1) << 1;
+    }
+}
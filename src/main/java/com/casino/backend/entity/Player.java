@@ -16,7 +16,8 @@ import java.math.BigDecimal;
 @Table(name = "players")
 public class Player {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "player_seq")
+    @SequenceGenerator(name = "player_seq", sequenceName = "player_seq", allocationSize = 50)
     private Integer playerId;
 
     @Column(unique = true, nullable = false, length = 50)
@@ -24,4 +25,33 @@ public class Player {
 
     @Column(nullable = false)
     private BigDecimal balance;
+
+    /**
+     * Incremented on every balance change, both by Hibernate and by the guarded UPDATE statements in PlayerRepository,
+     * so an optimistic writer always notices a concurrent change.
+     */
+    @Version
+    private Long version;
+
+    /**
+     * Highest transaction ID applied to this balance. Only maintained in journal ledger mode, where it tells
+     * replay which journaled entries belong to committed balance changes.
+     */
+    private Integer lastTransactionId;
+
+    /**
+     * The part of {@link #balance} that is bonus money, the rest is cash. {@code null} when the player has no bonus.
+     * It is maintained by {@link com.casino.backend.bonus.BonusWallet} on every movement.
+     */
+    private BigDecimal bonusBalance;
+
+    /**
+     * Total amount the player must wager before the bonus becomes cash, {@code null} when the player has no bonus.
+     */
+    private BigDecimal wageringRequired;
+
+    /**
+     * Amount wagered since the bonus was first granted, counted towards {@link #wageringRequired}.
+     */
+    private BigDecimal wageringProgress;
 }
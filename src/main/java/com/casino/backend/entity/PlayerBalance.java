@@ -0,0 +1,44 @@
+package com.casino.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+
+/**
+ * A player's balance in a currency other than the default one, whose balance stays in {@code players.balance}.
+ * The row is created by the first movement in the currency. All balances of one player are found with a single
+ * lookup of the player index, the primary key columns are not ordered by player.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+@ToString
+@Entity
+@IdClass(PlayerBalanceId.class)
+@Table(name = "player_balances", indexes = @Index(name = "idx_player_balances_player", columnList = "player_id"))
+public class PlayerBalance {
+    @Id
+    private Integer playerId;
+
+    @Id
+    @Column(length = 3)
+    private String currency;
+
+    @Column(nullable = false)
+    private BigDecimal balance;
+
+    /**
+     * Incremented on every balance change, like {@link Player#getVersion()}.
+     */
+    @Version
+    private Long version;
+
+    /**
+     * Highest transaction ID applied to this balance, see {@link Player#getLastTransactionId()}.
+     */
+    private Integer lastTransactionId;
+}
@@ -0,0 +1,21 @@
+package com.casino.backend.entity;
+
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * Identifies one balance of a player: the player and the currency. Besides being the key of {@link PlayerBalance},
+ * it is the unit that the wallet locks, caches and keeps in memory, so updates in different currencies never wait
+ * for each other.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@ToString
+public class PlayerBalanceId implements Serializable {
+    private Integer playerId;
+    private String currency;
+}
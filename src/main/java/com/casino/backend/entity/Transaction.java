@@ -15,10 +15,20 @@ import java.time.LocalDateTime;
 @Builder
 @ToString
 @Entity
-@Table(name = "transactions")
+// The history index serves the history queries: a player's rows, newest first, with the ID breaking ties between equal
+// timestamps. The timestamp index lets the archiver read one day of the table without scanning the rest.
+@Table(name = "transactions", indexes = {
+        @Index(name = "idx_transactions_player_history", columnList = "player_id, timestamp desc, transaction_id"),
+        @Index(name = "idx_transactions_timestamp", columnList = "timestamp")
+})
 public class Transaction {
+    /**
+     * Taken from a pooled sequence, so Hibernate reserves 50 IDs per round trip and can batch the inserts.
+     * The journal ledger allocates its IDs from the same generator.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_seq")
+    @SequenceGenerator(name = "transaction_seq", sequenceName = "transaction_seq", allocationSize = 50)
     private Integer transactionId;
 
     @ManyToOne
@@ -28,10 +38,28 @@ public class Transaction {
     @Column(nullable = false)
     private BigDecimal amount;
 
+    /**
+     * The currency of the amount and balance. {@code null} on rows recorded before players held several currencies,
+     * which are in the default currency.
+     */
+    @Column(length = 3)
+    private String currency;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private TransactionType transactionType;
 
     @Column(nullable = false)
     private LocalDateTime timestamp;
+
+    /**
+     * The player's balance right after this transaction, so a retried request can be answered from the ledger.
+     */
+    private BigDecimal balanceAfter;
+
+    /**
+     * The caller's idempotency key. The unique index rejects a duplicate even when it reaches another instance.
+     */
+    @Column(unique = true, length = 64)
+    private String idempotencyKey;
 }
@@ -0,0 +1,59 @@
+package com.casino.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * What a player wagered, won and was granted on one day in one currency, summed over the transactions that were archived out of
+ * the {@code transactions} table. The transactions still in the table are not included. Rows are found by their
+ * primary key, which starts with the player.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+@ToString
+@Entity
+@IdClass(TransactionRollupId.class)
+@Table(name = "transaction_rollups")
+public class TransactionRollup {
+    @Id
+    private Integer playerId;
+
+    @Id
+    @Column(name = "activity_day")
+    private LocalDate day;
+
+    @Id
+    @Column(length = 3)
+    private String currency;
+
+    /**
+     * Sum of the {@code WAGER} amounts.
+     */
+    @Column(nullable = false)
+    private BigDecimal wagered;
+
+    /**
+     * Sum of the {@code WIN} amounts.
+     */
+    @Column(nullable = false)
+    private BigDecimal won;
+
+    /**
+     * Sum of the {@code BONUS_GRANT} amounts.
+     */
+    @Column(nullable = false)
+    private BigDecimal granted;
+
+    /**
+     * Number of transactions of any type.
+     */
+    @Column(nullable = false)
+    private Long transactionCount;
+}
@@ -0,0 +1,21 @@
+package com.casino.backend.entity;
+
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Identifies one {@link TransactionRollup}: the player, the day and the currency.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@ToString
+public class TransactionRollupId implements Serializable {
+    private Integer playerId;
+    private LocalDate day;
+    private String currency;
+}
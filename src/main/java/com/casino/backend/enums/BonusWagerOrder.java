@@ -0,0 +1,12 @@
+package com.casino.backend.enums;
+
+public enum BonusWagerOrder {
+    /**
+     * A wager is paid from cash, bonus money is only spent once the cash is gone.
+     */
+    CASH_FIRST,
+    /**
+     * A wager is paid from bonus money, cash is only spent once the bonus is gone.
+     */
+    BONUS_FIRST
+}
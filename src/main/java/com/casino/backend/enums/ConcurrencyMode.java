@@ -0,0 +1,18 @@
+package com.casino.backend.enums;
+
+public enum ConcurrencyMode {
+    /**
+     * The per-player lock orders updates and a guarded UPDATE statement changes the balance in the database.
+     */
+    ATOMIC,
+    /**
+     * No lock is taken. The player is read, validated and written with a version check,
+     * and the update is retried with backoff when another writer got there first.
+     */
+    OPTIMISTIC,
+    /**
+     * Balances live in memory in the wallet engine, where one thread per partition of players applies every update.
+     * Updates are acknowledged once journaled and written to the database in the background. Requires the journal ledger mode.
+     */
+    ENGINE
+}
@@ -0,0 +1,13 @@
+package com.casino.backend.enums;
+
+public enum LedgerMode {
+    /**
+     * Every transaction row is inserted into the database before the update is acknowledged.
+     */
+    DIRECT,
+    /**
+     * Transaction rows are appended to a local journal and acknowledged once the journal is synced to disk.
+     * A background writer inserts them into the database in large batches.
+     */
+    JOURNAL
+}
@@ -0,0 +1,13 @@
+package com.casino.backend.enums;
+
+public enum ReplicaReadPolicy {
+    /**
+     * Every read marked for the replica goes to the replica, even right after the player's own write.
+     */
+    REPLICA,
+    /**
+     * Reads of a player written within the replica's maximum lag go to the primary, so a player always sees its own
+     * writes. Other reads go to the replica.
+     */
+    READ_YOUR_WRITES
+}
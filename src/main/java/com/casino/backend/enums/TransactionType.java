@@ -13,15 +13,23 @@ import java.io.IOException;
 // Specifies that TransactionType should be deserialized using the custom deserializer defined below
 @JsonDeserialize(using = TransactionType.TransactionTypeDeserializer.class)
 public enum TransactionType {
-    WAGER("WAGER"),
-    WIN("WIN");
+    WAGER("WAGER", true),
+    WIN("WIN", true),
+    /**
+     * Bonus money credited by a promotion. It is only recorded by the bonus grant, never accepted in an update request.
+     */
+    BONUS_GRANT("BONUS_GRANT", false);
 
     // Getter method to retrieve the value of the enum constant
     private final String value;
 
+    // Whether clients may send this type in an update request
+    private final boolean requestable;
+
     // Constructor to initialize the enum constants with the provided value
-    TransactionType(String value) {
+    TransactionType(String value, boolean requestable) {
         this.value = value;
+        this.requestable = requestable;
     }
 
     // Override toString method to return the value in uppercase
@@ -43,7 +51,7 @@ public enum TransactionType {
             String value = jsonParser.getText();
             // Iterate through all enum constants to find a match (case-insensitive)
             for (TransactionType type : TransactionType.values()) {
-                if (type.value.equalsIgnoreCase(value)) {
+                if (type.requestable && type.value.equalsIgnoreCase(value)) {
                     return type;  // Return the matching enum constant
                 }
             }
@@ -0,0 +1,11 @@
+package com.casino.backend.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class ConcurrentBalanceUpdateException extends RuntimeException {
+    public ConcurrentBalanceUpdateException(String message) {
+        super(message);
+    }
+}
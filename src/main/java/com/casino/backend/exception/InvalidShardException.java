@@ -0,0 +1,11 @@
+package com.casino.backend.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class InvalidShardException extends RuntimeException {
+    public InvalidShardException(String message) {
+        super(message);
+    }
+}
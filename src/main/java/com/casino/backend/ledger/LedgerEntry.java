@@ -0,0 +1,111 @@
+package com.casino.backend.ledger;
+
+import com.casino.backend.entity.Transaction;
+import com.casino.backend.enums.TransactionType;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * One transaction row as it is written to the journal.
+ * The binary layout is private to this class: {@link #writeTo(ByteBuffer)} and {@link #readFrom(ByteBuffer)}
+ * must stay symmetrical. The currency is the last field, so a record journaled before it existed still reads,
+ * with a {@code null} currency, which stands for the default one.
+ */
+record LedgerEntry(int transactionId,
+                   int playerId,
+                   TransactionType transactionType,
+                   BigDecimal amount,
+                   BigDecimal balanceAfter,
+                   LocalDateTime timestamp,
+                   String idempotencyKey,
+                   String currency) {
+
+    static LedgerEntry of(Transaction transaction) {
+        return new LedgerEntry(transaction.getTransactionId(),
+                transaction.getPlayer().getPlayerId(),
+                transaction.getTransactionType(),
+                transaction.getAmount(),
+                transaction.getBalanceAfter(),
+                transaction.getTimestamp(),
+                transaction.getIdempotencyKey(),
+                transaction.getCurrency());
+    }
+
+    int encodedSize() {
+        return Integer.BYTES * 2 + 1
+                + decimalSize(amount) + decimalSize(balanceAfter)
+                + Long.BYTES + Integer.BYTES
+                + stringSize(idempotencyKey) + stringSize(currency);
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        buffer.putInt(transactionId);
+        buffer.putInt(playerId);
+        buffer.put((byte) transactionType.ordinal());
+        writeDecimal(buffer, amount);
+        writeDecimal(buffer, balanceAfter);
+        buffer.putLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(timestamp.getNano());
+        writeString(buffer, idempotencyKey);
+        writeString(buffer, currency);
+    }
+
+    static LedgerEntry readFrom(ByteBuffer buffer) {
+        var transactionId = buffer.getInt();
+        var playerId = buffer.getInt();
+        var transactionType = TransactionType.values()[buffer.get()];
+        var amount = readDecimal(buffer);
+        var balanceAfter = readDecimal(buffer);
+        var timestamp = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+        var idempotencyKey = readString(buffer);
+        var currency = buffer.hasRemaining() ? readString(buffer) : null;
+        return new LedgerEntry(transactionId, playerId, transactionType, amount, balanceAfter, timestamp, idempotencyKey, currency);
+    }
+
+    private static int stringSize(String value) {
+        return Short.BYTES + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+        } else {
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int decimalSize(BigDecimal value) {
+        return Integer.BYTES + 1 + value.unscaledValue().toByteArray().length;
+    }
+
+    private static void writeDecimal(ByteBuffer buffer, BigDecimal value) {
+        var unscaled = value.unscaledValue().toByteArray();
+        buffer.putInt(value.scale());
+        buffer.put((byte) unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer buffer) {
+        var scale = buffer.getInt();
+        var unscaled = new byte[buffer.get()];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
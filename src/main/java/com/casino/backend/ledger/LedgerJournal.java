@@ -0,0 +1,401 @@
+package com.casino.backend.ledger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of ledger entries, stored as a sequence of segment files.
+ * <p>
+ * Appenders encode their records into a shared buffer and wait. A single flusher thread writes whatever has
+ * accumulated and syncs it with one {@code force} call, so one sync makes a whole group of concurrent appends
+ * durable (group commit). While the flusher syncs, new appends collect in a second buffer for the next sync.
+ * <p>
+ * Entries are written either as plain entries, which only count once their database transaction commits, or as events,
+ * which are committed by being synced (see {@link #appendEvents(List)}).
+ * <p>
+ * Each entry is eventually resolved: it is either inserted into the database or aborted. A segment is deleted once
+ * it is no longer the active one and all its entries are resolved. Segments are deleted oldest first,
+ * so an abort record is never lost while the entry it refers to is still on disk.
+ */
+class LedgerJournal implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(LedgerJournal.class);
+
+    private static final byte ENTRY = 1;
+    private static final byte ABORT = 2;
+    private static final byte EVENT = 3;
+    private static final int HEADER_SIZE = Integer.BYTES * 2 + 1;
+    private static final String SEGMENT_PREFIX = "ledger-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+
+    // Everything below is guarded by lock
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private Segment active;
+    private ByteBuffer filling = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private List<Ticket> fillingTickets = new ArrayList<>();
+    private long nextSegmentNumber;
+    private long appends;
+    private long syncs;
+    private IOException failure;
+    private boolean closed;
+    private Thread flusher;
+
+    LedgerJournal(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Reads every segment left over from a previous run. Reading stops at the first torn or corrupt record of a
+     * segment, which can only be the tail that was being written when the process died and was never acknowledged.
+     */
+    Recovered recover() throws IOException {
+        Files.createDirectories(directory);
+        var entries = new ArrayList<LedgerEntry>();
+        var aborted = new HashSet<Integer>();
+        var events = new ArrayList<LedgerEntry>();
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        for (var file : files) {
+            var buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            var crc = new CRC32C();
+            while (buffer.remaining() >= HEADER_SIZE) {
+                var start = buffer.position();
+                var length = buffer.getInt();
+                var checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    logger.warn("Ignoring torn record at offset {} of {}", start, file);
+                    break;
+                }
+                crc.reset();
+                crc.update(buffer.array(), buffer.position(), length);
+                if ((int) crc.getValue() != checksum) {
+                    logger.warn("Ignoring corrupt record at offset {} of {}", start, file);
+                    break;
+                }
+                var record = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                switch (record.get()) {
+                    case ENTRY -> entries.add(LedgerEntry.readFrom(record));
+                    case EVENT -> events.add(LedgerEntry.readFrom(record));
+                    default -> aborted.add(record.getInt());
+                }
+            }
+            nextSegmentNumber = Math.max(nextSegmentNumber, segmentNumber(file) + 1);
+        }
+        return new Recovered(entries, aborted, events, files);
+    }
+
+    /**
+     * Deletes the recovered segments, which the caller has fully replayed, and opens a fresh segment for new appends.
+     */
+    void start(Recovered recovered) throws IOException {
+        for (var file : recovered.segments()) {
+            Files.deleteIfExists(file);
+        }
+        lock.lock();
+        try {
+            active = openSegment();
+        } finally {
+            lock.unlock();
+        }
+        flusher = new Thread(this::flushLoop, "ledger-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Appends the entries and returns once they are synced to disk.
+     *
+     * @return the segment the entries were written to, to be passed to {@link #resolve(Segment, int)} for each entry
+     */
+    Segment append(List<LedgerEntry> entries) {
+        return append(entries, ENTRY);
+    }
+
+    /**
+     * Appends the entries as events and returns once they are synced to disk. An event is committed as soon as it is
+     * synced: there is no database transaction that could still roll it back, so it is never aborted.
+     *
+     * @return the segment the events were written to, to be passed to {@link #resolve(Segment, int)} for each event
+     */
+    Segment appendEvents(List<LedgerEntry> events) {
+        return append(events, EVENT);
+    }
+
+    private Segment append(List<LedgerEntry> entries, byte type) {
+        var ticket = new Ticket();
+        lock.lock();
+        try {
+            checkUsable();
+            for (var entry : entries) {
+                var record = ensureCapacity(HEADER_SIZE + 1 + entry.encodedSize());
+                record.put(type);
+                entry.writeTo(record);
+                finishRecord(record);
+            }
+            appends += entries.size();
+            ticket.entries = entries.size();
+            fillingTickets.add(ticket);
+            flushNeeded.signal();
+            while (ticket.segment == null) {
+                checkUsable();
+                flushed.awaitUninterruptibly();
+            }
+            return ticket.segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that an entry's database transaction rolled back. It does not wait for the sync: any later append
+     * is written after it, so it is on disk before anything that could depend on it.
+     */
+    void appendAbort(int transactionId) {
+        lock.lock();
+        try {
+            checkUsable();
+            var record = ensureCapacity(HEADER_SIZE + 1 + Integer.BYTES);
+            record.put(ABORT);
+            record.putInt(transactionId);
+            finishRecord(record);
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void resolve(Segment segment, int entries) {
+        lock.lock();
+        try {
+            segment.unresolved -= entries;
+            while (!segments.isEmpty() && segments.peekFirst() != active && segments.peekFirst().unresolved == 0) {
+                deleteSegment(segments.pollFirst());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long appends() {
+        lock.lock();
+        try {
+            return appends;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long syncs() {
+        lock.lock();
+        try {
+            return syncs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int segmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.lock();
+        try {
+            for (var segment : segments) {
+                segment.channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer toWrite;
+            List<Ticket> tickets;
+            Segment segment;
+            lock.lock();
+            try {
+                while (filling.position() == 0 && !closed) {
+                    flushNeeded.awaitUninterruptibly();
+                }
+                if (filling.position() == 0) {
+                    return;
+                }
+                toWrite = filling;
+                filling = spare;
+                spare = null;
+                tickets = fillingTickets;
+                fillingTickets = new ArrayList<>();
+                segment = active;
+            } finally {
+                lock.unlock();
+            }
+
+            var written = (long) toWrite.position();
+            try {
+                toWrite.flip();
+                while (toWrite.hasRemaining()) {
+                    segment.channel.write(toWrite);
+                }
+                segment.channel.force(false);
+            } catch (IOException e) {
+                logger.error("Ledger journal write failed, rejecting further appends", e);
+                lock.lock();
+                try {
+                    failure = e;
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                segment.size += written;
+                for (var ticket : tickets) {
+                    segment.unresolved += ticket.entries;
+                    ticket.segment = segment;
+                }
+                syncs++;
+                if (segment.size >= segmentSize) {
+                    active = openSegment();
+                }
+                spare = toWrite.clear();
+                flushed.signalAll();
+            } catch (IOException e) {
+                failure = e;
+                flushed.signalAll();
+                return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private ByteBuffer ensureCapacity(int recordSize) {
+        if (filling.remaining() < recordSize) {
+            var grown = ByteBuffer.allocate(Math.max(filling.capacity() * 2, filling.position() + recordSize));
+            filling.flip();
+            grown.put(filling);
+            filling = grown;
+        }
+        // Reserve the header, it is filled in by finishRecord once the record length is known
+        return filling.slice(filling.position() + HEADER_SIZE - 1, filling.remaining() - HEADER_SIZE + 1);
+    }
+
+    private void finishRecord(ByteBuffer record) {
+        var length = record.position();
+        var start = filling.position();
+        var crc = new CRC32C();
+        crc.update(filling.array(), filling.arrayOffset() + start + HEADER_SIZE - 1, length);
+        filling.putInt(start, length);
+        filling.putInt(start + Integer.BYTES, (int) crc.getValue());
+        filling.position(start + HEADER_SIZE - 1 + length);
+    }
+
+    private void checkUsable() {
+        if (failure != null) {
+            throw new UncheckedIOException("The ledger journal is unavailable", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("The ledger journal is closed");
+        }
+    }
+
+    private Segment openSegment() throws IOException {
+        var file = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        var segment = new Segment(file, channel);
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private void deleteSegment(Segment segment) {
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            logger.warn("Could not delete drained journal segment {}", segment.file, e);
+        }
+    }
+
+    private static long segmentNumber(Path file) {
+        var name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    record Recovered(List<LedgerEntry> entries, Set<Integer> aborted, List<LedgerEntry> events, List<Path> segments) {
+    }
+
+    static final class Segment {
+        private final Path file;
+        private final FileChannel channel;
+        private long size;
+        private int unresolved;
+
+        private Segment(Path file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+
+    private static final class Ticket {
+        private int entries;
+        private Segment segment;
+    }
+}
@@ -0,0 +1,287 @@
+package com.casino.backend.ledger;
+
+import com.casino.backend.cache.RecentTransactionsCache;
+import com.casino.backend.config.HistoryProperties;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.TransactionRollup;
+import com.casino.backend.entity.TransactionRollupId;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.repository.TransactionRollupRepository;
+import com.casino.backend.response.TransactionExportRow;
+import com.casino.backend.shard.ShardRouter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the {@code transactions} table to the recent days, so the queries that read it stay as fast as the table was
+ * when it was small. Every day older than the retention is archived on its own, on every shard:
+ * <ol>
+ *     <li>its rows are written to a compressed NDJSON file, in the format of the transaction export,</li>
+ *     <li>their amounts are added to the player's {@link TransactionRollup} of that day and currency,</li>
+ *     <li>and they are deleted from the table.</li>
+ * </ol>
+ * All three happen in one database transaction per day, the file is moved into place right before it commits. A day
+ * that fails is archived again on the next run, overwriting its file.
+ * <p>
+ * A player's most recent {@link RecentTransactionsCache#CAPACITY} transactions are never archived, however old, so the
+ * last transactions of a player that stopped playing are still there. They are archived once newer ones push them out.
+ */
+@Profile("!reactive")
+@Component
+public class TransactionArchiver {
+
+    private static final Logger logger = LogManager.getLogger(TransactionArchiver.class);
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1, 1, 1, 0, 0);
+
+    private final HistoryProperties.Archive properties;
+    private final WalletProperties walletProperties;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionRollupRepository rollupRepository;
+    private final ObjectMapper objectMapper;
+    private final Counter archivedTransactions;
+    private ScheduledExecutorService scheduler;
+
+    public TransactionArchiver(HistoryProperties historyProperties, WalletProperties walletProperties, ShardRouter shardRouter,
+                               JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                               TransactionRollupRepository rollupRepository, ObjectMapper objectMapper, MeterRegistry registry) {
+        this.properties = historyProperties.getArchive();
+        this.walletProperties = walletProperties;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.rollupRepository = rollupRepository;
+        this.objectMapper = objectMapper;
+        this.archivedTransactions = Counter.builder("casino.history.archived.transactions")
+                .description("Transactions moved from the transactions table to the archive")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        var interval = properties.getInterval().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "transaction-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::archiveQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lets a running archive finish its current day, a day that was cut short is archived again on the next start.
+     */
+    @PreDestroy
+    void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Archives every day that ended before the retention.
+     *
+     * @return the number of transactions archived
+     */
+    public long archive() {
+        return archiveBefore(LocalDateTime.now().minus(properties.getRetention()).toLocalDate());
+    }
+
+    /**
+     * Archives every day before the given one.
+     *
+     * @return the number of transactions archived
+     */
+    public long archiveBefore(LocalDate firstKeptDay) {
+        var archived = 0L;
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            archived += shardRouter.onShard(shard, () -> archiveShard(firstKeptDay.atStartOfDay()));
+        }
+        return archived;
+    }
+
+    private void archiveQuietly() {
+        try {
+            var archived = archive();
+            if (archived > 0) {
+                logger.info("Archived {} transactions", archived);
+            }
+        } catch (RuntimeException e) {
+            // Nothing of the failed day was deleted, the next run archives it again
+            logger.error("Could not archive transactions", e);
+        }
+    }
+
+    private long archiveShard(LocalDateTime end) {
+        var archived = 0L;
+        var from = EARLIEST;
+        while (true) {
+            // Jumps over days without transactions, the timestamp index answers it without reading the rows
+            var oldest = jdbcTemplate.queryForObject("select min(timestamp) from transactions where timestamp >= ? and timestamp < ?",
+                    LocalDateTime.class, from, end);
+            if (oldest == null) {
+                return archived;
+            }
+            var day = oldest.toLocalDate();
+            archived += archiveDay(day);
+            from = day.plusDays(1).atStartOfDay();
+        }
+    }
+
+    private long archiveDay(LocalDate day) {
+        var start = day.atStartOfDay();
+        var end = day.plusDays(1).atStartOfDay();
+        // The latest transactions of the day's players, in one query. Rows before the day rank below all of the day's
+        // rows, so they are left out.
+        var kept = new HashSet<>(jdbcTemplate.queryForList("select transaction_id from ("
+                        + "select transaction_id, row_number() over (partition by player_id order by timestamp desc, transaction_id) as recency "
+                        + "from transactions where timestamp >= ? "
+                        + "and player_id in (select player_id from transactions where timestamp >= ? and timestamp < ?)) ranked "
+                        + "where recency <= ?",
+                Integer.class, start, start, end, RecentTransactionsCache.CAPACITY));
+        try {
+            Files.createDirectories(properties.getDirectory().resolve(MONTH.format(day)));
+            var temporary = Files.createTempFile(properties.getDirectory(), "transactions-", ".tmp");
+            try {
+                var archived = transactionTemplate.execute(status -> archiveDay(start, end, kept, temporary));
+                if (archived > 0) {
+                    archivedTransactions.increment(archived);
+                    logger.debug("Archived {} transactions of {}", archived, day);
+                }
+                return archived;
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Runs in the day's transaction: writes, rolls up and deletes the rows that are not kept.
+     */
+    private long archiveDay(LocalDateTime start, LocalDateTime end, Set<Integer> kept, Path temporary) {
+        var archivedIds = new ArrayList<Integer>();
+        var rollups = new HashMap<TransactionRollupId, TransactionRollup>();
+        var writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (var file = new FileOutputStream(temporary.toFile())) {
+            // Finished rather than closed, closing it would close the file before it is synced
+            var gzip = new GZIPOutputStream(file);
+            try (var generator = objectMapper.getFactory().createGenerator(gzip)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                jdbcTemplate.query("select transaction_id, player_id, transaction_type, amount, balance_after, timestamp, "
+                        + "idempotency_key, currency from transactions where timestamp >= ? and timestamp < ? order by transaction_id",
+                        (RowCallbackHandler) row -> {
+                            if (kept.contains(row.getInt(1))) {
+                                return;
+                            }
+                            var transaction = new TransactionExportRow(row.getInt(1), row.getInt(2),
+                                    TransactionType.valueOf(row.getString(3)), row.getBigDecimal(4), row.getBigDecimal(5),
+                                    row.getObject(6, LocalDateTime.class), row.getString(7), row.getString(8));
+                            try {
+                                writer.writeValue(generator, transaction);
+                                generator.writeRaw('\n');
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            rollUp(rollups, transaction);
+                            archivedIds.add(transaction.getTransactionId());
+                        },
+                        start, end);
+                generator.flush();
+            }
+            gzip.finish();
+            file.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (archivedIds.isEmpty()) {
+            return 0;
+        }
+
+        for (var rollup : rollups.values()) {
+            rollupRepository.findById(new TransactionRollupId(rollup.getPlayerId(), rollup.getDay(), rollup.getCurrency()))
+                    .ifPresent(existing -> {
+                        rollup.setWagered(rollup.getWagered().add(existing.getWagered()));
+                        rollup.setWon(rollup.getWon().add(existing.getWon()));
+                        rollup.setGranted(rollup.getGranted().add(existing.getGranted()));
+                        rollup.setTransactionCount(rollup.getTransactionCount() + existing.getTransactionCount());
+                    });
+            rollupRepository.save(rollup);
+        }
+        rollupRepository.flush();
+        jdbcTemplate.batchUpdate("delete from transactions where transaction_id = ?", archivedIds, properties.getDeleteBatchSize(),
+                (statement, transactionId) -> statement.setInt(1, transactionId));
+
+        // Named after the first row, so the archive of the same rows overwrites the file of a run that did not commit
+        var day = start.toLocalDate();
+        var target = properties.getDirectory().resolve(MONTH.format(day))
+                .resolve("transactions-" + day + "-" + archivedIds.get(0) + ".ndjson.gz");
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return archivedIds.size();
+    }
+
+    private void rollUp(Map<TransactionRollupId, TransactionRollup> rollups, TransactionExportRow transaction) {
+        var currency = transaction.getCurrency() == null ? walletProperties.getDefaultCurrency() : transaction.getCurrency();
+        var day = transaction.getTimestamp().toLocalDate();
+        var rollup = rollups.computeIfAbsent(new TransactionRollupId(transaction.getPlayerId(), day, currency),
+                id -> new TransactionRollup(id.getPlayerId(), day, currency, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, 0L));
+        if (transaction.getTransactionType() == TransactionType.WAGER) {
+            rollup.setWagered(rollup.getWagered().add(transaction.getAmount()));
+        } else if (transaction.getTransactionType() == TransactionType.WIN) {
+            rollup.setWon(rollup.getWon().add(transaction.getAmount()));
+        } else if (transaction.getTransactionType() == TransactionType.BONUS_GRANT) {
+            rollup.setGranted(rollup.getGranted().add(transaction.getAmount()));
+        }
+        rollup.setTransactionCount(rollup.getTransactionCount() + 1);
+    }
+}
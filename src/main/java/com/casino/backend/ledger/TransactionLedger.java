@@ -0,0 +1,656 @@
+package com.casino.backend.ledger;
+
+import com.casino.backend.cache.RecentTransactionsCache;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.Player;
+import com.casino.backend.entity.PlayerBalanceId;
+import com.casino.backend.entity.Transaction;
+import com.casino.backend.enums.ConcurrencyMode;
+import com.casino.backend.enums.LedgerMode;
+import com.casino.backend.exception.LedgerUnavailableException;
+import com.casino.backend.repository.PlayerBalanceRepository;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.repository.TransactionRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stores transaction rows, either directly or through the write-behind journal, depending on
+ * {@code casino.wallet.ledger.mode}.
+ * <p>
+ * In journal mode a row is appended to the local journal and synced before the balance change commits,
+ * and the {@code last_transaction_id} of the balance it changed is set in the same database transaction. A background
+ * drainer inserts committed rows into the {@code transactions} table in JDBC batches. On startup every journaled row
+ * whose ID is covered by its balance's {@code last_transaction_id}, and that was not aborted, is inserted if it is
+ * missing. Because IDs are allocated under the balance's lock by a single instance, they increase per player and
+ * currency, which is what makes this rule exact. Journal mode therefore assumes one application instance.
+ * <p>
+ * A journaled row only reaches the unique index on {@code idempotency_key} once it is drained, so the keys of rows that
+ * are not drained yet are kept in memory: journaling a key that is already there fails like a duplicate insert, and
+ * {@link #findJournaled} finds the outcome of a committed one. While the database cannot be reached the drainer retries
+ * with a growing backoff. A committed row that breaks a constraint stops the drainer instead, its balance change is
+ * committed and must not lose its ledger row. The rows stay in the journal and are inserted on the next start, once
+ * the cause is fixed, and until then new transactions are rejected.
+ * <p>
+ * The wallet engine ({@code casino.wallet.concurrency-mode=engine}) journals its transactions as events instead, see
+ * {@link #journalEvents(List)}. They carry their own balance, so the drainer also writes it to the balance's row.
+ * <p>
+ * In every mode, a transaction is added to the {@link RecentTransactionsCache} once it is committed.
+ */
+@Profile("!reactive")
+@Component
+public class TransactionLedger implements MeterBinder {
+
+    private static final Logger logger = LogManager.getLogger(TransactionLedger.class);
+
+    private static final String INSERT_TRANSACTION = "insert into transactions "
+            + "(transaction_id, player_id, amount, transaction_type, timestamp, balance_after, idempotency_key, currency) "
+            + "values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String APPLY_BALANCE = "update players set balance = ?, last_transaction_id = ?, version = version + 1 "
+            + "where player_id = ? and (last_transaction_id is null or last_transaction_id < ?)";
+    // The engine never writes to the database itself, so a player's first event in a currency creates the balance
+    private static final String APPLY_CURRENCY_BALANCE = "merge into player_balances b "
+            + "using (select player_id from players where player_id = ?) p on (b.player_id = p.player_id and b.currency = ?) "
+            + "when matched and (b.last_transaction_id is null or b.last_transaction_id < ?) "
+            + "then update set balance = ?, last_transaction_id = ?, version = b.version + 1 "
+            + "when not matched then insert (player_id, currency, balance, version, last_transaction_id) values (p.player_id, ?, ?, 0, ?)";
+    private static final int QUERY_CHUNK_SIZE = 1000;
+
+    private final WalletProperties walletProperties;
+    private final TransactionRepository transactionRepository;
+    private final PlayerRepository playerRepository;
+    private final PlayerBalanceRepository playerBalanceRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final RecentTransactionsCache recentTransactionsCache;
+
+    private final BlockingQueue<Journaled> drainQueue = new LinkedBlockingQueue<>();
+    private final Map<String, Undrained> undrainedKeys = new ConcurrentHashMap<>();
+    private final AtomicInteger journaledThrough = new AtomicInteger();
+
+    private LedgerJournal journal;
+    private Thread drainer;
+    private volatile boolean draining;
+    private volatile boolean drainStopped;
+    private final LongAdder drainedRows = new LongAdder();
+    private final LongAdder failedRows = new LongAdder();
+
+    public TransactionLedger(WalletProperties walletProperties,
+                             TransactionRepository transactionRepository,
+                             PlayerRepository playerRepository,
+                             PlayerBalanceRepository playerBalanceRepository,
+                             JdbcTemplate jdbcTemplate,
+                             NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             EntityManager entityManager,
+                             RecentTransactionsCache recentTransactionsCache) {
+        this.walletProperties = walletProperties;
+        this.transactionRepository = transactionRepository;
+        this.playerRepository = playerRepository;
+        this.playerBalanceRepository = playerBalanceRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManager = entityManager;
+        this.recentTransactionsCache = recentTransactionsCache;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        var ledger = walletProperties.getLedger();
+        if (ledger.getMode() != LedgerMode.JOURNAL) {
+            return;
+        }
+        if (walletProperties.getConcurrencyMode() == ConcurrencyMode.OPTIMISTIC) {
+            throw new IllegalStateException("The journal ledger mode requires the atomic or engine concurrency mode");
+        }
+        journal = new LedgerJournal(ledger.getJournalDirectory(), ledger.getSegmentSize().toBytes());
+        var recovered = journal.recover();
+        replay(recovered);
+        journal.start(recovered);
+
+        draining = true;
+        drainer = new Thread(this::drainLoop, "ledger-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+        logger.info("Journal ledger started in {}", ledger.getJournalDirectory().toAbsolutePath());
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        draining = false;
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    public Transaction record(Transaction transaction) {
+        recordAll(List.of(transaction));
+        return transaction;
+    }
+
+    /**
+     * Stores the rows as part of the current database transaction. In journal mode it must be called while the
+     * balances' locks are held, and returns once the rows are durable in the journal.
+     */
+    public List<Transaction> recordAll(List<Transaction> transactions) {
+        if (journal == null) {
+            var saved = transactionRepository.saveAll(transactions);
+            recentTransactionsCache.addAfterCommit(saved);
+            return saved;
+        }
+        if (transactions.isEmpty()) {
+            return transactions;
+        }
+        requireDraining();
+
+        var entries = new ArrayList<LedgerEntry>(transactions.size());
+        var lastIds = new HashMap<PlayerBalanceId, Integer>();
+        for (var transaction : transactions) {
+            transaction.setTransactionId(nextId(transaction));
+            var entry = LedgerEntry.of(transaction);
+            entries.add(entry);
+            lastIds.put(balanceId(entry), transaction.getTransactionId());
+        }
+
+        reserveKeys(entries);
+        LedgerJournal.Segment segment;
+        try {
+            segment = journal.append(entries);
+        } catch (RuntimeException e) {
+            entries.forEach(this::releaseKey);
+            throw e;
+        }
+        journaled(entries);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    for (var entry : entries) {
+                        if (entry.idempotencyKey() != null) {
+                            undrainedKeys.put(entry.idempotencyKey(), new Undrained(entry, true));
+                        }
+                        drainQueue.add(new Journaled(entry, segment, false));
+                    }
+                    recentTransactionsCache.addAll(transactions);
+                } else {
+                    for (var entry : entries) {
+                        journal.appendAbort(entry.transactionId());
+                        releaseKey(entry);
+                    }
+                    journal.resolve(segment, entries.size());
+                }
+            }
+        });
+        lastIds.forEach((balanceId, transactionId) -> {
+            if (walletProperties.isDefaultCurrency(balanceId.getCurrency())) {
+                playerRepository.recordLastTransaction(balanceId.getPlayerId(), transactionId);
+            } else {
+                playerBalanceRepository.recordLastTransaction(balanceId.getPlayerId(), balanceId.getCurrency(), transactionId);
+            }
+        });
+        return transactions;
+    }
+
+    /**
+     * Journals the transactions as events, outside of any database transaction, and returns once they are durable.
+     * From then on they are committed: the drainer inserts the rows and moves each balance and its
+     * {@code last_transaction_id} forward to the latest event, and a restart replays any event that was not drained.
+     * The caller must not record two transactions of one balance concurrently, so that IDs increase per balance.
+     */
+    public List<Transaction> journalEvents(List<Transaction> transactions) {
+        if (journal == null) {
+            throw new IllegalStateException("Events can only be recorded in the journal ledger mode");
+        }
+        if (transactions.isEmpty()) {
+            return transactions;
+        }
+        requireDraining();
+
+        var sessionFactory = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+        // A stateless session of its own, the caller has no persistence context. It only opens a connection when
+        // the pooled generator has to fetch the next block of IDs.
+        try (var session = sessionFactory.openStatelessSession()) {
+            for (var transaction : transactions) {
+                transaction.setTransactionId(nextId((SharedSessionContractImplementor) session, transaction));
+            }
+        }
+        var events = transactions.stream().map(LedgerEntry::of).toList();
+        var segment = journal.appendEvents(events);
+        journaled(events);
+        for (var event : events) {
+            if (event.idempotencyKey() != null) {
+                undrainedKeys.put(event.idempotencyKey(), new Undrained(event, true));
+            }
+            drainQueue.add(new Journaled(event, segment, true));
+        }
+        recentTransactionsCache.addAll(transactions);
+        return transactions;
+    }
+
+    /**
+     * A row journaled once the drainer has stopped would never reach the table, and would only grow the queue.
+     */
+    private void requireDraining() {
+        if (drainStopped) {
+            throw new LedgerUnavailableException("The wallet cannot record transactions at the moment. Please try again later.");
+        }
+    }
+
+    /**
+     * @return the highest transaction ID journaled since startup, or 0 before the first. IDs are handed out in
+     * increasing order, so a transaction journaled later has a higher one.
+     */
+    public int journaledThrough() {
+        return journaledThrough.get();
+    }
+
+    private void journaled(List<LedgerEntry> entries) {
+        journaledThrough.accumulateAndGet(entries.get(entries.size() - 1).transactionId(), Math::max);
+    }
+
+    /**
+     * Finds a committed row by its idempotency key among the rows that are journaled but not yet in the
+     * {@code transactions} table. A key that is not there may still be in the table.
+     */
+    public Optional<Transaction> findJournaled(String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return Optional.empty();
+        }
+        var undrained = undrainedKeys.get(idempotencyKey);
+        return undrained == null || !undrained.committed() ? Optional.empty() : Optional.of(toTransaction(undrained.entry()));
+    }
+
+    /**
+     * See {@link #findJournaled(String)}.
+     */
+    public List<Transaction> findAllJournaled(Collection<String> idempotencyKeys) {
+        if (undrainedKeys.isEmpty()) {
+            return List.of();
+        }
+        var found = new ArrayList<Transaction>();
+        for (var key : idempotencyKeys) {
+            findJournaled(key).ifPresent(found::add);
+        }
+        return found;
+    }
+
+    /**
+     * Claims the keys of the entries the way the unique index claims them on insert.
+     *
+     * @throws DataIntegrityViolationException when a key is already journaled, committed or not
+     */
+    private void reserveKeys(List<LedgerEntry> entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            var entry = entries.get(i);
+            if (entry.idempotencyKey() != null && undrainedKeys.putIfAbsent(entry.idempotencyKey(), new Undrained(entry, false)) != null) {
+                entries.subList(0, i).forEach(this::releaseKey);
+                throw new DataIntegrityViolationException("Idempotency key " + entry.idempotencyKey() + " is already journaled");
+            }
+        }
+    }
+
+    /**
+     * Forgets the entry's key once its row is in the table, or was aborted.
+     */
+    private void releaseKey(LedgerEntry entry) {
+        if (entry.idempotencyKey() != null) {
+            undrainedKeys.computeIfPresent(entry.idempotencyKey(),
+                    (key, undrained) -> undrained.entry().transactionId() == entry.transactionId() ? null : undrained);
+        }
+    }
+
+    private static Transaction toTransaction(LedgerEntry entry) {
+        return Transaction.builder()
+                .transactionId(entry.transactionId())
+                .player(Player.builder().playerId(entry.playerId()).build())
+                .amount(entry.amount())
+                .currency(entry.currency())
+                .transactionType(entry.transactionType())
+                .timestamp(entry.timestamp())
+                .balanceAfter(entry.balanceAfter())
+                .idempotencyKey(entry.idempotencyKey())
+                .build();
+    }
+
+    private Integer nextId(Transaction transaction) {
+        return nextId(entityManager.unwrap(SharedSessionContractImplementor.class), transaction);
+    }
+
+    /**
+     * Uses the entity's own pooled sequence generator, so journaled rows and rows saved through JPA share one ID space.
+     */
+    private static Integer nextId(SharedSessionContractImplementor session, Transaction transaction) {
+        var generator = (BeforeExecutionGenerator) session.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(Transaction.class)
+                .getGenerator();
+        return (Integer) generator.generate(session, transaction, null, EventType.INSERT);
+    }
+
+    private void drainLoop() {
+        var batchSize = walletProperties.getLedger().getDrainBatchSize();
+        var intervalNanos = walletProperties.getLedger().getDrainInterval().toNanos();
+        var maxBackoffNanos = walletProperties.getLedger().getDrainRetryMaxBackoff().toNanos();
+        var backoffNanos = 0L;
+        var batch = new ArrayList<Journaled>(batchSize);
+        while (draining || !drainQueue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (backoffNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(backoffNanos);
+                }
+                if (batch.isEmpty()) {
+                    var first = drainQueue.poll(intervalNanos, TimeUnit.NANOSECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    drainQueue.drainTo(batch, batchSize - 1);
+                }
+                drain(batch, batch.stream().filter(journaled -> !journaled.event()).toList(), false);
+                drain(batch, batch.stream().filter(Journaled::event).toList(), true);
+                backoffNanos = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (UndrainableEntryException e) {
+                // Nothing is resolved from here on, so the journal keeps every row for the replay on the next start
+                drainStopped = true;
+                logger.error("Stopped draining the journal, {} committed transactions are waiting. Fix the row and restart.",
+                        drainQueue.size() + batch.size(), e);
+                return;
+            } catch (DataAccessException e) {
+                if (!draining) {
+                    logger.warn("Could not drain {} journaled transactions before stopping, they are replayed on the next start",
+                            drainQueue.size() + batch.size(), e);
+                    return;
+                }
+                // Typically the database is unreachable. The rows that are still in the batch are retried, the ones
+                // that made it in were removed from it.
+                backoffNanos = backoffNanos == 0 ? intervalNanos : Math.min(backoffNanos * 2, maxBackoffNanos);
+                logger.warn("Could not drain {} journaled transactions, retrying in {} ms", batch.size(),
+                        TimeUnit.NANOSECONDS.toMillis(backoffNanos), e);
+            } catch (RuntimeException e) {
+                // Never lose the thread: the batch stays in the journal and is replayed on the next start
+                logger.error("Could not drain {} journaled transactions", batch.size(), e);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Inserts the rows, one kind of the batch, and removes them from the batch once they are in. When a row breaks a
+     * constraint they are retried one by one, to find the row that cannot be inserted.
+     *
+     * @param events whether the rows are events, whose balances are written to the players in the same database transaction
+     */
+    private void drain(List<Journaled> batch, List<Journaled> rows, boolean events) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            insert(rows.stream().map(Journaled::entry).toList(), events);
+        } catch (DataIntegrityViolationException e) {
+            if (rows.size() == 1) {
+                // The balance change was acknowledged: dropping the row would leave it without a ledger row
+                failedRows.increment();
+                throw new UndrainableEntryException(rows.get(0).entry(), e);
+            }
+            logger.warn("Batch insert of {} journaled transactions failed, retrying them one by one", rows.size(), e);
+            for (var row : rows) {
+                drain(batch, List.of(row), events);
+            }
+            return;
+        }
+        rows.forEach(journaled -> releaseKey(journaled.entry()));
+        resolve(rows);
+        batch.removeAll(rows);
+    }
+
+    /**
+     * Inserts the rows in one JDBC batch.
+     *
+     * @param events whether the rows are events, whose balances are written to the players in the same database transaction
+     */
+    private void insert(List<LedgerEntry> entries, boolean events) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_TRANSACTION, entries, entries.size(),
+                    (statement, entry) -> {
+                        statement.setInt(1, entry.transactionId());
+                        statement.setInt(2, entry.playerId());
+                        statement.setBigDecimal(3, entry.amount());
+                        statement.setString(4, entry.transactionType().name());
+                        statement.setTimestamp(5, Timestamp.valueOf(entry.timestamp()));
+                        statement.setBigDecimal(6, entry.balanceAfter());
+                        statement.setString(7, entry.idempotencyKey());
+                        statement.setString(8, entry.currency());
+                    });
+            if (events) {
+                applyBalances(entries);
+            }
+        });
+        drainedRows.add(entries.size());
+    }
+
+    /**
+     * Writes the balance after each balance's latest event. The guard on {@code last_transaction_id} makes it
+     * idempotent, so events that are replayed after a restart never move a balance backwards.
+     */
+    private void applyBalances(List<LedgerEntry> events) {
+        var latest = new LinkedHashMap<PlayerBalanceId, LedgerEntry>();
+        for (var event : events) {
+            latest.merge(balanceId(event), event, (current, next) -> next.transactionId() > current.transactionId() ? next : current);
+        }
+        var defaultCurrency = new ArrayList<LedgerEntry>();
+        var otherCurrencies = new ArrayList<LedgerEntry>();
+        for (var event : latest.values()) {
+            if (walletProperties.isDefaultCurrency(event.currency())) {
+                defaultCurrency.add(event);
+            } else {
+                otherCurrencies.add(event);
+            }
+        }
+        if (!defaultCurrency.isEmpty()) {
+            jdbcTemplate.batchUpdate(APPLY_BALANCE, defaultCurrency, defaultCurrency.size(), (statement, event) -> {
+                statement.setBigDecimal(1, event.balanceAfter());
+                statement.setInt(2, event.transactionId());
+                statement.setInt(3, event.playerId());
+                statement.setInt(4, event.transactionId());
+            });
+        }
+        if (otherCurrencies.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(APPLY_CURRENCY_BALANCE, otherCurrencies, otherCurrencies.size(), (statement, event) -> {
+            statement.setInt(1, event.playerId());
+            statement.setString(2, event.currency());
+            statement.setInt(3, event.transactionId());
+            statement.setBigDecimal(4, event.balanceAfter());
+            statement.setInt(5, event.transactionId());
+            statement.setString(6, event.currency());
+            statement.setBigDecimal(7, event.balanceAfter());
+            statement.setInt(8, event.transactionId());
+        });
+    }
+
+    /**
+     * The balance an entry belongs to. Entries journaled before there were several currencies have none.
+     */
+    private PlayerBalanceId balanceId(LedgerEntry entry) {
+        return new PlayerBalanceId(entry.playerId(), entry.currency() == null ? walletProperties.getDefaultCurrency() : entry.currency());
+    }
+
+    private void resolve(List<Journaled> batch) {
+        var resolvedPerSegment = new IdentityHashMap<LedgerJournal.Segment, Integer>();
+        for (var journaled : batch) {
+            resolvedPerSegment.merge(journaled.segment(), 1, Integer::sum);
+        }
+        resolvedPerSegment.forEach(journal::resolve);
+    }
+
+    private void replay(LedgerJournal.Recovered recovered) {
+        replayEvents(recovered.events());
+        var entries = recovered.entries().stream()
+                .filter(entry -> !recovered.aborted().contains(entry.transactionId()))
+                .toList();
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        var lastIds = new HashMap<PlayerBalanceId, Integer>();
+        var defaultCurrency = walletProperties.getDefaultCurrency();
+        var playerIds = entries.stream().map(LedgerEntry::playerId).distinct().toList();
+        forEachChunk(playerIds, chunk -> namedParameterJdbcTemplate.query(
+                "select player_id, last_transaction_id from players where player_id in (:ids) and last_transaction_id is not null",
+                Map.of("ids", chunk),
+                row -> {
+                    lastIds.put(new PlayerBalanceId(row.getInt(1), defaultCurrency), row.getInt(2));
+                }));
+        forEachChunk(playerIds, chunk -> namedParameterJdbcTemplate.query(
+                "select player_id, currency, last_transaction_id from player_balances where player_id in (:ids) and last_transaction_id is not null",
+                Map.of("ids", chunk),
+                row -> {
+                    lastIds.put(new PlayerBalanceId(row.getInt(1), row.getString(2)), row.getInt(3));
+                }));
+
+        var stored = storedIds(entries);
+        var missing = entries.stream()
+                .filter(entry -> entry.transactionId() <= lastIds.getOrDefault(balanceId(entry), 0))
+                .filter(entry -> !stored.contains(entry.transactionId()))
+                .toList();
+        insertInBatches(missing, false);
+        logger.info("Replayed journal: {} entries, {} aborted, {} inserted", recovered.entries().size(),
+                recovered.aborted().size(), missing.size());
+    }
+
+    /**
+     * Every event is committed, so each one missing from the database is inserted. The balances are written for all
+     * of them, stored or not, because the drainer may have died between its insert and its balance update.
+     */
+    private void replayEvents(List<LedgerEntry> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        var stored = storedIds(events);
+        var missing = events.stream().filter(event -> !stored.contains(event.transactionId())).toList();
+        insertInBatches(missing, true);
+        transactionTemplate.executeWithoutResult(status -> applyBalances(events));
+        logger.info("Replayed journal: {} events, {} inserted", events.size(), missing.size());
+    }
+
+    private Set<Integer> storedIds(List<LedgerEntry> entries) {
+        var stored = new HashSet<Integer>();
+        forEachChunk(entries.stream().map(LedgerEntry::transactionId).toList(), chunk -> stored.addAll(namedParameterJdbcTemplate.queryForList(
+                "select transaction_id from transactions where transaction_id in (:ids)",
+                Map.of("ids", chunk),
+                Integer.class)));
+        return stored;
+    }
+
+    private void insertInBatches(List<LedgerEntry> entries, boolean events) {
+        var batchSize = walletProperties.getLedger().getDrainBatchSize();
+        for (int from = 0; from < entries.size(); from += batchSize) {
+            insert(entries.subList(from, Math.min(entries.size(), from + batchSize)), events);
+        }
+    }
+
+    private static void forEachChunk(List<Integer> ids, Consumer<List<Integer>> action) {
+        for (int from = 0; from < ids.size(); from += QUERY_CHUNK_SIZE) {
+            action.accept(ids.subList(from, Math.min(ids.size(), from + QUERY_CHUNK_SIZE)));
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (journal == null) {
+            return;
+        }
+        FunctionCounter.builder("casino.wallet.ledger.drain.rows", drainedRows, LongAdder::sum)
+                .description("Journaled transactions inserted into the database")
+                .register(registry);
+        FunctionCounter.builder("casino.wallet.ledger.drain.failures", failedRows, LongAdder::sum)
+                .description("Journaled transactions that could not be inserted")
+                .register(registry);
+        Gauge.builder("casino.wallet.ledger.drain.stopped", this, ledger -> ledger.drainStopped ? 1 : 0)
+                .description("1 once a journaled transaction could not be inserted and draining stopped")
+                .register(registry);
+        FunctionCounter.builder("casino.wallet.ledger.journal.appends", journal, LedgerJournal::appends)
+                .description("Transactions appended to the journal")
+                .register(registry);
+        FunctionCounter.builder("casino.wallet.ledger.journal.syncs", journal, LedgerJournal::syncs)
+                .description("Journal syncs to disk, each covering a group of appends")
+                .register(registry);
+        Gauge.builder("casino.wallet.ledger.journal.segments", journal, LedgerJournal::segmentCount)
+                .description("Journal segment files not yet fully drained")
+                .register(registry);
+        Gauge.builder("casino.wallet.ledger.drain.backlog", drainQueue, BlockingQueue::size)
+                .description("Committed transactions waiting to be inserted")
+                .register(registry);
+    }
+
+    private record Journaled(LedgerEntry entry, LedgerJournal.Segment segment, boolean event) {
+    }
+
+    /**
+     * @param committed whether the row's database transaction committed, an uncommitted one only holds the key
+     */
+    private record Undrained(LedgerEntry entry, boolean committed) {
+    }
+
+    private static class UndrainableEntryException extends RuntimeException {
+        UndrainableEntryException(LedgerEntry entry, DataIntegrityViolationException cause) {
+            super("Journaled transaction cannot be inserted: " + entry, cause);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.casino.backend.metrics;
+
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.exception.ConcurrentBalanceUpdateException;
+import com.casino.backend.exception.InsufficientBalanceException;
+import com.casino.backend.exception.InvalidTransactionException;
+import com.casino.backend.exception.PlayerNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the balance update path. They are registered once at start-up so recording on the hot path is just an increment,
+ * or for timers an increment and a histogram bucket update, with no lookup and no allocation.
+ * Timers publish percentile histograms, so percentiles can be aggregated across instances by the metrics backend.
+ */
+@Component
+public class WalletMetrics {
+
+    private static final Duration MINIMUM_EXPECTED_LATENCY = Duration.ofNanos(1_000);
+    private static final Duration MAXIMUM_EXPECTED_LATENCY = Duration.ofSeconds(10);
+
+    private final Counter optimisticConflicts;
+    private final Counter optimisticRetries;
+    private final Counter optimisticRetriesExhausted;
+
+    // Indexed by transaction type ordinal (the last row for requests without a type), then by outcome ordinal
+    private final Timer[][] updates;
+    private final Map<Outcome, Counter> rejections = new EnumMap<>(Outcome.class);
+    private final Timer lockWait;
+    private final Timer lockHold;
+    private final Timer databaseTransaction;
+    private final Map<DatabaseOperation, Timer> databaseOperations = new EnumMap<>(DatabaseOperation.class);
+
+    public WalletMetrics(MeterRegistry registry) {
+        this.optimisticConflicts = Counter.builder("casino.wallet.optimistic.conflicts")
+                .description("Optimistic balance updates that failed the version check")
+                .register(registry);
+        this.optimisticRetries = Counter.builder("casino.wallet.optimistic.retries")
+                .description("Optimistic balance updates that were retried after a conflict")
+                .register(registry);
+        this.optimisticRetriesExhausted = Counter.builder("casino.wallet.optimistic.exhausted")
+                .description("Optimistic balance updates rejected after running out of attempts")
+                .register(registry);
+
+        var types = TransactionType.values();
+        this.updates = new Timer[types.length + 1][Outcome.values().length];
+        for (int type = 0; type <= types.length; type++) {
+            for (var outcome : Outcome.values()) {
+                updates[type][outcome.ordinal()] = latency("casino.wallet.updates", "Balance updates, by transaction type and outcome")
+                        .tag("type", type < types.length ? types[type].name() : "NONE")
+                        .tag("outcome", outcome.tag())
+                        .register(registry);
+            }
+        }
+        for (var outcome : Outcome.values()) {
+            if (outcome.isRejection()) {
+                rejections.put(outcome, Counter.builder("casino.wallet.rejections")
+                        .description("Balance updates and batch items rejected, by reason")
+                        .tag("reason", outcome.tag())
+                        .register(registry));
+            }
+        }
+        this.lockWait = latency("casino.wallet.lock.wait", "Time spent waiting for player locks").register(registry);
+        this.lockHold = latency("casino.wallet.lock.hold", "Time player locks are held").register(registry);
+        this.databaseTransaction = latency("casino.wallet.db.transaction", "Balance update database transactions, from begin to commit")
+                .register(registry);
+        for (var operation : DatabaseOperation.values()) {
+            databaseOperations.put(operation, latency("casino.wallet.db.operation", "Database calls made by balance updates")
+                    .tag("operation", operation.tag())
+                    .register(registry));
+        }
+    }
+
+    private static Timer.Builder latency(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MINIMUM_EXPECTED_LATENCY)
+                .maximumExpectedValue(MAXIMUM_EXPECTED_LATENCY);
+    }
+
+    public void optimisticConflict() {
+        optimisticConflicts.increment();
+    }
+
+    public void optimisticRetry() {
+        optimisticRetries.increment();
+    }
+
+    public void optimisticRetriesExhausted() {
+        optimisticRetriesExhausted.increment();
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} when the update started
+     */
+    public void updateApplied(TransactionType type, long startNanos) {
+        record(updates[typeIndex(type)][Outcome.SUCCESS.ordinal()], startNanos);
+    }
+
+    public void updateFailed(TransactionType type, long startNanos, RuntimeException e) {
+        var outcome = Outcome.of(e);
+        record(updates[typeIndex(type)][outcome.ordinal()], startNanos);
+        if (outcome.isRejection()) {
+            rejections.get(outcome).increment();
+        }
+    }
+
+    /**
+     * Counts a rejected batch item. Batch items are not timed one by one.
+     */
+    public void batchItemRejected(RuntimeException e) {
+        var outcome = Outcome.of(e);
+        if (outcome.isRejection()) {
+            rejections.get(outcome).increment();
+        }
+    }
+
+    public void lockWaited(long startNanos) {
+        record(lockWait, startNanos);
+    }
+
+    public void lockHeld(long startNanos) {
+        record(lockHold, startNanos);
+    }
+
+    public void databaseTransaction(long startNanos) {
+        record(databaseTransaction, startNanos);
+    }
+
+    public void databaseCall(DatabaseOperation operation, long startNanos) {
+        record(databaseOperations.get(operation), startNanos);
+    }
+
+    private static void record(Timer timer, long startNanos) {
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static int typeIndex(TransactionType type) {
+        return type == null ? TransactionType.values().length : type.ordinal();
+    }
+
+    public enum DatabaseOperation {
+        /**
+         * The guarded UPDATE of the balance.
+         */
+        BALANCE_UPDATE,
+        /**
+         * Reading the player before (optimistic mode) or after (atomic mode) the balance change, or loading and locking the players of a batch.
+         */
+        PLAYER_READ,
+        /**
+         * Storing the transaction rows through the ledger.
+         */
+        LEDGER_WRITE;
+
+        private String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private enum Outcome {
+        SUCCESS,
+        INSUFFICIENT_BALANCE,
+        INVALID_TRANSACTION,
+        PLAYER_NOT_FOUND,
+        CONFLICT,
+        ERROR;
+
+        static Outcome of(RuntimeException e) {
+            if (e instanceof InsufficientBalanceException) {
+                return INSUFFICIENT_BALANCE;
+            }
+            if (e instanceof InvalidTransactionException) {
+                return INVALID_TRANSACTION;
+            }
+            if (e instanceof PlayerNotFoundException) {
+                return PLAYER_NOT_FOUND;
+            }
+            if (e instanceof ConcurrentBalanceUpdateException) {
+                return CONFLICT;
+            }
+            return ERROR;
+        }
+
+        boolean isRejection() {
+            return this != SUCCESS && this != ERROR;
+        }
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.casino.backend.money;
+
+import java.math.BigDecimal;
+
+/**
+ * Amounts inside the wallet are plain {@code long}s counting minor units (cents), so deciding an update neither
+ * allocates nor rounds. {@link BigDecimal} is only used at the edges: request and response bodies, entities and the
+ * ledger rows, which this class converts from and to.
+ * <p>
+ * Conversions are exact. An amount with more decimal places than {@link #SCALE} (other than trailing zeros), or one
+ * that does not fit a {@code long}, is never rounded: the conversion throws {@link ArithmeticException}, and callers
+ * reject the request. Arithmetic throws the same exception on overflow.
+ */
+public final class Money {
+
+    /**
+     * Decimal places of the wallet currency, the scale of the balance and amount columns.
+     */
+    public static final int SCALE = 2;
+
+    private Money() {
+    }
+
+    /**
+     * @throws ArithmeticException when the amount has a non-zero digit beyond {@link #SCALE} or does not fit a {@code long}
+     */
+    public static long toMinorUnits(BigDecimal amount) {
+        return amount.movePointRight(SCALE).longValueExact();
+    }
+
+    public static BigDecimal toDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    /**
+     * @throws ArithmeticException on overflow
+     */
+    public static long add(long minorUnits, long amount) {
+        return Math.addExact(minorUnits, amount);
+    }
+
+    /**
+     * @throws ArithmeticException on overflow
+     */
+    public static long subtract(long minorUnits, long amount) {
+        return Math.subtractExact(minorUnits, amount);
+    }
+}
@@ -0,0 +1,20 @@
+package com.casino.backend.reactive;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Profile("reactive")
+@Configuration
+public class ReactiveConfiguration {
+
+    /**
+     * Tomcat is on the classpath for the servlet stack and Spring Boot would prefer it for the reactive stack too,
+     * serve the reactive endpoints from Netty's event loop instead.
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -0,0 +1,41 @@
+package com.casino.backend.reactive;
+
+import com.casino.backend.customError.ErrorDetail;
+import com.casino.backend.exception.*;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.time.LocalDateTime;
+
+/**
+ * Maps the wallet exceptions to the same statuses and {@link ErrorDetail} bodies as
+ * {@link com.casino.backend.customError.CustomErrorHandler}, which only works on the servlet stack.
+ */
+@Profile("reactive")
+@RestControllerAdvice
+public class ReactiveErrorHandler {
+
+    @ExceptionHandler({
+            InsufficientBalanceException.class,
+            InvalidTransactionException.class,
+            PlayerNotFoundException.class,
+            InvalidTransactionTypeException.class,
+            ConcurrentBalanceUpdateException.class
+    })
+    public ResponseEntity<ErrorDetail> handleWalletException(RuntimeException e, ServerHttpRequest request) {
+        // Every wallet exception declares the status it is mapped to
+        var status = AnnotationUtils.findAnnotation(e.getClass(), ResponseStatus.class).value();
+        ErrorDetail error = new ErrorDetail();
+        error.setTimestamp(LocalDateTime.now());
+        error.setStatus(status.value());
+        error.setError(status.name());
+        error.setReason(e.getMessage());
+        error.setPath(request.getPath().value());
+        return ResponseEntity.status(status).body(error);
+    }
+}
@@ -0,0 +1,40 @@
+package com.casino.backend.reactive;
+
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.response.BalanceResponse;
+import com.casino.backend.response.UpdateBalanceResponse;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+/**
+ * The player balance endpoints of {@link com.casino.backend.controller.PlayerController} on WebFlux, with the same paths,
+ * request and response bodies. Active with the {@code reactive} Spring profile, which replaces the servlet stack.
+ */
+@AllArgsConstructor
+@CrossOrigin("*")
+@Profile("reactive")
+@RestController
+@RequestMapping("/casino")
+public class ReactivePlayerController {
+
+    @Autowired
+    private ReactivePlayerService playerService;
+
+    @GetMapping("/player/{playerId}/balance")
+    public Mono<ResponseEntity<BalanceResponse>> getBalance(@PathVariable Integer playerId) {
+        return playerService.getBalance(playerId)
+                .map(balance -> new ResponseEntity<>(balance, HttpStatus.OK));
+    }
+
+    @PostMapping("/player/{playerId}/balance/update")
+    public Mono<ResponseEntity<UpdateBalanceResponse>> updateBalance(@PathVariable Integer playerId,
+                                                                     @RequestBody UpdateBalanceRequest request) {
+        return playerService.updateBalance(playerId, request)
+                .map(updatedBalance -> new ResponseEntity<>(updatedBalance, HttpStatus.OK));
+    }
+}
@@ -0,0 +1,158 @@
+package com.casino.backend.reactive;
+
+import com.casino.backend.entity.Player;
+import com.casino.backend.entity.PlayerBalance;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The statements of {@link com.casino.backend.repository.PlayerRepository} and
+ * {@link com.casino.backend.repository.PlayerBalanceRepository} used by the balance endpoints, over R2DBC.
+ */
+@AllArgsConstructor
+@Profile("reactive")
+@Repository
+public class ReactivePlayerRepository {
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    /**
+     * Subtracts the amount in a single guarded statement, see {@link com.casino.backend.repository.PlayerRepository#debitBalance}.
+     *
+     * @return the number of updated rows, 0 when the player does not exist or the balance is too low
+     */
+    public Mono<Long> debitBalance(Integer playerId, BigDecimal amount) {
+        return databaseClient.sql("update players set balance = balance - :amount, version = version + 1 where player_id = :playerId and balance >= :amount")
+                .bind("playerId", playerId)
+                .bind("amount", amount)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * @return the number of updated rows, 0 when the player does not exist
+     */
+    public Mono<Long> creditBalance(Integer playerId, BigDecimal amount) {
+        return databaseClient.sql("update players set balance = balance + :amount, version = version + 1 where player_id = :playerId")
+                .bind("playerId", playerId)
+                .bind("amount", amount)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * Subtracts the amount from the player's balance in another currency than the default one,
+     * see {@link com.casino.backend.repository.PlayerBalanceRepository#debitBalance}.
+     *
+     * @return the number of updated rows, 0 when the player has no balance in the currency or it is too low
+     */
+    public Mono<Long> debitBalance(Integer playerId, String currency, BigDecimal amount) {
+        return databaseClient.sql("update player_balances set balance = balance - :amount, version = version + 1 "
+                        + "where player_id = :playerId and currency = :currency and balance >= :amount")
+                .bind("playerId", playerId)
+                .bind("currency", currency)
+                .bind("amount", amount)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * See {@link com.casino.backend.repository.PlayerBalanceRepository#creditBalance}.
+     *
+     * @return the number of updated or inserted rows, 0 when the player does not exist
+     */
+    public Mono<Long> creditBalance(Integer playerId, String currency, BigDecimal amount) {
+        return databaseClient.sql("merge into player_balances b using (select player_id from players where player_id = :playerId) p "
+                        + "on (b.player_id = p.player_id and b.currency = :currency) "
+                        + "when matched then update set balance = b.balance + :amount, version = b.version + 1 "
+                        + "when not matched then insert (player_id, currency, balance, version) values (p.player_id, :currency, :amount, 0)")
+                .bind("playerId", playerId)
+                .bind("currency", currency)
+                .bind("amount", amount)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * @return the player's balance in the currency, or an empty result when the player has none
+     */
+    public Mono<PlayerBalance> findBalance(Integer playerId, String currency) {
+        return databaseClient.sql("select balance, version from player_balances where player_id = :playerId and currency = :currency")
+                .bind("playerId", playerId)
+                .bind("currency", currency)
+                .map(row -> PlayerBalance.builder()
+                        .playerId(playerId)
+                        .currency(currency)
+                        .balance(row.get("balance", BigDecimal.class))
+                        .version(row.get("version", Long.class))
+                        .build())
+                .one();
+    }
+
+    /**
+     * The player's balances, the one in the default currency first, read in one query like
+     * {@link com.casino.backend.repository.PlayerRepository#findAllBalances}.
+     *
+     * @return an empty list when the player does not exist
+     */
+    public Mono<List<PlayerBalance>> findAllBalances(Integer playerId, String defaultCurrency) {
+        return databaseClient.sql("select p.balance, p.version, b.currency, b.balance as currency_balance, b.version as currency_version "
+                        + "from players p left join player_balances b on b.player_id = p.player_id where p.player_id = :playerId")
+                .bind("playerId", playerId)
+                .fetch()
+                .all()
+                .collectList()
+                .map(rows -> {
+                    var balances = new ArrayList<PlayerBalance>(rows.size() + 1);
+                    for (var row : rows) {
+                        if (balances.isEmpty()) {
+                            balances.add(PlayerBalance.builder()
+                                    .playerId(playerId)
+                                    .currency(defaultCurrency)
+                                    .balance((BigDecimal) row.get("balance"))
+                                    .version(((Number) row.get("version")).longValue())
+                                    .build());
+                        }
+                        if (row.get("currency") != null) {
+                            balances.add(PlayerBalance.builder()
+                                    .playerId(playerId)
+                                    .currency((String) row.get("currency"))
+                                    .balance((BigDecimal) row.get("currency_balance"))
+                                    .version(((Number) row.get("currency_version")).longValue())
+                                    .build());
+                        }
+                    }
+                    return balances;
+                });
+    }
+
+    /**
+     * @return the player's ID, balance and version, or an empty result for an unknown player
+     */
+    public Mono<Player> findById(Integer playerId) {
+        return databaseClient.sql("select player_id, balance, version from players where player_id = :playerId")
+                .bind("playerId", playerId)
+                .map(row -> Player.builder()
+                        .playerId(row.get("player_id", Integer.class))
+                        .balance(row.get("balance", BigDecimal.class))
+                        .version(row.get("version", Long.class))
+                        .build())
+                .one();
+    }
+
+    public Mono<Boolean> existsById(Integer playerId) {
+        return databaseClient.sql("select count(*) from players where player_id = :playerId")
+                .bind("playerId", playerId)
+                .map(row -> row.get(0, Long.class) > 0)
+                .one();
+    }
+}
@@ -0,0 +1,227 @@
+package com.casino.backend.reactive;
+
+import com.casino.backend.cache.BalanceCache;
+import com.casino.backend.cache.IdempotencyCache;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.Player;
+import com.casino.backend.entity.PlayerBalance;
+import com.casino.backend.entity.Transaction;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.exception.InsufficientBalanceException;
+import com.casino.backend.exception.InvalidTransactionException;
+import com.casino.backend.exception.PlayerNotFoundException;
+import com.casino.backend.metrics.WalletMetrics;
+import com.casino.backend.money.Money;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.response.BalanceResponse;
+import com.casino.backend.response.UpdateBalanceResponse;
+import lombok.AllArgsConstructor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * The non-blocking counterpart of {@link com.casino.backend.service.PlayerService} for the balance endpoints.
+ * It follows the atomic concurrency mode: the balance is changed by one guarded UPDATE and the transaction row
+ * is inserted in the same database transaction, with the same WIN/WAGER rules, validation and idempotency handling.
+ * There is no per-player lock, since a lock would block the event loop; the guarded UPDATE alone keeps the balance
+ * consistent, and the unique idempotency key index turns a concurrent duplicate into a replay.
+ */
+@AllArgsConstructor
+@Profile("reactive")
+@Service
+public class ReactivePlayerService {
+
+    private static final Logger logger = LogManager.getLogger(ReactivePlayerService.class);
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
+    @Autowired
+    private ReactivePlayerRepository playerRepository;
+
+    @Autowired
+    private ReactiveTransactionRepository transactionRepository;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    @Autowired
+    private WalletMetrics walletMetrics;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Autowired
+    private BalanceCache balanceCache;
+
+    @Autowired
+    private WalletProperties walletProperties;
+
+    public Mono<BalanceResponse> getBalance(Integer playerId) {
+        var currency = walletProperties.getDefaultCurrency();
+        var cached = balanceCache.getIfPresent(playerId);
+        var balances = cached != null
+                ? Mono.just(cached)
+                : playerRepository.findAllBalances(playerId, currency)
+                        .filter(loaded -> !loaded.isEmpty())
+                        .switchIfEmpty(Mono.error(() -> new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID.")))
+                        .map(loaded -> balanceCache.get(playerId, id -> loaded));
+        return balances.map(values -> BalanceResponse.builder()
+                .playerId(playerId)
+                .balance(values.get(currency))
+                .currency(currency)
+                .balances(values)
+                .build());
+    }
+
+    public Mono<UpdateBalanceResponse> updateBalance(Integer playerId, UpdateBalanceRequest request) {
+        var startNanos = System.nanoTime();
+        return Mono.defer(() -> applyUpdateRequest(playerId, request))
+                .doOnSuccess(response -> walletMetrics.updateApplied(request.getTransactionType(), startNanos))
+                .doOnError(RuntimeException.class, e -> walletMetrics.updateFailed(request.getTransactionType(), startNanos, e));
+    }
+
+    private Mono<UpdateBalanceResponse> applyUpdateRequest(Integer playerId, UpdateBalanceRequest request) {
+        validateRequest(request);
+        var currency = resolveCurrency(request.getCurrency());
+
+        // A retried request is answered from memory, without touching the database
+        var replayed = idempotencyCache.find(playerId, request.getIdempotencyKey());
+        if (replayed != null) {
+            return Mono.just(replayed);
+        }
+
+        return transactionalOperator.transactional(applyUpdate(playerId, currency, request))
+                // Only committed balances reach the caches
+                .map(applied -> {
+                    balanceCache.put(applied.balance());
+                    idempotencyCache.put(playerId, request.getIdempotencyKey(), applied.response());
+                    return applied.response();
+                })
+                // The key was recorded by a concurrent request or another instance: answer with the recorded outcome
+                .onErrorResume(DataIntegrityViolationException.class, e -> replayFromLedger(playerId, request.getIdempotencyKey())
+                        .switchIfEmpty(Mono.error(e)));
+    }
+
+    /**
+     * A balance in another currency than the default one is changed the same way in {@code player_balances}.
+     */
+    private Mono<AppliedUpdate> applyUpdate(Integer playerId, String currency, UpdateBalanceRequest request) {
+        var wager = TransactionType.WAGER.equals(request.getTransactionType());
+        Mono<Long> updatedRows;
+        Mono<PlayerBalance> updatedBalance;
+        if (walletProperties.isDefaultCurrency(currency)) {
+            updatedRows = wager
+                    ? playerRepository.debitBalance(playerId, request.getAmount())
+                    : playerRepository.creditBalance(playerId, request.getAmount());
+            updatedBalance = playerRepository.findById(playerId).map(player -> PlayerBalance.builder()
+                    .playerId(playerId)
+                    .currency(currency)
+                    .balance(player.getBalance())
+                    .version(player.getVersion())
+                    .build());
+        } else {
+            updatedRows = wager
+                    ? playerRepository.debitBalance(playerId, currency, request.getAmount())
+                    : playerRepository.creditBalance(playerId, currency, request.getAmount());
+            updatedBalance = playerRepository.findBalance(playerId, currency);
+        }
+
+        return updatedRows
+                .flatMap(rows -> rows == 0 ? rejectedUpdate(playerId) : updatedBalance)
+                .flatMap(balance -> transactionRepository.insert(buildTransaction(playerId, currency, request, balance.getBalance()))
+                        .map(transactionId -> {
+                            logger.info("Balance updated player={} transaction={} type={} amount={} currency={} balance={}", playerId,
+                                    transactionId, request.getTransactionType(), request.getAmount(), currency, balance.getBalance());
+                            return new AppliedUpdate(balance, UpdateBalanceResponse.builder()
+                                    .transactionId(transactionId)
+                                    .balance(balance.getBalance())
+                                    .currency(currency)
+                                    .build());
+                        }));
+    }
+
+    private Mono<PlayerBalance> rejectedUpdate(Integer playerId) {
+        // A guarded update touches no rows either because the player does not exist or because the wager is too high
+        return playerRepository.existsById(playerId).flatMap(exists -> Mono.error(exists
+                ? new InsufficientBalanceException("You do not have sufficient balance to place this wager. Please adjust your wager to be within your available balance.")
+                : new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID.")));
+    }
+
+    private Mono<UpdateBalanceResponse> replayFromLedger(Integer playerId, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return Mono.empty();
+        }
+        return transactionRepository.findByIdempotencyKey(idempotencyKey).map(transaction -> {
+            if (!transaction.getPlayer().getPlayerId().equals(playerId)) {
+                throw new InvalidTransactionException("The idempotency key you provided has already been used for another player. Please use a new key.");
+            }
+            var response = UpdateBalanceResponse.builder()
+                    .transactionId(transaction.getTransactionId())
+                    .balance(transaction.getBalanceAfter())
+                    .currency(transaction.getCurrency() == null ? walletProperties.getDefaultCurrency() : transaction.getCurrency())
+                    .build();
+            idempotencyCache.put(playerId, idempotencyKey, response);
+            return response;
+        });
+    }
+
+    /**
+     * Rejects the same amounts as the servlet service: an amount with more decimal places than the currency has is
+     * not rounded.
+     */
+    private void validateRequest(UpdateBalanceRequest request) {
+        if (request.getAmount() == null) {
+            throw new InvalidTransactionException("The amount is required. Please enter a valid amount greater than zero.");
+        }
+        long amount;
+        try {
+            amount = Money.toMinorUnits(request.getAmount());
+        } catch (ArithmeticException e) {
+            throw new InvalidTransactionException("The amount must not have more than " + Money.SCALE + " decimal places. Please enter a valid amount.");
+        }
+        if (amount <= 0) {
+            throw new InvalidTransactionException("The amount must be a positive value. Please enter a valid amount greater than zero.");
+        }
+
+        if (request.getIdempotencyKey() != null && request.getIdempotencyKey().length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new InvalidTransactionException("The idempotency key must not be longer than " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters.");
+        }
+    }
+
+    /**
+     * @return the currency of the balance to move, the default currency when the request names none
+     */
+    private String resolveCurrency(String currency) {
+        if (currency == null) {
+            return walletProperties.getDefaultCurrency();
+        }
+        var accepted = walletProperties.acceptedCurrencies();
+        if (!accepted.contains(currency)) {
+            throw new InvalidTransactionException("The currency you provided is not supported. Please use one of " + String.join(", ", accepted) + ".");
+        }
+        return currency;
+    }
+
+    private Transaction buildTransaction(Integer playerId, String currency, UpdateBalanceRequest request, BigDecimal balanceAfter) {
+        return Transaction.builder()
+                .player(Player.builder().playerId(playerId).build())
+                .amount(request.getAmount())
+                .currency(currency)
+                .transactionType(request.getTransactionType())
+                .timestamp(LocalDateTime.now())
+                .balanceAfter(balanceAfter)
+                .idempotencyKey(request.getIdempotencyKey())
+                .build();
+    }
+
+    private record AppliedUpdate(PlayerBalance balance, UpdateBalanceResponse response) {
+    }
+}
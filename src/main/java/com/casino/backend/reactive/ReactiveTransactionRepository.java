@@ -0,0 +1,70 @@
+package com.casino.backend.reactive;
+
+import com.casino.backend.entity.Player;
+import com.casino.backend.entity.Transaction;
+import com.casino.backend.enums.TransactionType;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+
+/**
+ * Writes and looks up transaction rows over R2DBC.
+ */
+@AllArgsConstructor
+@Profile("reactive")
+@Repository
+public class ReactiveTransactionRepository {
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    /**
+     * Inserts the row with an ID taken from {@code transaction_seq}.
+     *
+     * @return the new transaction ID
+     */
+    public Mono<Integer> insert(Transaction transaction) {
+        // H2 returns sequence values as BIGINT
+        return databaseClient.sql("select next value for transaction_seq")
+                .map(row -> row.get(0, Long.class).intValue())
+                .one()
+                .flatMap(transactionId -> {
+                    var insert = databaseClient.sql("insert into transactions (transaction_id, player_id, amount, currency, transaction_type, timestamp, balance_after, idempotency_key) "
+                                    + "values (:transactionId, :playerId, :amount, :currency, :transactionType, :timestamp, :balanceAfter, :idempotencyKey)")
+                            .bind("transactionId", transactionId)
+                            .bind("playerId", transaction.getPlayer().getPlayerId())
+                            .bind("amount", transaction.getAmount())
+                            .bind("currency", transaction.getCurrency())
+                            .bind("transactionType", transaction.getTransactionType().name())
+                            .bind("timestamp", transaction.getTimestamp())
+                            .bind("balanceAfter", transaction.getBalanceAfter());
+                    insert = transaction.getIdempotencyKey() == null
+                            ? insert.bindNull("idempotencyKey", String.class)
+                            : insert.bind("idempotencyKey", transaction.getIdempotencyKey());
+                    return insert.fetch().rowsUpdated().thenReturn(transactionId);
+                });
+    }
+
+    /**
+     * @return the recorded transaction with only the player's ID set, or an empty result when the key is unknown
+     */
+    public Mono<Transaction> findByIdempotencyKey(String idempotencyKey) {
+        return databaseClient.sql("select transaction_id, player_id, amount, currency, transaction_type, balance_after from transactions where idempotency_key = :idempotencyKey")
+                .bind("idempotencyKey", idempotencyKey)
+                .map(row -> Transaction.builder()
+                        .transactionId(row.get("transaction_id", Integer.class))
+                        .player(Player.builder().playerId(row.get("player_id", Integer.class)).build())
+                        .amount(row.get("amount", BigDecimal.class))
+                        .currency(row.get("currency", String.class))
+                        .transactionType(TransactionType.valueOf(row.get("transaction_type", String.class)))
+                        .balanceAfter(row.get("balance_after", BigDecimal.class))
+                        .idempotencyKey(idempotencyKey)
+                        .build())
+                .one();
+    }
+}
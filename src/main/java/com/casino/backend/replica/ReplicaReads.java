@@ -0,0 +1,100 @@
+package com.casino.backend.replica;
+
+import com.casino.backend.config.ReplicaProperties;
+import com.casino.backend.enums.ReplicaReadPolicy;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Supplier;
+
+/**
+ * Runs the reads that may be answered by the read replica there, each in a read-only transaction. Only reads passed to
+ * {@link #read} are routed; everything else, including reads that guard a write such as idempotency lookups, stays
+ * on the primary.
+ * <p>
+ * Under the {@code read-your-writes} policy a player whose balance was updated within the replica's maximum lag is
+ * read from the primary, so a player never reads an older state than its own last write. Without a replica, reads
+ * run on the primary.
+ */
+@Profile("!reactive")
+@Component
+public class ReplicaReads {
+
+    private static final ThreadLocal<Boolean> ON_REPLICA = new ThreadLocal<>();
+
+    private final ReplicaProperties properties;
+    private final TransactionTemplate readOnly;
+    private final TransactionTemplate snapshot;
+    private final Cache<Integer, Boolean> recentlyWritten;
+
+    public ReplicaReads(ReplicaProperties properties, TransactionTemplate transactionTemplate) {
+        this.properties = properties;
+        this.readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnly.setReadOnly(true);
+        this.snapshot = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.snapshot.setReadOnly(true);
+        this.snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.recentlyWritten = Caffeine.newBuilder()
+                .maximumSize(properties.getTrackedPlayers())
+                .expireAfterWrite(properties.getMaxLag())
+                .build();
+    }
+
+    /**
+     * @return whether the current thread runs a read routed to the replica
+     */
+    static boolean onReplica() {
+        return ON_REPLICA.get() != null;
+    }
+
+    /**
+     * Notes a write of the player's balance. It must be called before the write, so that a read overlapping it
+     * already goes to the primary, and again once the write has committed, so that the replica's lag is counted from
+     * the commit however long the write waited for its lock.
+     */
+    public void written(Integer playerId) {
+        if (properties.isEnabled() && properties.getReadPolicy() == ReplicaReadPolicy.READ_YOUR_WRITES) {
+            recentlyWritten.put(playerId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Runs a read of the player's data in a read-only transaction, on the replica unless the policy sends it to the
+     * primary.
+     */
+    public <T> T read(Integer playerId, Supplier<T> read) {
+        return execute(readOnly, read, properties.isEnabled() && recentlyWritten.getIfPresent(playerId) == null);
+    }
+
+    /**
+     * Like {@link #read(Integer, Supplier)}, for a read of several queries that must see one committed state: it runs
+     * in a repeatable read transaction, so a write that commits between two of the queries is not half seen.
+     */
+    public <T> T readSnapshot(Integer playerId, Supplier<T> read) {
+        return execute(snapshot, read, properties.isEnabled() && recentlyWritten.getIfPresent(playerId) == null);
+    }
+
+    /**
+     * Runs a read that is not about one player's balance, such as a username lookup, in a read-only transaction on
+     * the replica.
+     */
+    public <T> T read(Supplier<T> read) {
+        return execute(readOnly, read, properties.isEnabled());
+    }
+
+    private <T> T execute(TransactionTemplate template, Supplier<T> read, boolean replica) {
+        if (!replica || onReplica()) {
+            return template.execute(status -> read.get());
+        }
+        ON_REPLICA.set(Boolean.TRUE);
+        try {
+            return template.execute(status -> read.get());
+        } finally {
+            ON_REPLICA.remove();
+        }
+    }
+}
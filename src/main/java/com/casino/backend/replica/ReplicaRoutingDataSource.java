@@ -0,0 +1,46 @@
+package com.casino.backend.replica;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Hands out connections of the replica to reads run by {@link ReplicaReads}, and of the primary to everything else.
+ * The target is chosen when a connection is taken, which for a transaction is when it begins.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    private final Counter primaryConnections;
+    private final Counter replicaConnections;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, MeterRegistry registry) {
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+        this.primaryConnections = connections(registry, PRIMARY);
+        this.replicaConnections = connections(registry, REPLICA);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (ReplicaReads.onReplica()) {
+            replicaConnections.increment();
+            return REPLICA;
+        }
+        primaryConnections.increment();
+        return PRIMARY;
+    }
+
+    private static Counter connections(MeterRegistry registry, String target) {
+        return Counter.builder("casino.datasource.connections")
+                .description("Connections taken from the primary and from the read replica")
+                .tag("target", target)
+                .register(registry);
+    }
+}
@@ -0,0 +1,16 @@
+package com.casino.backend.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * One row of {@link PlayerRepository#findBalanceRows}: the player's balance in the default currency, repeated on
+ * every row, and one of the player's other balances, whose columns are {@code null} when the player has none.
+ */
+public record BalanceRow(BigDecimal balance,
+                         Long version,
+                         Integer lastTransactionId,
+                         String currency,
+                         BigDecimal currencyBalance,
+                         Long currencyVersion,
+                         Integer currencyLastTransactionId) {
+}
@@ -0,0 +1,74 @@
+package com.casino.backend.repository;
+
+import com.casino.backend.entity.PlayerBalance;
+import com.casino.backend.entity.PlayerBalanceId;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The balances in currencies other than the default one. The statements mirror those of {@link PlayerRepository}.
+ * A balance row only exists once the player had a movement in the currency, so the statements that may be the first
+ * one create it, and only for a player that exists.
+ */
+public interface PlayerBalanceRepository extends JpaRepository<PlayerBalance, PlayerBalanceId> {
+
+    /**
+     * Subtracts the amount in a single guarded statement, see {@link PlayerRepository#debitBalance}.
+     *
+     * @return the number of updated rows, 0 when the player has no balance in the currency or it is too low
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "update player_balances set balance = balance - :amount, version = version + 1 "
+            + "where player_id = :playerId and currency = :currency and balance >= :amount", nativeQuery = true)
+    int debitBalance(@Param("playerId") Integer playerId, @Param("currency") String currency, @Param("amount") BigDecimal amount);
+
+    /**
+     * Adds the amount in a single statement, creating the balance when it is the player's first one in the currency.
+     *
+     * @return the number of updated or inserted rows, 0 when the player does not exist
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "merge into player_balances b using (select player_id from players where player_id = :playerId) p "
+            + "on (b.player_id = p.player_id and b.currency = :currency) "
+            + "when matched then update set balance = b.balance + :amount, version = b.version + 1 "
+            + "when not matched then insert (player_id, currency, balance, version) values (p.player_id, :currency, :amount, 0)",
+            nativeQuery = true)
+    int creditBalance(@Param("playerId") Integer playerId, @Param("currency") String currency, @Param("amount") BigDecimal amount);
+
+    /**
+     * Creates a zero balance unless the player already has one in the currency, so a writer that reads and then saves
+     * the balance can open it first. Of two concurrent calls that both create it, one fails on the primary key.
+     * It leaves the persistence context alone: the new row was not loaded into it.
+     *
+     * @return 1 when the balance was created, 0 when it existed or the player does not exist
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "merge into player_balances b using (select player_id from players where player_id = :playerId) p "
+            + "on (b.player_id = p.player_id and b.currency = :currency) "
+            + "when not matched then insert (player_id, currency, balance, version) values (p.player_id, :currency, 0, 0)",
+            nativeQuery = true)
+    int openBalance(@Param("playerId") Integer playerId, @Param("currency") String currency);
+
+    /**
+     * See {@link PlayerRepository#recordLastTransaction}.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "update player_balances set last_transaction_id = :transactionId where player_id = :playerId and currency = :currency", nativeQuery = true)
+    int recordLastTransaction(@Param("playerId") Integer playerId, @Param("currency") String currency, @Param("transactionId") Integer transactionId);
+
+    /**
+     * Loads and row-locks the balances of the players in the currencies, in key order so concurrent batches cannot
+     * deadlock. It returns every combination that exists, which may be more than a batch needs.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from PlayerBalance b where b.playerId in :playerIds and b.currency in :currencies order by b.playerId, b.currency")
+    List<PlayerBalance> findAllByIdForUpdate(@Param("playerIds") Collection<Integer> playerIds, @Param("currencies") Collection<String> currencies);
+}
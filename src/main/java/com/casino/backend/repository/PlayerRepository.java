@@ -1,10 +1,98 @@
 package com.casino.backend.repository;
 
 import com.casino.backend.entity.Player;
+import com.casino.backend.entity.PlayerBalance;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface PlayerRepository extends JpaRepository<Player, Integer> {
     Optional<Player> findByUsername(String playerUsername);
+
+    /**
+     * Answered from the unique index on {@code username}, without loading the player.
+     */
+    @Query("select p.playerId from Player p where p.username = :username")
+    Optional<Integer> findPlayerIdByUsername(@Param("username") String username);
+
+    /**
+     * Inserts a player whose ID was already allocated, by the player directory when players are sharded.
+     */
+    @Modifying
+    @Query(value = "insert into players (player_id, username, balance, version) values (:playerId, :username, :balance, 0)", nativeQuery = true)
+    int insertPlayer(@Param("playerId") Integer playerId, @Param("username") String username, @Param("balance") BigDecimal balance);
+
+    /**
+     * Subtracts the amount in a single guarded statement. The balance check happens inside the database,
+     * so two concurrent wagers can never both pass it, no matter which application instance sends them.
+     *
+     * @return the number of updated rows, 0 when the player does not exist or the balance is too low
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "update players set balance = balance - :amount, version = version + 1 where player_id = :playerId and balance >= :amount", nativeQuery = true)
+    int debitBalance(@Param("playerId") Integer playerId, @Param("amount") BigDecimal amount);
+
+    /**
+     * Adds the amount in a single statement.
+     *
+     * @return the number of updated rows, 0 when the player does not exist
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "update players set balance = balance + :amount, version = version + 1 where player_id = :playerId", nativeQuery = true)
+    int creditBalance(@Param("playerId") Integer playerId, @Param("amount") BigDecimal amount);
+
+    /**
+     * Marks a transaction as applied to the player's balance, in the same database transaction as the balance change.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "update players set last_transaction_id = :transactionId where player_id = :playerId", nativeQuery = true)
+    int recordLastTransaction(@Param("playerId") Integer playerId, @Param("transactionId") Integer transactionId);
+
+    @Query("select p.balance from Player p where p.playerId = :playerId")
+    Optional<BigDecimal> findBalanceByPlayerId(@Param("playerId") Integer playerId);
+
+    /**
+     * Every balance of the player in one query: the player's row joined with its rows in {@code player_balances},
+     * which are found through the first column of their primary key.
+     */
+    @Query("select new com.casino.backend.repository.BalanceRow(p.balance, p.version, p.lastTransactionId, "
+            + "b.currency, b.balance, b.version, b.lastTransactionId) "
+            + "from Player p left join PlayerBalance b on b.playerId = p.playerId where p.playerId = :playerId")
+    List<BalanceRow> findBalanceRows(@Param("playerId") Integer playerId);
+
+    /**
+     * The player's balances, the one in the default currency first, as read by {@link #findBalanceRows}.
+     * The returned objects are not managed.
+     *
+     * @return an empty list when the player does not exist
+     */
+    default List<PlayerBalance> findAllBalances(Integer playerId, String defaultCurrency) {
+        var rows = findBalanceRows(playerId);
+        var balances = new ArrayList<PlayerBalance>(rows.size() + 1);
+        for (var row : rows) {
+            if (balances.isEmpty()) {
+                balances.add(new PlayerBalance(playerId, defaultCurrency, row.balance(), row.version(), row.lastTransactionId()));
+            }
+            if (row.currency() != null) {
+                balances.add(new PlayerBalance(playerId, row.currency(), row.currencyBalance(), row.currencyVersion(), row.currencyLastTransactionId()));
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * Loads and row-locks several players in one query. Rows are locked in ID order so concurrent batches cannot deadlock.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from Player p where p.playerId in :playerIds order by p.playerId")
+    List<Player> findAllByIdForUpdate(@Param("playerIds") Collection<Integer> playerIds);
 }
@@ -1,11 +1,78 @@
 package com.casino.backend.repository;
 
-import com.casino.backend.entity.Player;
 import com.casino.backend.entity.Transaction;
+import com.casino.backend.response.DailyActivity;
+import com.casino.backend.response.Last10TransactionResponse;
+import com.casino.backend.response.TransactionExportRow;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface TransactionRepository extends JpaRepository<Transaction, Integer> {
-    List<Transaction> findTop10ByPlayerOrderByTimestampDesc(Player player);
+    /**
+     * First page of a player's history, newest first. Only the response columns are selected,
+     * neither the transaction entity nor its player is loaded.
+     */
+    @Query("select new com.casino.backend.response.Last10TransactionResponse(t.transactionType, t.transactionId, t.amount, t.timestamp, t.currency) "
+            + "from Transaction t where t.player.playerId = :playerId "
+            + "order by t.timestamp desc, t.transactionId")
+    List<Last10TransactionResponse> findHistory(@Param("playerId") Integer playerId, Pageable page);
+
+    /**
+     * The page that follows the row identified by the cursor. The keyset condition is answered from the history index,
+     * so every page costs the same no matter how deep into the history it is.
+     */
+    @Query("select new com.casino.backend.response.Last10TransactionResponse(t.transactionType, t.transactionId, t.amount, t.timestamp, t.currency) "
+            + "from Transaction t where t.player.playerId = :playerId "
+            + "and (t.timestamp < :timestamp or (t.timestamp = :timestamp and t.transactionId > :transactionId)) "
+            + "order by t.timestamp desc, t.transactionId")
+    List<Last10TransactionResponse> findHistoryAfter(@Param("playerId") Integer playerId,
+                                                     @Param("timestamp") LocalDateTime timestamp,
+                                                     @Param("transactionId") Integer transactionId,
+                                                     Pageable page);
+
+    /**
+     * Streams a player's transactions in the time range, newest first, in the order of the history index.
+     * The rows are plain projections fetched in chunks, so memory use does not depend on the number of rows.
+     * The stream must be consumed inside a transaction and closed.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select new com.casino.backend.response.TransactionExportRow(t.transactionId, t.player.playerId, t.transactionType, "
+            + "t.amount, t.balanceAfter, t.timestamp, t.idempotencyKey, t.currency) "
+            + "from Transaction t where t.player.playerId = :playerId and t.timestamp >= :from and t.timestamp < :to "
+            + "order by t.timestamp desc, t.transactionId")
+    Stream<TransactionExportRow> streamForExport(@Param("playerId") Integer playerId,
+                                                 @Param("from") LocalDateTime from,
+                                                 @Param("to") LocalDateTime to);
+
+    /**
+     * The player's movements in the time range summed per day and currency, read through the history index. A
+     * {@code null} currency stands for the default currency, see {@link Transaction#getCurrency()}.
+     */
+    @Query("select new com.casino.backend.response.DailyActivity(cast(t.timestamp as LocalDate), t.currency, "
+            + "sum(case when t.transactionType = com.casino.backend.enums.TransactionType.WAGER then t.amount else 0 end), "
+            + "sum(case when t.transactionType = com.casino.backend.enums.TransactionType.WIN then t.amount else 0 end), "
+            + "sum(case when t.transactionType = com.casino.backend.enums.TransactionType.BONUS_GRANT then t.amount else 0 end), count(t)) "
+            + "from Transaction t where t.player.playerId = :playerId and t.timestamp >= :from and t.timestamp < :to "
+            + "group by cast(t.timestamp as LocalDate), t.currency")
+    List<DailyActivity> findActivity(@Param("playerId") Integer playerId,
+                                     @Param("from") LocalDateTime from,
+                                     @Param("to") LocalDateTime to);
+
+    Optional<Transaction> findByIdempotencyKey(String idempotencyKey);
+
+    List<Transaction> findAllByIdempotencyKeyIn(Collection<String> idempotencyKeys);
 }
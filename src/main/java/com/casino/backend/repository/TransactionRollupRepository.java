@@ -0,0 +1,25 @@
+package com.casino.backend.repository;
+
+import com.casino.backend.entity.TransactionRollup;
+import com.casino.backend.entity.TransactionRollupId;
+import com.casino.backend.response.DailyActivity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The daily rollups of archived transactions, see {@link TransactionRollup}.
+ */
+public interface TransactionRollupRepository extends JpaRepository<TransactionRollup, TransactionRollupId> {
+
+    /**
+     * The player's rollups in the date range, answered from the primary key.
+     */
+    @Query("select new com.casino.backend.response.DailyActivity(r.day, r.currency, r.wagered, r.won, r.granted, r.transactionCount) "
+            + "from TransactionRollup r where r.playerId = :playerId and r.day >= :from and r.day < :to "
+            + "order by r.day, r.currency")
+    List<DailyActivity> findActivity(@Param("playerId") Integer playerId, @Param("from") LocalDate from, @Param("to") LocalDate to);
+}
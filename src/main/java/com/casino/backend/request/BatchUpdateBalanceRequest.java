@@ -0,0 +1,37 @@
+package com.casino.backend.request;
+
+import com.casino.backend.enums.TransactionType;
+import lombok.*;
+
+import java.math.BigDecimal;
+
+/**
+ * One balance movement of a settled game round. Unlike {@link UpdateBalanceRequest} it carries the player ID,
+ * because a round usually settles several players at once.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+@ToString
+public class BatchUpdateBalanceRequest {
+    private Integer playerId;
+    private BigDecimal amount;
+    private TransactionType transactionType;
+    private String idempotencyKey;
+    private String currency;
+
+    public BatchUpdateBalanceRequest(Integer playerId, BigDecimal amount, TransactionType transactionType) {
+        this(playerId, amount, transactionType, null);
+    }
+
+    public BatchUpdateBalanceRequest(Integer playerId, BigDecimal amount, TransactionType transactionType, String idempotencyKey) {
+        this(playerId, amount, transactionType, idempotencyKey, null);
+    }
+
+    public UpdateBalanceRequest toUpdateBalanceRequest() {
+        return new UpdateBalanceRequest(amount, transactionType, idempotencyKey, currency);
+    }
+}
@@ -0,0 +1,21 @@
+package com.casino.backend.request;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+@ToString
+public class GrantBonusRequest {
+    private BigDecimal amount;
+
+    /**
+     * Optional key chosen by the caller, with the same meaning as for a balance update.
+     */
+    private String idempotencyKey;
+}
@@ -15,4 +15,23 @@ import java.math.BigDecimal;
 public class UpdateBalanceRequest {
     private BigDecimal amount;
     private TransactionType transactionType;
+
+    /**
+     * Optional key chosen by the caller. A retried request with the same key returns the original response
+     * instead of applying the movement twice.
+     */
+    private String idempotencyKey;
+
+    /**
+     * ISO 4217 code of the balance to move, the wallet's default currency when omitted.
+     */
+    private String currency;
+
+    public UpdateBalanceRequest(BigDecimal amount, TransactionType transactionType) {
+        this(amount, transactionType, null);
+    }
+
+    public UpdateBalanceRequest(BigDecimal amount, TransactionType transactionType, String idempotencyKey) {
+        this(amount, transactionType, idempotencyKey, null);
+    }
 }
@@ -3,6 +3,7 @@ package com.casino.backend.response;
 import lombok.*;
 
 import java.math.BigDecimal;
+import java.util.Map;
 
 @Getter
 @Setter
@@ -13,5 +14,16 @@ import java.math.BigDecimal;
 @Builder
 public class BalanceResponse {
     private Integer playerId;
+
+    /**
+     * The balance in {@link #currency}, the default currency.
+     */
     private BigDecimal balance;
+    private String currency;
+
+    /**
+     * The balance in every currency the wallet accepts, the default currency first. A currency the player has never
+     * used has a zero balance.
+     */
+    private Map<String, BigDecimal> balances;
 }
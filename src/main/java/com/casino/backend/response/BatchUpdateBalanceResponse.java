@@ -0,0 +1,26 @@
+package com.casino.backend.response;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+/**
+ * The outcome of one item of a batch update. Rejected items carry the HTTP status and reason that the single
+ * update endpoint would have returned, and no transaction ID.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Data
+@Builder
+public class BatchUpdateBalanceResponse {
+    private Integer playerId;
+    private Integer transactionId;
+    private BigDecimal balance;
+    private String currency;
+    private Integer status;
+    private String error;
+    private String reason;
+}
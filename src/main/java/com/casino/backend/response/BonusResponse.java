@@ -0,0 +1,29 @@
+package com.casino.backend.response;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Data
+@Builder
+public class BonusResponse {
+    private Integer playerId;
+
+    /**
+     * The balance in the default currency, cash and bonus money together.
+     */
+    private BigDecimal balance;
+    private BigDecimal cashBalance;
+    private BigDecimal bonusBalance;
+
+    /**
+     * Amount to wager before the bonus becomes cash, and the amount wagered towards it. Both are zero without a bonus.
+     */
+    private BigDecimal wageringRequired;
+    private BigDecimal wageringProgress;
+}
@@ -0,0 +1,25 @@
+package com.casino.backend.response;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * A player's movements on one day in one currency.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Data
+@Builder
+public class DailyActivity {
+    private LocalDate day;
+    private String currency;
+    private BigDecimal wagered;
+    private BigDecimal won;
+    private BigDecimal granted;
+    private Long transactions;
+}
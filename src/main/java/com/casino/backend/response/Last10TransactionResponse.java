@@ -4,6 +4,7 @@ import com.casino.backend.enums.TransactionType;
 import lombok.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 @Getter
 @Setter
@@ -16,4 +17,10 @@ public class Last10TransactionResponse {
     private TransactionType transactionType;
     private Integer transactionId;
     private BigDecimal amount;
+    private LocalDateTime timestamp;
+
+    /**
+     * {@code null} for a transaction recorded before players held several currencies, which is in the default currency.
+     */
+    private String currency;
 }
@@ -0,0 +1,21 @@
+package com.casino.backend.response;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Data
+@Builder
+public class PlayerActivityResponse {
+    private Integer playerId;
+
+    /**
+     * One entry per day and currency with movements, oldest first.
+     */
+    private List<DailyActivity> days;
+}
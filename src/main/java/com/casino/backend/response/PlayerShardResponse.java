@@ -0,0 +1,15 @@
+package com.casino.backend.response;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Data
+@Builder
+public class PlayerShardResponse {
+    private Integer playerId;
+    private Integer shard;
+}
@@ -0,0 +1,18 @@
+package com.casino.backend.response;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Data
+@Builder
+public class ShardRebalanceResponse {
+
+    /**
+     * Players that were not on the shard the ring places them on, and were moved there.
+     */
+    private Integer movedPlayers;
+}
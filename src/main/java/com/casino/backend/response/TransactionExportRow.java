@@ -0,0 +1,32 @@
+package com.casino.backend.response;
+
+import com.casino.backend.enums.TransactionType;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * One line of a transaction export.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Data
+@Builder
+public class TransactionExportRow {
+    private Integer transactionId;
+    private Integer playerId;
+    private TransactionType transactionType;
+    private BigDecimal amount;
+    private BigDecimal balanceAfter;
+    private LocalDateTime timestamp;
+    private String idempotencyKey;
+
+    /**
+     * See {@link Last10TransactionResponse#getCurrency()}.
+     */
+    private String currency;
+}
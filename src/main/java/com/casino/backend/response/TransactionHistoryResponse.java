@@ -0,0 +1,24 @@
+package com.casino.backend.response;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Data
+@Builder
+public class TransactionHistoryResponse {
+    /**
+     * Newest first.
+     */
+    private List<Last10TransactionResponse> transactions;
+
+    /**
+     * Pass it back as {@code cursor} to fetch the next, older page. {@code null} on the last page.
+     */
+    private String nextCursor;
+}
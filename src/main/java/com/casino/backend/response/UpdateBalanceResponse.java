@@ -14,4 +14,9 @@ import java.math.BigDecimal;
 public class UpdateBalanceResponse {
     private Integer transactionId;
     private BigDecimal balance;
+    private String currency;
+
+    public UpdateBalanceResponse(Integer transactionId, BigDecimal balance) {
+        this(transactionId, balance, null);
+    }
 }
@@ -0,0 +1,33 @@
+package com.casino.backend.service;
+
+import com.casino.backend.exception.InvalidPageRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of the last row of a history page. Clients get it as an opaque, URL-safe string
+ * and must not depend on its content.
+ */
+record HistoryCursor(LocalDateTime timestamp, int transactionId) {
+
+    private static final char SEPARATOR = '|';
+
+    String encode() {
+        var position = timestamp.toString() + SEPARATOR + transactionId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static HistoryCursor decode(String cursor) {
+        try {
+            var position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            var separator = position.lastIndexOf(SEPARATOR);
+            return new HistoryCursor(LocalDateTime.parse(position.substring(0, separator)),
+                    Integer.parseInt(position.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new InvalidPageRequestException("The cursor you provided is not valid. Please use the nextCursor of the previous page.");
+        }
+    }
+}
@@ -1,140 +1,1008 @@
 package com.casino.backend.service;
 
 
+import com.casino.backend.bonus.BonusWallet;
+import com.casino.backend.cache.BalanceCache;
+import com.casino.backend.cache.IdempotencyCache;
+import com.casino.backend.cache.RecentTransactionsCache;
+import com.casino.backend.cache.UsernameCache;
+import com.casino.backend.concurrency.PlayerLockStripes;
+import com.casino.backend.config.HistoryProperties;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.engine.WalletEngine;
 import com.casino.backend.entity.Player;
+import com.casino.backend.entity.PlayerBalance;
+import com.casino.backend.entity.PlayerBalanceId;
 import com.casino.backend.entity.Transaction;
+import com.casino.backend.enums.ConcurrencyMode;
+import com.casino.backend.enums.LedgerMode;
 import com.casino.backend.enums.TransactionType;
+import com.casino.backend.exception.ConcurrentBalanceUpdateException;
 import com.casino.backend.exception.InsufficientBalanceException;
+import com.casino.backend.exception.InvalidDateRangeException;
+import com.casino.backend.exception.InvalidPageRequestException;
 import com.casino.backend.exception.InvalidTransactionException;
 import com.casino.backend.exception.PlayerNotFoundException;
 import com.casino.backend.exception.PlayerUserNameNotFoundException;
+import com.casino.backend.ledger.TransactionLedger;
+import com.casino.backend.metrics.WalletMetrics;
+import com.casino.backend.metrics.WalletMetrics.DatabaseOperation;
+import com.casino.backend.money.Money;
+import com.casino.backend.replica.ReplicaReads;
+import com.casino.backend.repository.PlayerBalanceRepository;
 import com.casino.backend.repository.PlayerRepository;
 import com.casino.backend.repository.TransactionRepository;
+import com.casino.backend.repository.TransactionRollupRepository;
+import com.casino.backend.request.BatchUpdateBalanceRequest;
+import com.casino.backend.request.GrantBonusRequest;
 import com.casino.backend.request.UpdateBalanceRequest;
 import com.casino.backend.response.BalanceResponse;
+import com.casino.backend.response.BatchUpdateBalanceResponse;
+import com.casino.backend.response.BonusResponse;
+import com.casino.backend.response.DailyActivity;
 import com.casino.backend.response.Last10TransactionResponse;
+import com.casino.backend.response.PlayerActivityResponse;
+import com.casino.backend.response.TransactionHistoryResponse;
 import com.casino.backend.response.UpdateBalanceResponse;
+import com.casino.backend.shard.PlayerDirectory;
+import com.casino.backend.shard.ShardRouter;
 import lombok.AllArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.ResponseStatus;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 @AllArgsConstructor
+@Profile("!reactive")
 @Service
 public class PlayerService {
 
     private static final Logger logger = LogManager.getLogger(PlayerService.class);
+
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Autowired
+    private PlayerBalanceRepository playerBalanceRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private TransactionRollupRepository transactionRollupRepository;
+
     /**
      * To ensure that the system handles multiple concurrent transactions for the same player correctly,
-     * I use a lock to prevent concurrent transactions from accessing the same player's balance simultaneously.
-     * I use a ReentrantLock or a Lock object from the java.util.concurrent.locks package.
+     * I lock the stripe of the player's balance so that concurrent transactions cannot access it simultaneously.
+     * Balances on different stripes, including one player's balances in two currencies, are updated in parallel
+     * instead of queueing behind a single service-wide lock.
      */
-    private final ReentrantLock lock = new ReentrantLock();
+    @Autowired
+    private PlayerLockStripes playerLocks;
 
     @Autowired
-    private PlayerRepository playerRepository;
+    private TransactionTemplate transactionTemplate;
 
     @Autowired
-    private TransactionRepository transactionRepository;
+    private WalletProperties walletProperties;
 
+    @Autowired
+    private WalletMetrics walletMetrics;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Autowired
+    private TransactionLedger transactionLedger;
+
+    @Autowired
+    private BalanceCache balanceCache;
+
+    @Autowired
+    private HistoryProperties historyProperties;
+
+    @Autowired
+    private WalletEngine walletEngine;
+
+    @Autowired
+    private BonusWallet bonusWallet;
+
+    @Autowired
+    private RecentTransactionsCache recentTransactionsCache;
 
+    @Autowired
+    private UsernameCache usernameCache;
+
+    @Autowired
+    private ReplicaReads replicaReads;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private PlayerDirectory playerDirectory;
+
+    /**
+     * Clients poll the balance, so it is answered from the balance cache and only loaded from the database on a miss,
+     * with one query for all currencies. In engine mode the engine's in-memory balances are the current ones, the stored
+     * balances lag behind them.
+     */
     public BalanceResponse getBalance(Integer playerId) {
-        var player = playerRepository.findById(playerId)
-                .orElseThrow(() -> new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID."));
+        var balances = walletProperties.getConcurrencyMode() == ConcurrencyMode.ENGINE
+                ? walletEngine.balances(playerId)
+                : balanceCache.get(playerId, id -> shardRouter.onShardOf(id, () -> replicaReads.read(id, () -> findAllBalances(id))));
+        var currency = walletProperties.getDefaultCurrency();
 
-        logger.info("Player: {}", player);
+        logger.debug("Player: {} balances: {}", playerId, balances);
         return BalanceResponse
                 .builder()
-                .playerId(player.getPlayerId())
+                .playerId(playerId)
+                .balance(balances.get(currency))
+                .currency(currency)
+                .balances(balances)
+                .build();
+    }
+
+    private List<PlayerBalance> findAllBalances(Integer playerId) {
+        var balances = playerRepository.findAllBalances(playerId, walletProperties.getDefaultCurrency());
+        if (balances.isEmpty()) {
+            throw new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID.");
+        }
+        return balances;
+    }
+
+    /**
+     * The cash and bonus parts of the player's balance, read from the database. It is not polled like the balance,
+     * so it is not cached.
+     */
+    public BonusResponse getBonus(Integer playerId) {
+        var player = shardRouter.onShardOf(playerId, () -> replicaReads.read(playerId, () -> playerRepository.findById(playerId)))
+                .orElseThrow(() -> new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID."));
+        var bonusBalance = orZero(player.getBonusBalance());
+        return BonusResponse.builder()
+                .playerId(playerId)
                 .balance(player.getBalance())
+                .cashBalance(player.getBalance().subtract(bonusBalance))
+                .bonusBalance(bonusBalance)
+                .wageringRequired(orZero(player.getWageringRequired()))
+                .wageringProgress(orZero(player.getWageringProgress()))
                 .build();
     }
 
+    private static BigDecimal orZero(BigDecimal amount) {
+        return amount == null ? Money.toDecimal(0) : amount;
+    }
+
+    /**
+     * Credits bonus money from a promotion. The balance moves like on a win, in the default currency, the movement is
+     * recorded as a {@code BONUS_GRANT} transaction and the player's wagering requirement grows, see {@link BonusWallet}.
+     */
+    public UpdateBalanceResponse grantBonus(Integer playerId, GrantBonusRequest request) {
+        if (walletProperties.getConcurrencyMode() == ConcurrencyMode.ENGINE) {
+            // The engine keeps no cash and bonus split, so a granted bonus would never be tracked
+            throw new InvalidTransactionException("Bonuses cannot be granted while the wallet runs in engine mode.");
+        }
+        return updateBalance(playerId, new UpdateBalanceRequest(request.getAmount(), TransactionType.BONUS_GRANT, request.getIdempotencyKey()));
+    }
+
+    /**
+     * The username is resolved by the username cache, so neither a known nor an unknown username usually costs a query.
+     * When players are sharded, the one it cannot answer is looked up in the player directory.
+     *
+     * @return a reference to the player, whose state is only loaded when it is first accessed
+     */
     public Player getPlayerByUsername(String username) {
-        return playerRepository.findByUsername(username)
-                .orElseThrow(() -> new PlayerUserNameNotFoundException("The username you provided is not recognized. Please enter a valid username."));
+        var playerId = usernameCache.getPlayerId(username, name -> replicaReads.read(() -> playerDirectory.findPlayerId(name)));
+        if (playerId == null) {
+            throw new PlayerUserNameNotFoundException("The username you provided is not recognized. Please enter a valid username.");
+        }
+        return playerRepository.getReferenceById(playerId);
     }
 
     public UpdateBalanceResponse updateBalance(Integer playerId, UpdateBalanceRequest request) {
-        lock.lock();
+        var startNanos = System.nanoTime();
+        replicaReads.written(playerId);
         try {
-            var player = playerRepository.findById(playerId)
+            var response = shardRouter.onShardOf(playerId, () -> applyUpdateRequest(playerId, request));
+            walletMetrics.updateApplied(request.getTransactionType(), startNanos);
+            return response;
+        } catch (RuntimeException e) {
+            walletMetrics.updateFailed(request.getTransactionType(), startNanos, e);
+            throw e;
+        } finally {
+            replicaReads.written(playerId);
+        }
+    }
+
+    private UpdateBalanceResponse applyUpdateRequest(Integer playerId, UpdateBalanceRequest request) {
+        var amount = validateRequest(request);
+        var currency = resolveCurrency(request.getCurrency());
+
+        // A retried request is answered from memory, without taking the lock or touching the database
+        var replayed = idempotencyCache.find(playerId, request.getIdempotencyKey());
+        if (replayed != null) {
+            return replayed;
+        }
+
+        try {
+            return switch (walletProperties.getConcurrencyMode()) {
+                case ATOMIC -> updateBalanceAtomically(playerId, currency, request);
+                case OPTIMISTIC -> updateBalanceOptimistically(playerId, currency, request, amount);
+                case ENGINE -> updateBalanceInEngine(playerId, currency, request);
+            };
+        } catch (DataIntegrityViolationException e) {
+            // The key was recorded by another instance, or has left the cache: answer with the recorded outcome
+            return replayFromLedger(playerId, request.getIdempotencyKey()).orElseThrow(() -> e);
+        }
+    }
+
+    private UpdateBalanceResponse updateBalanceAtomically(Integer playerId, String currency, UpdateBalanceRequest request) {
+        var waitStartNanos = System.nanoTime();
+        var lock = playerLocks.lock(playerId, currency);
+        var holdStartNanos = System.nanoTime();
+        walletMetrics.lockWaited(waitStartNanos);
+        try {
+            // A duplicate that was waiting for the lock finds the outcome of the first request here
+            var replayed = idempotencyCache.find(playerId, request.getIdempotencyKey());
+            if (replayed != null) {
+                return replayed;
+            }
+            // A journaled row reaches the unique index only once it is drained, so a key that has left the cache is
+            // looked up before the balance is changed
+            if (walletProperties.getLedger().getMode() == LedgerMode.JOURNAL) {
+                var recorded = replayFromLedger(playerId, request.getIdempotencyKey());
+                if (recorded.isPresent()) {
+                    return recorded.get();
+                }
+            }
+            // The database transaction commits before the stripe is released,
+            // so the next update of this balance always reads the committed balance.
+            var response = transactionTemplate.execute(status -> applyUpdate(playerId, currency, request));
+            walletMetrics.databaseTransaction(holdStartNanos);
+            idempotencyCache.put(playerId, request.getIdempotencyKey(), response);
+            return response;
+        } finally {
+            lock.unlock();
+            walletMetrics.lockHeld(holdStartNanos);
+        }
+    }
+
+    /**
+     * The update is queued on the wallet engine, which decides it in memory on the balance's partition thread.
+     * A key that has left the idempotency cache is looked up in the ledger first, it is the only database call left.
+     */
+    private UpdateBalanceResponse updateBalanceInEngine(Integer playerId, String currency, UpdateBalanceRequest request) {
+        var recorded = replayFromLedger(playerId, request.getIdempotencyKey());
+        if (recorded.isPresent()) {
+            return recorded.get();
+        }
+        return await(walletEngine.submit(playerId, currency, request));
+    }
+
+    /**
+     * Waits for an engine outcome and rethrows a rejection as it was raised, so it maps to the usual error response.
+     */
+    private static UpdateBalanceResponse await(CompletableFuture<UpdateBalanceResponse> outcome) {
+        try {
+            return outcome.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Optional<UpdateBalanceResponse> replayFromLedger(Integer playerId, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return Optional.empty();
+        }
+        return transactionLedger.findJournaled(idempotencyKey)
+                .or(() -> transactionRepository.findByIdempotencyKey(idempotencyKey))
+                .map(transaction -> {
+                    var response = replayedResponse(playerId, transaction);
+                    idempotencyCache.put(playerId, idempotencyKey, response);
+                    return response;
+                });
+    }
+
+    private UpdateBalanceResponse replayedResponse(Integer playerId, Transaction transaction) {
+        if (!transaction.getPlayer().getPlayerId().equals(playerId)) {
+            throw new InvalidTransactionException("The idempotency key you provided has already been used for another player. Please use a new key.");
+        }
+        return UpdateBalanceResponse.builder()
+                .transactionId(transaction.getTransactionId())
+                .balance(transaction.getBalanceAfter())
+                .currency(transaction.getCurrency() == null ? walletProperties.getDefaultCurrency() : transaction.getCurrency())
+                .build();
+    }
+
+    /**
+     * The balance is changed by one guarded UPDATE statement and the transaction row is inserted in the same
+     * database transaction, so the wallet stays consistent even when several application instances share the database.
+     * A balance in another currency than the default one is changed the same way in {@code player_balances}.
+     */
+    private UpdateBalanceResponse applyUpdate(Integer playerId, String currency, UpdateBalanceRequest request) {
+        var defaultCurrency = walletProperties.isDefaultCurrency(currency);
+        var wager = TransactionType.WAGER.equals(request.getTransactionType());
+        var startNanos = System.nanoTime();
+        int updatedRows;
+        if (defaultCurrency) {
+            updatedRows = wager
+                    ? playerRepository.debitBalance(playerId, request.getAmount())
+                    : playerRepository.creditBalance(playerId, request.getAmount());
+        } else {
+            updatedRows = wager
+                    ? playerBalanceRepository.debitBalance(playerId, currency, request.getAmount())
+                    : playerBalanceRepository.creditBalance(playerId, currency, request.getAmount());
+        }
+        walletMetrics.databaseCall(DatabaseOperation.BALANCE_UPDATE, startNanos);
+
+        if (updatedRows == 0) {
+            throw rejectedUpdate(playerId);
+        }
+
+        // Read back the updated row, its balance and version are also written through to the balance cache
+        startNanos = System.nanoTime();
+        Player player;
+        BigDecimal newBalance;
+        if (defaultCurrency) {
+            player = playerRepository.findById(playerId)
+                    .orElseThrow(() -> new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID."));
+            newBalance = player.getBalance();
+            if (bonusWallet.isTracked(player, request.getTransactionType())) {
+                // Managed entity: the new split is written when the transaction is flushed
+                bonusWallet.apply(player, request.getTransactionType(), Money.toMinorUnits(request.getAmount()));
+            }
+            balanceCache.putAfterCommit(player);
+        } else {
+            var balance = playerBalanceRepository.findById(new PlayerBalanceId(playerId, currency))
                     .orElseThrow(() -> new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID."));
+            newBalance = balance.getBalance();
+            balanceCache.putAfterCommit(balance);
+            // The transaction row only needs the player's ID, the player's own row is not read
+            player = playerRepository.getReferenceById(playerId);
+        }
+        walletMetrics.databaseCall(DatabaseOperation.PLAYER_READ, startNanos);
+
+        return record(playerId, buildTransaction(player, currency, request, newBalance));
+    }
 
-            logPlayerInfo(player);
-            validateRequest(request, player);
-            var newBalance = calculateNewBalance(request, player);
+    private UpdateBalanceResponse record(Integer playerId, Transaction transaction) {
+        var startNanos = System.nanoTime();
+        var savedTransaction = transactionLedger.record(transaction);
+        walletMetrics.databaseCall(DatabaseOperation.LEDGER_WRITE, startNanos);
+        logApplied(playerId, savedTransaction);
 
-            player.setBalance(newBalance);
+        return UpdateBalanceResponse.builder()
+                .transactionId(savedTransaction.getTransactionId())
+                .balance(transaction.getBalanceAfter())
+                .currency(transaction.getCurrency())
+                .build();
+    }
+
+    /**
+     * Optimistic mode takes no lock. Most players are only touched by one session at a time,
+     * so the version check rarely fails, and when it does the whole read-validate-write cycle is retried.
+     */
+    private UpdateBalanceResponse updateBalanceOptimistically(Integer playerId, String currency, UpdateBalanceRequest request, long amount) {
+        var optimistic = walletProperties.getOptimistic();
+        var backoffNanos = optimistic.getInitialBackoff().toNanos();
+        for (int attempt = 1; ; attempt++) {
+            var startNanos = System.nanoTime();
+            try {
+                var response = transactionTemplate.execute(status -> walletProperties.isDefaultCurrency(currency)
+                        ? applyOptimisticUpdate(playerId, request, amount)
+                        : applyOptimisticCurrencyUpdate(playerId, currency, request, amount));
+                walletMetrics.databaseTransaction(startNanos);
+                idempotencyCache.put(playerId, request.getIdempotencyKey(), response);
+                return response;
+            } catch (OptimisticLockingFailureException e) {
+                walletMetrics.optimisticConflict();
+                if (attempt >= optimistic.getMaxAttempts()) {
+                    walletMetrics.optimisticRetriesExhausted();
+                    throw new ConcurrentBalanceUpdateException("Your balance was changed by another transaction at the same time. Please try again.");
+                }
+                walletMetrics.optimisticRetry();
+                backOff(backoffNanos);
+                backoffNanos = Math.min(backoffNanos * 2, optimistic.getMaxBackoff().toNanos());
+            }
+        }
+    }
 
-            var transaction = buildTransaction(player, request.getTransactionType(), newBalance);
+    private UpdateBalanceResponse applyOptimisticUpdate(Integer playerId, UpdateBalanceRequest request, long amount) {
+        var startNanos = System.nanoTime();
+        var player = playerRepository.findById(playerId)
+                .orElseThrow(() -> new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID."));
+        walletMetrics.databaseCall(DatabaseOperation.PLAYER_READ, startNanos);
 
-            var savedTransaction = transactionRepository.save(transaction);
+        logPlayerInfo(player);
+        var balance = Money.toMinorUnits(player.getBalance());
+        validateWager(request, amount, balance);
+        var newBalance = Money.toDecimal(calculateNewBalance(request, amount, balance));
 
-            return UpdateBalanceResponse.builder()
-                    .transactionId(savedTransaction.getTransactionId())
-                    .balance(player.getBalance())
-                    .build();
+        // The version check happens when the transaction is flushed on commit
+        player.setBalance(newBalance);
+        bonusWallet.apply(player, request.getTransactionType(), amount);
+        playerRepository.save(player);
+        balanceCache.putAfterCommit(player);
 
-        } finally {
-            lock.unlock();
+        return record(playerId, buildTransaction(player, walletProperties.getDefaultCurrency(), request, newBalance));
+    }
+
+    /**
+     * Like {@link #applyOptimisticUpdate}, for a balance in another currency. A balance the player does not have yet is
+     * opened at zero first. Two first movements in the currency that open it at the same time conflict like any other
+     * two updates, and the one that lost retries.
+     */
+    private UpdateBalanceResponse applyOptimisticCurrencyUpdate(Integer playerId, String currency, UpdateBalanceRequest request, long amount) {
+        var balanceId = new PlayerBalanceId(playerId, currency);
+        var startNanos = System.nanoTime();
+        var balance = playerBalanceRepository.findById(balanceId).orElse(null);
+        if (balance == null) {
+            try {
+                playerBalanceRepository.openBalance(playerId, currency);
+            } catch (DataIntegrityViolationException e) {
+                // Another update opened it at the same time, the next attempt reads it
+                throw new OptimisticLockingFailureException("The balance of player " + playerId + " in " + currency + " was opened concurrently", e);
+            }
+            balance = playerBalanceRepository.findById(balanceId)
+                    .orElseThrow(() -> new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID."));
+        }
+        walletMetrics.databaseCall(DatabaseOperation.PLAYER_READ, startNanos);
+
+        var current = Money.toMinorUnits(balance.getBalance());
+        validateWager(request, amount, current);
+        var newBalance = Money.toDecimal(calculateNewBalance(request, amount, current));
+
+        // The version check happens when the transaction is flushed on commit
+        balance.setBalance(newBalance);
+        playerBalanceRepository.save(balance);
+        balanceCache.putAfterCommit(balance);
+
+        return record(playerId, buildTransaction(playerRepository.getReferenceById(playerId), currency, request, newBalance));
+    }
+
+    private void backOff(long backoffNanos) {
+        // Random jitter so that conflicting writers do not retry in lock step
+        var sleepNanos = ThreadLocalRandom.current().nextLong(backoffNanos / 2, backoffNanos + 1);
+        try {
+            TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrentBalanceUpdateException("Your balance update was interrupted. Please try again.");
         }
     }
 
     private void logPlayerInfo(Player player) {
-        logger.info("UpdateBalanceResponse Player: {}", player);
+        logger.debug("UpdateBalanceResponse player: {} version: {}", player.getPlayerId(), player.getVersion());
     }
 
-    private void validateRequest(UpdateBalanceRequest request, Player player) {
-        if (request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
-            throw new InvalidTransactionException("The amount must be a positive value. Please enter a valid amount greater than zero.");
-        }
+    /**
+     * The one INFO event of an applied update. It carries only ids and amounts, never the entities,
+     * whose {@code toString} would walk every field on every request.
+     */
+    private void logApplied(Integer playerId, Transaction transaction) {
+        logger.info("Balance updated player={} transaction={} type={} amount={} currency={} balance={}", playerId,
+                transaction.getTransactionId(), transaction.getTransactionType(), transaction.getAmount(), transaction.getCurrency(),
+                transaction.getBalanceAfter());
+    }
 
-        if (TransactionType.WAGER.equals(request.getTransactionType()) && player.getBalance().compareTo(request.getAmount()) < 0) {
+    /**
+     * Amounts and balances are in minor units, see {@link Money}.
+     */
+    private void validateWager(UpdateBalanceRequest request, long amount, long balance) {
+        if (TransactionType.WAGER.equals(request.getTransactionType()) && balance < amount) {
             throw new InsufficientBalanceException("You do not have sufficient balance to place this wager. Please adjust your wager to be within your available balance.");
         }
 
-        logger.info("UpdateBalanceResponse current balance: {}", player.getBalance());
+        logger.debug("UpdateBalanceResponse current balance: {} minor units", balance);
     }
 
-    private BigDecimal calculateNewBalance(UpdateBalanceRequest request, Player player) {
+    private long calculateNewBalance(UpdateBalanceRequest request, long amount, long balance) {
         var newBalance = TransactionType.WAGER.equals(request.getTransactionType())
-                ? player.getBalance().subtract(request.getAmount())
-                : player.getBalance().add(request.getAmount());
+                ? Money.subtract(balance, amount)
+                : Money.add(balance, amount);
 
-        logger.info("UpdateBalanceResponse new balance: {}", newBalance);
+        logger.debug("UpdateBalanceResponse new balance: {} minor units", newBalance);
         return newBalance;
     }
 
-    private Transaction buildTransaction(Player player, TransactionType transactionType, BigDecimal amount) {
+    /**
+     * An amount with more decimal places than the currency has is rejected rather than rounded.
+     *
+     * @return the amount in minor units
+     */
+    private long validateRequest(UpdateBalanceRequest request) {
+        if (request.getAmount() == null) {
+            throw new InvalidTransactionException("The amount is required. Please enter a valid amount greater than zero.");
+        }
+        long amount;
+        try {
+            amount = Money.toMinorUnits(request.getAmount());
+        } catch (ArithmeticException e) {
+            throw new InvalidTransactionException("The amount must not have more than " + Money.SCALE + " decimal places. Please enter a valid amount.");
+        }
+        if (amount <= 0) {
+            throw new InvalidTransactionException("The amount must be a positive value. Please enter a valid amount greater than zero.");
+        }
+
+        if (request.getIdempotencyKey() != null && request.getIdempotencyKey().length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new InvalidTransactionException("The idempotency key must not be longer than " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters.");
+        }
+        return amount;
+    }
+
+    /**
+     * @return the currency of the balance to move, the default currency when the request names none
+     */
+    private String resolveCurrency(String currency) {
+        if (currency == null) {
+            return walletProperties.getDefaultCurrency();
+        }
+        var accepted = walletProperties.acceptedCurrencies();
+        if (!accepted.contains(currency)) {
+            throw new InvalidTransactionException("The currency you provided is not supported. Please use one of " + String.join(", ", accepted) + ".");
+        }
+        return currency;
+    }
+
+    private RuntimeException rejectedUpdate(Integer playerId) {
+        // A guarded update touches no rows either because the player does not exist or because the wager is too high
+        if (!playerRepository.existsById(playerId)) {
+            return new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID.");
+        }
+        return new InsufficientBalanceException("You do not have sufficient balance to place this wager. Please adjust your wager to be within your available balance.");
+    }
+
+    /**
+     * Settles a whole game round in one database transaction. Every player is loaded and row-locked once,
+     * its movements are applied in request order in memory, and all transaction rows are inserted together.
+     * An item that fails (unknown player, insufficient balance, invalid amount) is reported in its own result
+     * and does not affect the other items. Items whose idempotency key was already recorded return the recorded outcome.
+     *
+     * @return one result per request item, in the same order
+     */
+    public List<BatchUpdateBalanceResponse> updateBalances(List<BatchUpdateBalanceRequest> requests) {
+        if (!shardRouter.isEnabled()) {
+            var results = updateBalancesOnShard(requests);
+            markWritten(requests);
+            return results;
+        }
+        // One database transaction per shard: the items of each shard succeed or fail together, like a whole batch does
+        var results = new BatchUpdateBalanceResponse[requests.size()];
+        shardRouter.groupByShard(requests, BatchUpdateBalanceRequest::getPlayerId).forEach((shard, indexes) -> {
+            var shardRequests = indexes.stream().map(requests::get).toList();
+            var shardResults = shardRouter.onShard(shard, () -> updateBalancesOnShard(shardRequests));
+            markWritten(shardRequests);
+            for (int i = 0; i < indexes.size(); i++) {
+                results[indexes.get(i)] = shardResults.get(i);
+            }
+        });
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Notes the batch's players as written again once the batch has committed, see {@link ReplicaReads#written}.
+     */
+    private void markWritten(List<BatchUpdateBalanceRequest> requests) {
+        for (var request : requests) {
+            if (request.getPlayerId() != null) {
+                replicaReads.written(request.getPlayerId());
+            }
+        }
+    }
+
+    private List<BatchUpdateBalanceResponse> updateBalancesOnShard(List<BatchUpdateBalanceRequest> requests) {
+        var results = new BatchUpdateBalanceResponse[requests.size()];
+        var currencies = new String[requests.size()];
+        var balanceIds = new LinkedHashSet<PlayerBalanceId>();
+        for (int i = 0; i < requests.size(); i++) {
+            var request = requests.get(i);
+            try {
+                // The single update endpoint takes these from the path and the body, a batch item may leave them out
+                if (request.getPlayerId() == null) {
+                    throw new InvalidTransactionException("The player ID is required. Please enter a valid player ID.");
+                }
+                if (request.getTransactionType() == null) {
+                    throw new InvalidTransactionException("The transaction type is required. Please use WAGER or WIN.");
+                }
+                replicaReads.written(request.getPlayerId());
+                validateRequest(request.toUpdateBalanceRequest());
+                currencies[i] = resolveCurrency(request.getCurrency());
+                var replayed = idempotencyCache.find(request.getPlayerId(), request.getIdempotencyKey());
+                if (replayed != null) {
+                    results[i] = appliedBatchItem(request.getPlayerId(), replayed.getTransactionId(), replayed.getBalance(), replayed.getCurrency());
+                } else {
+                    balanceIds.add(new PlayerBalanceId(request.getPlayerId(), currencies[i]));
+                }
+            } catch (InvalidTransactionException e) {
+                results[i] = rejectedBatchItem(request, e);
+            }
+        }
+        if (balanceIds.isEmpty()) {
+            return Arrays.asList(results);
+        }
+        if (walletProperties.getConcurrencyMode() == ConcurrencyMode.ENGINE) {
+            applyBatchInEngine(requests, currencies, results);
+            logger.info("Batch update of {} items for {} balances", requests.size(), balanceIds.size());
+            return Arrays.asList(results);
+        }
+
+        // Optimistic batches take no lock, so they record no lock wait or hold time either
+        var locking = walletProperties.getConcurrencyMode() == ConcurrencyMode.ATOMIC;
+        var waitStartNanos = System.nanoTime();
+        List<Lock> locks = locking ? playerLocks.lockAll(balanceIds) : List.of();
+        var holdStartNanos = System.nanoTime();
+        if (locking) {
+            walletMetrics.lockWaited(waitStartNanos);
+        }
+        try {
+            transactionTemplate.execute(status -> {
+                applyBatch(requests, currencies, balanceIds, results);
+                return null;
+            });
+            walletMetrics.databaseTransaction(holdStartNanos);
+            for (int i = 0; i < requests.size(); i++) {
+                var request = requests.get(i);
+                if (request.getIdempotencyKey() != null && results[i].getTransactionId() != null) {
+                    idempotencyCache.put(request.getPlayerId(), request.getIdempotencyKey(),
+                            new UpdateBalanceResponse(results[i].getTransactionId(), results[i].getBalance(), results[i].getCurrency()));
+                }
+            }
+        } finally {
+            playerLocks.unlockAll(locks);
+            if (locking) {
+                walletMetrics.lockHeld(holdStartNanos);
+            }
+        }
+        logger.info("Batch update of {} items for {} balances", requests.size(), balanceIds.size());
+        return Arrays.asList(results);
+    }
+
+    private void applyBatch(List<BatchUpdateBalanceRequest> requests, String[] currencies, Set<PlayerBalanceId> balanceIds,
+                            BatchUpdateBalanceResponse[] results) {
+        var startNanos = System.nanoTime();
+        var players = new HashMap<Integer, Player>();
+        var balances = new HashMap<PlayerBalanceId, PlayerBalance>();
+        loadForUpdate(balanceIds, players, balances);
+        walletMetrics.databaseCall(DatabaseOperation.PLAYER_READ, startNanos);
+        var recorded = findRecordedTransactions(requests, results);
+
+        var transactions = new ArrayList<Transaction>();
+        var appliedIndexes = new ArrayList<Integer>();
+        // Index of the first item carrying each key, so that repeats within the batch share its outcome
+        var firstIndexByKey = new HashMap<String, Integer>();
+        var repeatedIndexes = new HashMap<Integer, Integer>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            var request = requests.get(i);
+            var key = request.getIdempotencyKey();
+            if (key != null) {
+                var recordedTransaction = recorded.get(key);
+                if (recordedTransaction != null) {
+                    results[i] = replayedBatchItem(request, recordedTransaction);
+                    continue;
+                }
+                var firstIndex = firstIndexByKey.putIfAbsent(key, i);
+                if (firstIndex != null) {
+                    repeatedIndexes.put(i, firstIndex);
+                    continue;
+                }
+            }
+            var defaultCurrency = walletProperties.isDefaultCurrency(currencies[i]);
+            var player = defaultCurrency ? players.get(request.getPlayerId()) : null;
+            var currencyBalance = defaultCurrency ? null : balances.get(new PlayerBalanceId(request.getPlayerId(), currencies[i]));
+            if (player == null && currencyBalance == null) {
+                results[i] = rejectedBatchItem(request, new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID."));
+                continue;
+            }
+            var updateRequest = request.toUpdateBalanceRequest();
+            var amount = Money.toMinorUnits(updateRequest.getAmount());
+            var balance = Money.toMinorUnits(defaultCurrency ? player.getBalance() : currencyBalance.getBalance());
+            BigDecimal newBalance;
+            try {
+                validateWager(updateRequest, amount, balance);
+                newBalance = Money.toDecimal(calculateNewBalance(updateRequest, amount, balance));
+            } catch (InsufficientBalanceException e) {
+                results[i] = rejectedBatchItem(request, e);
+                continue;
+            }
+            // Managed entities: the final balance of each player and currency is written once when the transaction is flushed
+            if (defaultCurrency) {
+                player.setBalance(newBalance);
+                bonusWallet.apply(player, updateRequest.getTransactionType(), amount);
+            } else {
+                currencyBalance.setBalance(newBalance);
+                player = playerRepository.getReferenceById(request.getPlayerId());
+            }
+            transactions.add(buildTransaction(player, currencies[i], updateRequest, newBalance));
+            appliedIndexes.add(i);
+        }
+
+        startNanos = System.nanoTime();
+        transactionLedger.recordAll(transactions);
+        walletMetrics.databaseCall(DatabaseOperation.LEDGER_WRITE, startNanos);
+        players.values().forEach(balanceCache::putAfterCommit);
+        balances.values().forEach(balanceCache::putAfterCommit);
+        for (int j = 0; j < transactions.size(); j++) {
+            var transaction = transactions.get(j);
+            results[appliedIndexes.get(j)] = appliedBatchItem(transaction.getPlayer().getPlayerId(), transaction.getTransactionId(),
+                    transaction.getBalanceAfter(), transaction.getCurrency());
+        }
+        repeatedIndexes.forEach((index, firstIndex) -> results[index] = results[firstIndex]);
+    }
+
+    /**
+     * Loads and row-locks every balance the batch moves: players for the default currency, {@code player_balances} rows
+     * for the others. A balance the player does not have yet is opened at zero first, so that it is locked like the rest.
+     */
+    private void loadForUpdate(Set<PlayerBalanceId> balanceIds, Map<Integer, Player> players, Map<PlayerBalanceId, PlayerBalance> balances) {
+        var playerIds = new LinkedHashSet<Integer>();
+        var otherPlayerIds = new LinkedHashSet<Integer>();
+        var otherCurrencies = new LinkedHashSet<String>();
+        for (var balanceId : balanceIds) {
+            if (walletProperties.isDefaultCurrency(balanceId.getCurrency())) {
+                playerIds.add(balanceId.getPlayerId());
+            } else {
+                otherPlayerIds.add(balanceId.getPlayerId());
+                otherCurrencies.add(balanceId.getCurrency());
+            }
+        }
+        if (!playerIds.isEmpty()) {
+            for (var player : playerRepository.findAllByIdForUpdate(playerIds)) {
+                players.put(player.getPlayerId(), player);
+            }
+        }
+        if (otherPlayerIds.isEmpty()) {
+            return;
+        }
+        for (var balance : playerBalanceRepository.findAllByIdForUpdate(otherPlayerIds, otherCurrencies)) {
+            balances.put(new PlayerBalanceId(balance.getPlayerId(), balance.getCurrency()), balance);
+        }
+        var opened = false;
+        for (var balanceId : balanceIds) {
+            if (!walletProperties.isDefaultCurrency(balanceId.getCurrency()) && !balances.containsKey(balanceId)) {
+                opened |= playerBalanceRepository.openBalance(balanceId.getPlayerId(), balanceId.getCurrency()) > 0;
+            }
+        }
+        if (opened) {
+            for (var balance : playerBalanceRepository.findAllByIdForUpdate(otherPlayerIds, otherCurrencies)) {
+                balances.putIfAbsent(new PlayerBalanceId(balance.getPlayerId(), balance.getCurrency()), balance);
+            }
+        }
+    }
+
+    /**
+     * Queues every item on the engine at once, so items of players on different partitions are applied in parallel,
+     * then collects the outcomes in request order. There is no common database transaction: like in the other modes,
+     * each item succeeds or fails on its own.
+     */
+    private void applyBatchInEngine(List<BatchUpdateBalanceRequest> requests, String[] currencies, BatchUpdateBalanceResponse[] results) {
+        var recorded = findRecordedTransactions(requests, results);
+        var outcomes = new HashMap<Integer, CompletableFuture<UpdateBalanceResponse>>();
+        var firstIndexByKey = new HashMap<String, Integer>();
+        var repeatedIndexes = new HashMap<Integer, Integer>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            var request = requests.get(i);
+            var key = request.getIdempotencyKey();
+            if (key != null) {
+                var recordedTransaction = recorded.get(key);
+                if (recordedTransaction != null) {
+                    results[i] = replayedBatchItem(request, recordedTransaction);
+                    continue;
+                }
+                var firstIndex = firstIndexByKey.putIfAbsent(key, i);
+                if (firstIndex != null) {
+                    repeatedIndexes.put(i, firstIndex);
+                    continue;
+                }
+            }
+            try {
+                outcomes.put(i, walletEngine.submit(request.getPlayerId(), currencies[i], request.toUpdateBalanceRequest()));
+            } catch (InvalidTransactionException e) {
+                results[i] = rejectedBatchItem(request, e);
+            }
+        }
+        outcomes.forEach((index, outcome) -> {
+            var request = requests.get(index);
+            try {
+                var response = await(outcome);
+                results[index] = appliedBatchItem(request.getPlayerId(), response.getTransactionId(), response.getBalance(), response.getCurrency());
+            } catch (InsufficientBalanceException | PlayerNotFoundException | InvalidTransactionException e) {
+                results[index] = rejectedBatchItem(request, e);
+            }
+        });
+        repeatedIndexes.forEach((index, firstIndex) -> results[index] = results[firstIndex]);
+    }
+
+    private Map<String, Transaction> findRecordedTransactions(List<BatchUpdateBalanceRequest> requests, BatchUpdateBalanceResponse[] results) {
+        var keys = new ArrayList<String>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (results[i] == null && requests.get(i).getIdempotencyKey() != null) {
+                keys.add(requests.get(i).getIdempotencyKey());
+            }
+        }
+        if (keys.isEmpty()) {
+            return Map.of();
+        }
+        var recorded = new HashMap<String, Transaction>();
+        for (var transaction : transactionRepository.findAllByIdempotencyKeyIn(keys)) {
+            recorded.put(transaction.getIdempotencyKey(), transaction);
+        }
+        // Rows still waiting in the journal are not in the table yet
+        for (var transaction : transactionLedger.findAllJournaled(keys)) {
+            recorded.put(transaction.getIdempotencyKey(), transaction);
+        }
+        return recorded;
+    }
+
+    private BatchUpdateBalanceResponse replayedBatchItem(BatchUpdateBalanceRequest request, Transaction transaction) {
+        try {
+            var replayed = replayedResponse(request.getPlayerId(), transaction);
+            return appliedBatchItem(request.getPlayerId(), replayed.getTransactionId(), replayed.getBalance(), replayed.getCurrency());
+        } catch (InvalidTransactionException e) {
+            return rejectedBatchItem(request, e);
+        }
+    }
+
+    private BatchUpdateBalanceResponse appliedBatchItem(Integer playerId, Integer transactionId, BigDecimal balance, String currency) {
+        return BatchUpdateBalanceResponse.builder()
+                .playerId(playerId)
+                .transactionId(transactionId)
+                .balance(balance)
+                .currency(currency)
+                .status(HttpStatus.OK.value())
+                .build();
+    }
+
+    private BatchUpdateBalanceResponse rejectedBatchItem(BatchUpdateBalanceRequest request, RuntimeException e) {
+        walletMetrics.batchItemRejected(e);
+        // Report the same status the single update endpoint maps this exception to
+        var responseStatus = AnnotationUtils.findAnnotation(e.getClass(), ResponseStatus.class);
+        var status = responseStatus != null ? responseStatus.value() : HttpStatus.INTERNAL_SERVER_ERROR;
+        return BatchUpdateBalanceResponse.builder()
+                .playerId(request.getPlayerId())
+                .status(status.value())
+                .error(status.name())
+                .reason(e.getMessage())
+                .build();
+    }
+
+    private Transaction buildTransaction(Player player, String currency, UpdateBalanceRequest request, BigDecimal balanceAfter) {
         return Transaction.builder()
                 .player(player)
-                .amount(amount)
-                .transactionType(transactionType)
+                .amount(request.getAmount())
+                .currency(currency)
+                .transactionType(request.getTransactionType())
                 .timestamp(LocalDateTime.now())
+                .balanceAfter(balanceAfter)
+                .idempotencyKey(request.getIdempotencyKey())
                 .build();
     }
 
+    /**
+     * Answered from the recent transactions cache. Only a player's first read after the cache dropped them queries the
+     * database, every transaction recorded since then was added as it committed.
+     */
     public List<Last10TransactionResponse> getLast10Transactions(Player player) {
-        List<Transaction> transactions = transactionRepository.findTop10ByPlayerOrderByTimestampDesc(player);
-        List<Last10TransactionResponse> last10TransactionResponseList = new ArrayList<>();
-        for (var transaction : transactions) {
-            var transactionResponse = Last10TransactionResponse
-                    .builder()
-                    .transactionType(transaction.getTransactionType())
-                    .transactionId(transaction.getTransactionId())
-                    .amount(transaction.getAmount())
-                    .build();
-            last10TransactionResponseList.add(transactionResponse);
-        }
-        logger.info("Top: {} transactions: {}", last10TransactionResponseList.size(), last10TransactionResponseList);
+        var last10TransactionResponseList = recentTransactionsCache.get(player.getPlayerId(), playerId -> shardRouter.onShardOf(playerId,
+                () -> replicaReads.read(playerId, () -> transactionRepository.findHistory(playerId, PageRequest.ofSize(RecentTransactionsCache.CAPACITY)))));
+        logger.debug("Last transactions of player {}: {}", player.getPlayerId(), last10TransactionResponseList.size());
         return last10TransactionResponseList;
     }
+
+    /**
+     * Returns one page of the player's history, newest first. Pages are addressed by the position of the last row
+     * seen (keyset pagination) instead of an offset, so scrolling deep into a long history stays as fast as the first page.
+     *
+     * @param size   number of transactions per page, the configured default when {@code null}
+     * @param cursor the {@code nextCursor} of the previous page, {@code null} for the first page
+     */
+    public TransactionHistoryResponse getTransactionHistory(Integer playerId, Integer size, String cursor) {
+        var pageSize = size == null ? historyProperties.getDefaultPageSize() : size;
+        if (pageSize < 1 || pageSize > historyProperties.getMaxPageSize()) {
+            throw new InvalidPageRequestException("The page size must be between 1 and " + historyProperties.getMaxPageSize() + ".");
+        }
+        // One extra row tells whether there is a next page
+        var page = PageRequest.ofSize(pageSize + 1);
+        var transactions = shardRouter.onShardOf(playerId, () -> replicaReads.read(playerId, () -> {
+            if (!playerRepository.existsById(playerId)) {
+                throw new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID.");
+            }
+            return cursor == null
+                    ? transactionRepository.findHistory(playerId, page)
+                    : findHistoryAfter(playerId, HistoryCursor.decode(cursor), page);
+        }));
+
+        String nextCursor = null;
+        if (transactions.size() > pageSize) {
+            transactions = new ArrayList<>(transactions.subList(0, pageSize));
+            var last = transactions.get(pageSize - 1);
+            nextCursor = new HistoryCursor(last.getTimestamp(), last.getTransactionId()).encode();
+        }
+        logger.debug("History page of player {}: {} transactions", playerId, transactions.size());
+        return TransactionHistoryResponse.builder()
+                .transactions(transactions)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Sums the player's wagers, wins and bonus grants per day and currency. Archived days are read from their rollups,
+     * the days still in the transactions table are summed from the rows, so the answer is the same before and after a
+     * day is archived. Both are read in one snapshot, a day archived in between is seen once.
+     *
+     * @param from first day to include, 30 days before {@code to} when {@code null}
+     * @param to   day to stop before, tomorrow when {@code null}
+     */
+    public PlayerActivityResponse getDailyActivity(Integer playerId, LocalDate from, LocalDate to) {
+        var end = to == null ? LocalDate.now().plusDays(1) : to;
+        var start = from == null ? end.minusDays(30) : from;
+        if (!start.isBefore(end)) {
+            throw new InvalidDateRangeException("The start of the date range must be before its end.");
+        }
+        var days = shardRouter.onShardOf(playerId, () -> replicaReads.readSnapshot(playerId, () -> {
+            if (!playerRepository.existsById(playerId)) {
+                throw new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID.");
+            }
+            var activity = new ArrayList<>(transactionRollupRepository.findActivity(playerId, start, end));
+            activity.addAll(transactionRepository.findActivity(playerId, start.atStartOfDay(), end.atStartOfDay()));
+            return activity;
+        }));
+
+        // A day that is partly archived has a rollup and rows, both count
+        var merged = new HashMap<List<Object>, DailyActivity>();
+        for (var day : days) {
+            var currency = day.getCurrency() == null ? walletProperties.getDefaultCurrency() : day.getCurrency();
+            merged.merge(List.of(day.getDay(), currency),
+                    new DailyActivity(day.getDay(), currency, day.getWagered(), day.getWon(), day.getGranted(), day.getTransactions()),
+                    (a, b) -> new DailyActivity(a.getDay(), a.getCurrency(), a.getWagered().add(b.getWagered()),
+                            a.getWon().add(b.getWon()), a.getGranted().add(b.getGranted()), a.getTransactions() + b.getTransactions()));
+        }
+        var activity = new ArrayList<>(merged.values());
+        activity.sort(Comparator.comparing(DailyActivity::getDay).thenComparing(DailyActivity::getCurrency));
+        logger.debug("Activity of player {}: {} days", playerId, activity.size());
+        return PlayerActivityResponse.builder()
+                .playerId(playerId)
+                .days(activity)
+                .build();
+    }
+
+    private List<Last10TransactionResponse> findHistoryAfter(Integer playerId, HistoryCursor cursor, PageRequest page) {
+        return transactionRepository.findHistoryAfter(playerId, cursor.timestamp(), cursor.transactionId(), page);
+    }
 }
@@ -0,0 +1,109 @@
+package com.casino.backend.service;
+
+import com.casino.backend.exception.InvalidDateRangeException;
+import com.casino.backend.exception.PlayerNotFoundException;
+import com.casino.backend.replica.ReplicaReads;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.repository.TransactionRepository;
+import com.casino.backend.shard.ShardRouter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.AllArgsConstructor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+
+@AllArgsConstructor
+@Profile("!reactive")
+@Service
+public class TransactionExportService {
+
+    private static final Logger logger = LogManager.getLogger(TransactionExportService.class);
+
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    /**
+     * Rows written between two flushes. Each flush hands a chunk to the client, and a slow client blocks the write,
+     * so the export never runs further ahead of the client than one chunk.
+     */
+    private static final int FLUSH_EVERY_ROWS = 1000;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ReplicaReads replicaReads;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    /**
+     * Checks the request up front, so errors still get a proper status, and returns the export to be written later.
+     *
+     * @param from first timestamp to include, no lower bound when {@code null}
+     * @param to   timestamp to stop before, no upper bound when {@code null}
+     */
+    public TransactionExport prepareExport(Integer playerId, LocalDateTime from, LocalDateTime to) {
+        var start = from == null ? EARLIEST : from;
+        var end = to == null ? LATEST : to;
+        if (!start.isBefore(end)) {
+            throw new InvalidDateRangeException("The start of the date range must be before its end.");
+        }
+        if (!shardRouter.onShardOf(playerId, () -> replicaReads.read(playerId, () -> playerRepository.existsById(playerId)))) {
+            throw new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID.");
+        }
+        return outputStream -> write(playerId, start, end, outputStream);
+    }
+
+    /**
+     * Writes one JSON object per line (NDJSON). Rows are streamed from the database and written as they arrive,
+     * so memory use is the same for ten rows or ten million. The export is a reporting query, so it runs on the read
+     * replica when there is one.
+     */
+    private void write(Integer playerId, LocalDateTime from, LocalDateTime to, OutputStream outputStream) throws IOException {
+        var writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try {
+            var rows = shardRouter.onShardOf(playerId, () -> replicaReads.read(playerId, () -> {
+                try (var stream = transactionRepository.streamForExport(playerId, from, to);
+                     var generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    var written = 0L;
+                    for (var iterator = stream.iterator(); iterator.hasNext(); ) {
+                        writer.writeValue(generator, iterator.next());
+                        generator.writeRaw('\n');
+                        if (++written % FLUSH_EVERY_ROWS == 0) {
+                            generator.flush();
+                        }
+                    }
+                    generator.flush();
+                    return written;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+            logger.info("Exported {} transactions of player {}", rows, playerId);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    public interface TransactionExport {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+}
@@ -0,0 +1,240 @@
+package com.casino.backend.shard;
+
+import com.casino.backend.entity.Player;
+import com.casino.backend.repository.PlayerRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Creates players and finds them by username, across all shards when players are sharded.
+ * <p>
+ * With shards, player IDs are allocated from a sequence on shard 0 and the {@code player_directory} table there maps
+ * every player to its username and shard, so a username lookup is one query on shard 0 instead of one per shard. A new
+ * player is inserted on the shard the {@link ShardRing} places its ID on. Players must then be created through
+ * {@link #create}, a player saved through JPA would get an ID of its shard's own sequence and no directory row.
+ * <p>
+ * On startup the directory is created on shard 0 and the tables on every shard that has none yet. Each shard's
+ * transaction IDs come from a range of their own, so a transaction ID stays unique across shards, also once it is
+ * moved to another shard. The first ID of each range is kept in {@code shard_transaction_ids} on shard 0, a range
+ * runs up to the next one. A new shard takes the upper half of the unused part of the range with the most unused IDs,
+ * and every shard's sequence is capped below the next range, so it fails rather than hand out another shard's IDs.
+ */
+@Profile("!reactive")
+@Component
+public class PlayerDirectory {
+
+    private static final Logger logger = LogManager.getLogger(PlayerDirectory.class);
+
+    /**
+     * The allocation size of {@code transaction_seq}: the first block of IDs a shard hands out ends at the value its
+     * sequence starts with.
+     */
+    private static final int TRANSACTION_ID_BLOCK = 50;
+
+    private final ShardRouter router;
+    private final PlayerRepository playerRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final List<Consumer<String>> creationListeners = new CopyOnWriteArrayList<>();
+
+    public PlayerDirectory(ShardRouter router, PlayerRepository playerRepository, JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate, EntityManagerFactory entityManagerFactory) {
+        this.router = router;
+        this.playerRepository = playerRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!router.isEnabled()) {
+            return;
+        }
+        var directory = router.directory();
+        directory.execute("create table if not exists player_directory (player_id integer primary key, "
+                + "username varchar(50) not null unique, shard integer not null)");
+        directory.execute("create sequence if not exists player_directory_seq");
+
+        directory.execute("create table if not exists shard_transaction_ids (shard integer primary key, "
+                + "first_transaction_id integer not null)");
+
+        var schemaManager = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getSchemaManager();
+        var created = new ArrayList<Integer>();
+        for (int shard = 0; shard < router.shardCount(); shard++) {
+            var target = shard;
+            var hasTables = router.onShard(target, () -> jdbcTemplate.queryForObject(
+                    "select count(*) from information_schema.tables where lower(table_name) = 'players'", Integer.class) > 0);
+            if (!hasTables) {
+                router.onShard(target, () -> {
+                    schemaManager.exportMappedObjects(true);
+                    return null;
+                });
+                created.add(shard);
+            } else if (firstTransactionIds().get(shard) == null) {
+                // Tables from before the ranges were recorded: the range starts at the shard's lowest ID
+                var first = router.onShard(target, () -> {
+                    var next = nextTransactionId();
+                    return jdbcTemplate.queryForObject("select least(coalesce(min(transaction_id), ?), ?) from transactions",
+                            Long.class, next, next);
+                });
+                directory.update("insert into shard_transaction_ids (shard, first_transaction_id) values (?, ?)", shard, first);
+            }
+        }
+        for (var shard : created) {
+            var first = newRangeStart(ranges());
+            directory.update("insert into shard_transaction_ids (shard, first_transaction_id) values (?, ?)", shard, first);
+            router.onShard(shard, () -> {
+                jdbcTemplate.execute("alter sequence transaction_seq restart with " + (first + TRANSACTION_ID_BLOCK - 1));
+                return null;
+            });
+            logger.info("Created the tables of shard {}, transaction IDs start at {}", shard, first);
+        }
+
+        var ranges = ranges();
+        for (int i = 0; i < ranges.size(); i++) {
+            var last = i + 1 < ranges.size() ? ranges.get(i + 1).first() - 1 : Integer.MAX_VALUE;
+            router.onShard(ranges.get(i).shard(), () -> {
+                jdbcTemplate.execute("alter sequence transaction_seq maxvalue " + last);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @return the first transaction ID of each shard's range
+     */
+    private Map<Integer, Long> firstTransactionIds() {
+        var firstIds = new HashMap<Integer, Long>();
+        router.directory().query("select shard, first_transaction_id from shard_transaction_ids",
+                (RowCallbackHandler) row -> firstIds.put(row.getInt(1), row.getLong(2)));
+        return firstIds;
+    }
+
+    /**
+     * @return the recorded ranges, lowest first
+     */
+    private List<IdRange> ranges() {
+        var ranges = new ArrayList<IdRange>();
+        firstTransactionIds().forEach((shard, first) ->
+                ranges.add(new IdRange(shard, first, router.onShard(shard, this::nextTransactionId))));
+        ranges.sort(Comparator.comparingLong(IdRange::first));
+        return ranges;
+    }
+
+    /**
+     * The value the shard's sequence returns next. The pooled generator may have handed out IDs up to it.
+     */
+    private long nextTransactionId() {
+        return jdbcTemplate.queryForObject("select base_value from information_schema.sequences where lower(sequence_name) = 'transaction_seq'",
+                Long.class);
+    }
+
+    /**
+     * @param ranges the recorded ranges, lowest first
+     * @return the first ID of a new range: the middle of the unused part of the range with the most unused IDs
+     */
+    static long newRangeStart(List<IdRange> ranges) {
+        long start = 0;
+        long mostUnused = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            var end = i + 1 < ranges.size() ? ranges.get(i + 1).first() : (long) Integer.MAX_VALUE + 1;
+            var unused = end - Math.max(ranges.get(i).first(), ranges.get(i).next());
+            if (unused > mostUnused) {
+                mostUnused = unused;
+                start = end - unused / 2;
+            }
+        }
+        if (mostUnused < 2 * TRANSACTION_ID_BLOCK) {
+            throw new IllegalStateException("No transaction ID range is left for a new shard");
+        }
+        return start;
+    }
+
+    /**
+     * @param first the first ID of the shard's range, which runs up to the next range
+     * @param next  the value the shard's sequence returns next
+     */
+    record IdRange(int shard, long first, long next) {
+    }
+
+    /**
+     * Saves a new player, on the shard its ID is placed on when players are sharded.
+     *
+     * @return the saved player, with its ID
+     */
+    public Player create(Player player) {
+        if (!router.isEnabled()) {
+            return playerRepository.save(player);
+        }
+        var directory = router.directory();
+        var playerId = directory.queryForObject("select next value for player_directory_seq", Integer.class);
+        var shard = router.placementOf(playerId);
+        // The directory row claims the username, a taken one fails here before anything is written to a shard
+        directory.update("insert into player_directory (player_id, username, shard) values (?, ?, ?)", playerId, player.getUsername(), shard);
+        try {
+            router.onShard(shard, () -> transactionTemplate.execute(status ->
+                    playerRepository.insertPlayer(playerId, player.getUsername(), player.getBalance())));
+        } catch (RuntimeException e) {
+            directory.update("delete from player_directory where player_id = ?", playerId);
+            throw e;
+        }
+        router.placed(playerId, shard);
+        player.setPlayerId(playerId);
+        player.setVersion(0L);
+        creationListeners.forEach(listener -> listener.accept(player.getUsername()));
+        return player;
+    }
+
+    /**
+     * Runs when {@link #create} inserted a player on its shard, which JPA's listeners do not see.
+     */
+    public void onCreated(Consumer<String> listener) {
+        creationListeners.add(listener);
+    }
+
+    public Optional<Integer> findPlayerId(String username) {
+        if (!router.isEnabled()) {
+            return playerRepository.findPlayerIdByUsername(username);
+        }
+        return router.directory().query("select player_id from player_directory where username = ?",
+                (row, rowNumber) -> row.getInt(1), username).stream().findFirst();
+    }
+
+    public long countPlayers() {
+        return source().queryForObject("select count(*) from " + table(), Long.class);
+    }
+
+    public void forEachUsername(Consumer<String> consumer) {
+        source().query("select username from " + table(), (RowCallbackHandler) row -> consumer.accept(row.getString(1)));
+    }
+
+    /**
+     * Every username is in the directory with shards, in the one {@code players} table without.
+     */
+    private JdbcTemplate source() {
+        return router.isEnabled() ? router.directory() : jdbcTemplate;
+    }
+
+    private String table() {
+        return router.isEnabled() ? "player_directory" : "players";
+    }
+}
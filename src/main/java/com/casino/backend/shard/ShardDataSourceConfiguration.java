@@ -0,0 +1,52 @@
+package com.casino.backend.shard;
+
+import com.casino.backend.config.ShardProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+
+/**
+ * Replaces the auto-configured datasource when {@code casino.datasource.shards.urls} is set: shard 0 is built from the
+ * usual {@code spring.datasource.*} properties, every further shard copies its pool settings with its own URL, and the
+ * datasource everyone uses routes between them. It cannot be combined with a read replica, both define the
+ * {@code dataSource} bean.
+ */
+@Profile("!reactive")
+@ConditionalOnProperty(prefix = "casino.datasource.shards", name = "urls")
+@Configuration
+public class ShardDataSourceConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource directoryDataSource(DataSourceProperties properties) {
+        var dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("shard-0");
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource directoryDataSource, ShardProperties properties, ShardRouter router,
+                                 MeterRegistry registry) {
+        var shards = new ArrayList<HikariDataSource>();
+        shards.add(directoryDataSource);
+        for (var url : properties.getUrls()) {
+            var shard = new HikariDataSource();
+            directoryDataSource.copyStateTo(shard);
+            shard.setJdbcUrl(url);
+            shard.setPoolName("shard-" + shards.size());
+            shards.add(shard);
+        }
+        router.useDirectory(directoryDataSource);
+        return new ShardRoutingDataSource(shards, router, registry);
+    }
+}
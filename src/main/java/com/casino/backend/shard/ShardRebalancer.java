@@ -0,0 +1,218 @@
+package com.casino.backend.shard;
+
+import com.casino.backend.concurrency.PlayerLockStripes;
+import com.casino.backend.config.ShardProperties;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.PlayerBalanceId;
+import com.casino.backend.exception.ConcurrentBalanceUpdateException;
+import com.casino.backend.exception.InvalidShardException;
+import com.casino.backend.exception.PlayerNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Moves players between shards while the wallet keeps running. A move copies the player's row, its balances in other
+ * currencies, its daily rollups and its transactions to the target shard, then switches the player over in one short transaction on the
+ * source shard:
+ * <ol>
+ *     <li>the player's balance and rollup rows are locked, and compared to the copied ones,</li>
+ *     <li>when a balance moved or transactions were archived in between, the copy is stale: nothing is switched and the move starts over,</li>
+ *     <li>otherwise the directory is pointed at the target and the rows are deleted from the source.</li>
+ * </ol>
+ * The player's lock stripes are held throughout, so updates of the player on this instance wait for the move instead
+ * of making it start over. They then run on the target, because the shard is looked up when their transaction begins.
+ * An optimistic update that read the player on the source before the switch fails its version check and is retried
+ * there too. Other players are not affected.
+ * <p>
+ * A move that fails half way leaves the player where it was, its partial copy is deleted by the next move to that
+ * shard.
+ */
+@Profile("!reactive")
+@Component
+public class ShardRebalancer {
+
+    private static final Logger logger = LogManager.getLogger(ShardRebalancer.class);
+
+    private final ShardRouter router;
+    private final ShardProperties properties;
+    private final WalletProperties walletProperties;
+    private final PlayerLockStripes playerLocks;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter moves;
+
+    public ShardRebalancer(ShardRouter router, ShardProperties properties, WalletProperties walletProperties,
+                           PlayerLockStripes playerLocks, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                           MeterRegistry registry) {
+        this.router = router;
+        this.properties = properties;
+        this.walletProperties = walletProperties;
+        this.playerLocks = playerLocks;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.moves = Counter.builder("casino.datasource.shard.moves")
+                .description("Players moved between shards")
+                .register(registry);
+    }
+
+    /**
+     * Moves every player that is not on the shard the ring places it on, as after shards were added.
+     *
+     * @return the number of players moved
+     */
+    public int rebalance() {
+        requireShards();
+        var misplaced = new ArrayList<Integer>();
+        router.directory().query("select player_id, shard from player_directory order by player_id", row -> {
+            var playerId = row.getInt(1);
+            if (row.getInt(2) != router.placementOf(playerId)) {
+                misplaced.add(playerId);
+            }
+        });
+        for (var playerId : misplaced) {
+            move(playerId, router.placementOf(playerId));
+        }
+        logger.info("Rebalanced {} players over {} shards", misplaced.size(), router.shardCount());
+        return misplaced.size();
+    }
+
+    /**
+     * Moves the player's rows to the target shard. Nothing happens when the player is already there.
+     */
+    public void move(int playerId, int target) {
+        requireShards();
+        if (target < 0 || target >= router.shardCount()) {
+            throw new InvalidShardException("The shard must be between 0 and " + (router.shardCount() - 1) + ".");
+        }
+        var balanceIds = new ArrayList<PlayerBalanceId>();
+        for (var currency : walletProperties.acceptedCurrencies()) {
+            balanceIds.add(new PlayerBalanceId(playerId, currency));
+        }
+        var locks = playerLocks.lockAll(balanceIds);
+        try {
+            var source = router.lookUp(playerId)
+                    .orElseThrow(() -> new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID."));
+            if (source == target) {
+                return;
+            }
+            for (int attempt = 1; attempt <= properties.getMoveAttempts(); attempt++) {
+                if (moveOnce(playerId, source, target)) {
+                    moves.increment();
+                    logger.info("Moved player {} from shard {} to shard {}", playerId, source, target);
+                    return;
+                }
+                logger.info("Player {} changed while it was copied to shard {}, copying again", playerId, target);
+            }
+            throw new ConcurrentBalanceUpdateException("The player's balance kept changing while it was moved. Please try again.");
+        } finally {
+            playerLocks.unlockAll(locks);
+        }
+    }
+
+    private void requireShards() {
+        if (!router.isEnabled()) {
+            throw new InvalidShardException("Players are not sharded, there is no other shard to move them to.");
+        }
+    }
+
+    /**
+     * @return whether the player was switched to the target, {@code false} when its balance changed during the copy
+     */
+    private boolean moveOnce(int playerId, int source, int target) {
+        inTransaction(target, () -> {
+            deleteRows(playerId);
+            return null;
+        });
+
+        // Balances first: a transaction recorded after this point changed a version, which the switch notices
+        var player = read(source, "select * from players where player_id = ?", playerId);
+        if (player.isEmpty()) {
+            throw new PlayerNotFoundException("The player ID you provided is not valid. Please enter a valid player ID.");
+        }
+        var balances = read(source, "select * from player_balances where player_id = ?", playerId);
+        // Rollups before transactions: rows archived after this point changed a rollup, which the switch notices
+        var rollups = read(source, "select * from transaction_rollups where player_id = ?", playerId);
+        insert(target, "players", player);
+        insert(target, "player_balances", balances);
+        insert(target, "transaction_rollups", rollups);
+        var versions = versions(player, balances, rollups);
+
+        var lastTransactionId = Integer.MIN_VALUE;
+        List<Map<String, Object>> transactions;
+        do {
+            transactions = read(source, "select * from transactions where player_id = ? and transaction_id > ? "
+                    + "order by transaction_id fetch first ? rows only", playerId, lastTransactionId, properties.getMoveBatchSize());
+            insert(target, "transactions", transactions);
+            if (!transactions.isEmpty()) {
+                lastTransactionId = ((Number) transactions.get(transactions.size() - 1).get("transaction_id")).intValue();
+            }
+        } while (transactions.size() == properties.getMoveBatchSize());
+
+        return inTransaction(source, () -> {
+            var current = versions(
+                    jdbcTemplate.queryForList("select * from players where player_id = ? for update", playerId),
+                    jdbcTemplate.queryForList("select * from player_balances where player_id = ? for update", playerId),
+                    jdbcTemplate.queryForList("select * from transaction_rollups where player_id = ? for update", playerId));
+            if (!current.equals(versions)) {
+                return false;
+            }
+            // Writers blocked on the locked rows fail once they are deleted, and retry on the target
+            router.directory().update("update player_directory set shard = ? where player_id = ?", target, playerId);
+            router.placed(playerId, target);
+            deleteRows(playerId);
+            return true;
+        });
+    }
+
+    private Map<String, Object> versions(List<Map<String, Object>> player, List<Map<String, Object>> balances,
+                                         List<Map<String, Object>> rollups) {
+        var versions = new HashMap<String, Object>();
+        player.forEach(row -> versions.put(walletProperties.getDefaultCurrency(), row.get("version")));
+        balances.forEach(row -> versions.put(Objects.toString(row.get("currency")), row.get("version")));
+        // A rollup only grows, its count tells whether transactions were added to it
+        rollups.forEach(row -> versions.put(row.get("activity_day") + "/" + row.get("currency"), row.get("transaction_count")));
+        return versions;
+    }
+
+    private void deleteRows(int playerId) {
+        jdbcTemplate.update("delete from transactions where player_id = ?", playerId);
+        jdbcTemplate.update("delete from transaction_rollups where player_id = ?", playerId);
+        jdbcTemplate.update("delete from player_balances where player_id = ?", playerId);
+        jdbcTemplate.update("delete from players where player_id = ?", playerId);
+    }
+
+    private List<Map<String, Object>> read(int shard, String sql, Object... arguments) {
+        return router.onShard(shard, () -> jdbcTemplate.queryForList(sql, arguments));
+    }
+
+    /**
+     * Inserts rows as they were read, column by column, in one JDBC batch.
+     */
+    private void insert(int shard, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        var columns = List.copyOf(rows.get(0).keySet());
+        var sql = "insert into " + table + " (" + String.join(", ", columns) + ") values ("
+                + String.join(", ", columns.stream().map(column -> "?").toList()) + ")";
+        var arguments = rows.stream().map(row -> columns.stream().map(row::get).toArray()).toList();
+        inTransaction(shard, () -> jdbcTemplate.batchUpdate(sql, arguments));
+    }
+
+    private <T> T inTransaction(int shard, Supplier<T> work) {
+        return router.onShard(shard, () -> transactionTemplate.execute(status -> work.get()));
+    }
+}
@@ -0,0 +1,61 @@
+package com.casino.backend.shard;
+
+import java.util.Arrays;
+
+/**
+ * A consistent hash ring of player IDs onto shards. Every shard owns a number of points on the ring, and a player
+ * belongs to the shard of the first point at or after the hash of its ID.
+ * <p>
+ * The points of a shard depend only on the shard's number, so adding a shard leaves the points of the existing ones
+ * where they were: the only players placed differently are the ones the new shard's points take over, about one in
+ * N + 1.
+ */
+public final class ShardRing {
+
+    private final int[] points;
+    private final int[] shards;
+
+    public ShardRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("A shard ring needs at least one shard and one point per shard");
+        }
+        var entries = new long[shardCount * virtualNodes];
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                // Shard numbers start at 1 in the hashed key, so no point hashes a player ID: the player would sit on it
+                var point = (int) (mix(((long) (shard + 1) << 32) | node) >>> 32);
+                // Point in the high half, shard in the low half, so sorting orders by point
+                entries[shard * virtualNodes + node] = ((long) point << 32) | shard;
+            }
+        }
+        Arrays.sort(entries);
+        this.points = new int[entries.length];
+        this.shards = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            points[i] = (int) (entries[i] >> 32);
+            shards[i] = (int) entries[i];
+        }
+    }
+
+    public int shardFor(int playerId) {
+        var hash = (int) (mix(playerId) >>> 32);
+        var index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return shards[index == points.length ? 0 : index];
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3, consecutive IDs end up far apart on the ring. Its upper half is used, it
+     * depends on every input bit.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,195 @@
+package com.casino.backend.shard;
+
+import com.casino.backend.config.ShardProperties;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.enums.ConcurrencyMode;
+import com.casino.backend.enums.LedgerMode;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Decides which shard the database work of the current thread runs on. Work about one player is passed to
+ * {@link #onShardOf}, which only names the player: the shard is looked up when a connection is taken, which for a
+ * transaction is when it begins. A transaction that waited for the player's lock while the player was moved therefore
+ * still runs on the shard the player lives on now. Work that is not about one player runs on shard 0.
+ * <p>
+ * The {@code player_directory} table on shard 0 records every player's shard, a player is placed by the
+ * {@link ShardRing} when it is created and stays there until it is moved, see {@link ShardRebalancer}. Directory
+ * lookups are cached. Without shards configured every method runs the work as it is.
+ */
+@Profile("!reactive")
+@Component
+public class ShardRouter implements MeterBinder {
+
+    public static final int DIRECTORY_SHARD = 0;
+
+    private static final ThreadLocal<Integer> CURRENT_PLAYER = new ThreadLocal<>();
+    private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+    private final ShardProperties properties;
+    private final ShardRing ring;
+    private final LoadingCache<Integer, Integer> shards;
+
+    /**
+     * Shard 0's own pool, so that directory lookups never take part in the transaction they route.
+     */
+    private volatile JdbcTemplate directory;
+
+    public ShardRouter(ShardProperties properties, WalletProperties walletProperties) {
+        this.properties = properties;
+        if (properties.isEnabled() && walletProperties.getConcurrencyMode() == ConcurrencyMode.ENGINE) {
+            throw new IllegalStateException("Sharding requires the atomic or optimistic concurrency mode");
+        }
+        if (properties.isEnabled() && walletProperties.getLedger().getMode() == LedgerMode.JOURNAL) {
+            throw new IllegalStateException("Sharding requires the direct ledger mode");
+        }
+        this.ring = new ShardRing(properties.shardCount(), properties.getVirtualNodes());
+        this.shards = Caffeine.newBuilder()
+                .maximumSize(properties.getDirectoryCacheSize())
+                .expireAfterWrite(properties.getDirectoryCacheTtl())
+                .recordStats()
+                .build(playerId -> lookUp(playerId).orElseGet(() -> ring.shardFor(playerId)));
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public int shardCount() {
+        return properties.shardCount();
+    }
+
+    void useDirectory(DataSource directoryShard) {
+        this.directory = new JdbcTemplate(directoryShard);
+    }
+
+    JdbcTemplate directory() {
+        return directory;
+    }
+
+    /**
+     * @return the shard a new player with this ID is created on, and that the rebalancer moves it to
+     */
+    public int placementOf(int playerId) {
+        return ring.shardFor(playerId);
+    }
+
+    /**
+     * @return the player's shard, the one it would be created on when the directory does not know it
+     */
+    public int shardOf(Integer playerId) {
+        return isEnabled() ? shards.get(playerId) : DIRECTORY_SHARD;
+    }
+
+    /**
+     * Reads the player's shard from the directory, bypassing the cache.
+     */
+    Optional<Integer> lookUp(int playerId) {
+        return directory.query("select shard from player_directory where player_id = ?",
+                (row, rowNumber) -> row.getInt(1), playerId).stream().findFirst();
+    }
+
+    /**
+     * Notes that the player lives on the shard now, once it was created or moved there.
+     */
+    void placed(int playerId, int shard) {
+        shards.put(playerId, shard);
+    }
+
+    /**
+     * Runs work about one player on the player's shard.
+     */
+    public <T> T onShardOf(Integer playerId, Supplier<T> work) {
+        if (!isEnabled()) {
+            return work.get();
+        }
+        var previousPlayer = CURRENT_PLAYER.get();
+        var previousShard = CURRENT_SHARD.get();
+        CURRENT_PLAYER.set(playerId);
+        CURRENT_SHARD.remove();
+        try {
+            return work.get();
+        } finally {
+            restore(previousPlayer, previousShard);
+        }
+    }
+
+    /**
+     * Runs work on the given shard, whichever players it touches.
+     */
+    public <T> T onShard(int shard, Supplier<T> work) {
+        if (!isEnabled()) {
+            return work.get();
+        }
+        var previousPlayer = CURRENT_PLAYER.get();
+        var previousShard = CURRENT_SHARD.get();
+        CURRENT_SHARD.set(shard);
+        try {
+            return work.get();
+        } finally {
+            restore(previousPlayer, previousShard);
+        }
+    }
+
+    private static void restore(Integer previousPlayer, Integer previousShard) {
+        if (previousPlayer == null) {
+            CURRENT_PLAYER.remove();
+        } else {
+            CURRENT_PLAYER.set(previousPlayer);
+        }
+        if (previousShard == null) {
+            CURRENT_SHARD.remove();
+        } else {
+            CURRENT_SHARD.set(previousShard);
+        }
+    }
+
+    /**
+     * @return the shard a connection taken by the current thread must come from
+     */
+    int currentShard() {
+        var shard = CURRENT_SHARD.get();
+        if (shard != null) {
+            return shard;
+        }
+        var playerId = CURRENT_PLAYER.get();
+        return playerId == null ? DIRECTORY_SHARD : shards.get(playerId);
+    }
+
+    /**
+     * Groups items by the shard of their player, for work that has to run once per shard.
+     *
+     * @return the indexes of the items on each shard, in item order, by ascending shard
+     */
+    public <T> Map<Integer, List<Integer>> groupByShard(List<T> items, Function<T, Integer> playerId) {
+        var groups = new TreeMap<Integer, List<Integer>>();
+        for (int i = 0; i < items.size(); i++) {
+            var id = playerId.apply(items.get(i));
+            var shard = id == null ? DIRECTORY_SHARD : shardOf(id);
+            groups.computeIfAbsent(shard, key -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (isEnabled()) {
+            CaffeineCacheMetrics.monitor(registry, shards, "player_shard");
+        }
+    }
+}
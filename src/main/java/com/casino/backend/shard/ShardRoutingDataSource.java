@@ -0,0 +1,53 @@
+package com.casino.backend.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Hands out connections of the shard chosen by {@link ShardRouter}. The target is chosen when a connection is taken,
+ * which for a transaction is when it begins.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private final ShardRouter router;
+    private final List<HikariDataSource> shards;
+    private final Counter[] connections;
+
+    public ShardRoutingDataSource(List<HikariDataSource> shards, ShardRouter router, MeterRegistry registry) {
+        this.router = router;
+        this.shards = shards;
+        var targets = new HashMap<Object, Object>();
+        this.connections = new Counter[shards.size()];
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+            connections[shard] = Counter.builder("casino.datasource.shard.connections")
+                    .description("Connections taken from each shard")
+                    .tag("shard", Integer.toString(shard))
+                    .register(registry);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(ShardRouter.DIRECTORY_SHARD));
+        // Fail instead of silently using shard 0 when a player's shard is not configured any more
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        var shard = router.currentShard();
+        if (shard < connections.length) {
+            connections[shard].increment();
+        }
+        return shard;
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(HikariDataSource::close);
+    }
+}
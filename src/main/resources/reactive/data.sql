@@ -0,0 +1,2 @@
+-- The player DataLoader creates for the servlet stack
+insert into players (player_id, username, balance, version) values (next value for player_seq, 'test_player', 1000.00, 0);
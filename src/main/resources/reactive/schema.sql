@@ -0,0 +1,40 @@
+-- The tables Hibernate creates for the servlet stack, for the reactive profile where Hibernate does not run.
+-- The reactive repositories take one sequence value per row, so the sequences step by 1.
+create sequence player_seq start with 1 increment by 1;
+create sequence transaction_seq start with 1 increment by 1;
+
+create table players (
+    player_id integer not null,
+    username varchar(50) not null unique,
+    balance numeric(38, 2) not null,
+    version bigint,
+    last_transaction_id integer,
+    bonus_balance numeric(38, 2),
+    wagering_required numeric(38, 2),
+    wagering_progress numeric(38, 2),
+    primary key (player_id)
+);
+
+create table player_balances (
+    player_id integer not null references players (player_id),
+    currency varchar(3) not null,
+    balance numeric(38, 2) not null,
+    version bigint,
+    last_transaction_id integer,
+    primary key (player_id, currency)
+);
+
+create table transactions (
+    transaction_id integer not null,
+    player_id integer not null references players (player_id),
+    amount numeric(38, 2) not null,
+    currency varchar(3),
+    transaction_type varchar(255) not null,
+    timestamp timestamp(6) not null,
+    balance_after numeric(38, 2),
+    idempotency_key varchar(64) unique,
+    primary key (transaction_id)
+);
+
+create index idx_player_balances_player on player_balances (player_id);
+create index idx_transactions_player_history on transactions (player_id, timestamp desc, transaction_id);
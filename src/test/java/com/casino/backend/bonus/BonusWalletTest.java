@@ -0,0 +1,104 @@
+package com.casino.backend.bonus;
+
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.Player;
+import com.casino.backend.enums.BonusWagerOrder;
+import com.casino.backend.enums.TransactionType;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class BonusWalletTest {
+
+    @Test
+    void testWagersSpendCashFirstAndWinsAreSplitByShare() {
+        // Given 100.00 cash and a 50.00 bonus
+        var bonusWallet = new BonusWallet(properties(BonusWagerOrder.CASH_FIRST, 10));
+        var player = Player.builder().balance(new BigDecimal("100.00")).build();
+        move(bonusWallet, player, TransactionType.BONUS_GRANT, "50.00");
+
+        // When
+        move(bonusWallet, player, TransactionType.WAGER, "120.00");
+        var bonusAfterWager = player.getBonusBalance();
+        move(bonusWallet, player, TransactionType.WIN, "60.00");
+
+        // Then
+        assertEquals(new BigDecimal("30.00"), bonusAfterWager);
+        assertEquals(new BigDecimal("90.00"), player.getBalance());
+        assertEquals(new BigDecimal("90.00"), player.getBonusBalance());
+        assertEquals(new BigDecimal("500.00"), player.getWageringRequired());
+        assertEquals(new BigDecimal("120.00"), player.getWageringProgress());
+    }
+
+    @Test
+    void testWagersSpendBonusFirst() {
+        // Given
+        var bonusWallet = new BonusWallet(properties(BonusWagerOrder.BONUS_FIRST, 10));
+        var player = Player.builder().balance(new BigDecimal("100.00")).build();
+        move(bonusWallet, player, TransactionType.BONUS_GRANT, "50.00");
+
+        // When
+        move(bonusWallet, player, TransactionType.WAGER, "20.00");
+
+        // Then
+        assertEquals(new BigDecimal("130.00"), player.getBalance());
+        assertEquals(new BigDecimal("30.00"), player.getBonusBalance());
+    }
+
+    @Test
+    void testBonusBecomesCashOnceTheRequirementIsMet() {
+        // Given a 10.00 bonus to be wagered twice
+        var bonusWallet = new BonusWallet(properties(BonusWagerOrder.CASH_FIRST, 2));
+        var player = Player.builder().balance(new BigDecimal("100.00")).build();
+        move(bonusWallet, player, TransactionType.BONUS_GRANT, "10.00");
+
+        // When
+        move(bonusWallet, player, TransactionType.WAGER, "15.00");
+        var progress = player.getWageringProgress();
+        move(bonusWallet, player, TransactionType.WAGER, "5.00");
+
+        // Then
+        assertEquals(new BigDecimal("15.00"), progress);
+        assertEquals(new BigDecimal("90.00"), player.getBalance());
+        assertNull(player.getBonusBalance());
+        assertNull(player.getWageringRequired());
+        assertNull(player.getWageringProgress());
+        assertFalse(bonusWallet.isTracked(player, TransactionType.WAGER));
+    }
+
+    @Test
+    void testSpentBonusLeavesNoState() {
+        // Given only bonus money
+        var bonusWallet = new BonusWallet(properties(BonusWagerOrder.CASH_FIRST, 30));
+        var player = Player.builder().balance(BigDecimal.ZERO).build();
+        move(bonusWallet, player, TransactionType.BONUS_GRANT, "10.00");
+
+        // When
+        move(bonusWallet, player, TransactionType.WAGER, "10.00");
+        move(bonusWallet, player, TransactionType.WIN, "4.00");
+
+        // Then the win on an empty balance is cash
+        assertEquals(new BigDecimal("4.00"), player.getBalance());
+        assertNull(player.getBonusBalance());
+    }
+
+    /**
+     * Applies the movement to the balance first, as the wallet does before it calls the bonus wallet.
+     */
+    private static void move(BonusWallet bonusWallet, Player player, TransactionType transactionType, String amount) {
+        var value = new BigDecimal(amount);
+        player.setBalance(transactionType == TransactionType.WAGER ? player.getBalance().subtract(value) : player.getBalance().add(value));
+        bonusWallet.apply(player, transactionType, value.movePointRight(2).longValueExact());
+    }
+
+    private static WalletProperties properties(BonusWagerOrder wagerOrder, int wageringMultiplier) {
+        var properties = new WalletProperties();
+        properties.getBonus().setWagerOrder(wagerOrder);
+        properties.getBonus().setWageringMultiplier(wageringMultiplier);
+        return properties;
+    }
+}
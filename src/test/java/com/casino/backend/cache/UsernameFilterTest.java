@@ -0,0 +1,29 @@
+package com.casino.backend.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UsernameFilterTest {
+
+    @Test
+    void testAddedUsernamesAreNeverRejected() {
+        // Given
+        var filter = new UsernameFilter(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("player_" + i);
+        }
+
+        // When
+        var falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("player_" + i));
+            if (filter.mightContain("unknown_" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // Then about 1% of unknown usernames get through
+        assertTrue(falsePositives < 200, "false positives: " + falsePositives);
+    }
+}
@@ -0,0 +1,51 @@
+package com.casino.backend.controller;
+
+import com.casino.backend.entity.Player;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.request.BatchUpdateBalanceRequest;
+import com.casino.backend.response.BatchUpdateBalanceResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Sends batches through the controller and the real service, on an H2 database of its own.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:player_controller_batch_test")
+public class PlayerControllerBatchTest {
+
+    @Autowired
+    private PlayerController playerController;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Test
+    void testInvalidItemsAreRejectedWithoutFailingTheBatch() {
+        // Given a valid wager between an item without a player, one without a type and one without an amount
+        var player = playerRepository.save(Player.builder().username("batch_validation_player").balance(new BigDecimal("100.00")).build());
+        var requests = List.of(
+                new BatchUpdateBalanceRequest(null, new BigDecimal("10.00"), TransactionType.WIN),
+                new BatchUpdateBalanceRequest(player.getPlayerId(), new BigDecimal("20.00"), TransactionType.WAGER),
+                new BatchUpdateBalanceRequest(player.getPlayerId(), new BigDecimal("30.00"), null),
+                new BatchUpdateBalanceRequest(player.getPlayerId(), null, TransactionType.WIN));
+
+        // When
+        var response = playerController.updateBalances(requests);
+
+        // Then only the valid item is applied
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        var results = Objects.requireNonNull(response.getBody());
+        assertEquals(List.of(400, 200, 400, 400), results.stream().map(BatchUpdateBalanceResponse::getStatus).toList());
+        assertEquals(0, new BigDecimal("80.00").compareTo(results.get(1).getBalance()));
+        assertEquals(0, new BigDecimal("80.00").compareTo(playerRepository.findById(player.getPlayerId()).orElseThrow().getBalance()));
+    }
+}
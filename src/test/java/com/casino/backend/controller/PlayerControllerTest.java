@@ -7,12 +7,16 @@ import com.casino.backend.exception.InsufficientBalanceException;
 import com.casino.backend.exception.InvalidTransactionException;
 import com.casino.backend.exception.PlayerNotFoundException;
 import com.casino.backend.exception.PlayerUserNameNotFoundException;
+import com.casino.backend.request.BatchUpdateBalanceRequest;
 import com.casino.backend.request.Last10TransactionRequest;
 import com.casino.backend.request.UpdateBalanceRequest;
 import com.casino.backend.response.BalanceResponse;
+import com.casino.backend.response.BatchUpdateBalanceResponse;
 import com.casino.backend.response.Last10TransactionResponse;
+import com.casino.backend.response.TransactionHistoryResponse;
 import com.casino.backend.response.UpdateBalanceResponse;
 import com.casino.backend.service.PlayerService;
+import com.casino.backend.service.TransactionExportService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -20,7 +24,9 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
@@ -38,6 +44,9 @@ public class PlayerControllerTest {
     @Mock
     private PlayerService playerService;
 
+    @Mock
+    private TransactionExportService transactionExportService;
+
     @InjectMocks
     private PlayerController playerController;
 
@@ -145,11 +154,30 @@ public class PlayerControllerTest {
         assertThrows(PlayerNotFoundException.class, () -> playerController.updateBalance(playerId, request));
     }
 
+    @Test
+    void testUpdatePlayerBalances_Batch() {
+        // Given
+        var requests = List.of(
+                new BatchUpdateBalanceRequest(1, BigDecimal.valueOf(20), TransactionType.WAGER),
+                new BatchUpdateBalanceRequest(2, BigDecimal.valueOf(500), TransactionType.WAGER));
+        var results = List.of(
+                BatchUpdateBalanceResponse.builder().playerId(1).transactionId(1).balance(BigDecimal.valueOf(80)).status(200).build(),
+                BatchUpdateBalanceResponse.builder().playerId(2).status(418).error("I_AM_A_TEAPOT").reason("Wager greater than current balance").build());
+        when(playerService.updateBalances(requests)).thenReturn(results);
+
+        // When
+        ResponseEntity<List<BatchUpdateBalanceResponse>> response = playerController.updateBalances(requests);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(results, response.getBody());
+    }
+
     @Test
     public void testGetLast10Transactions_ValidRequest() {
         // Given
         var request = new Last10TransactionRequest("player1");
-        var player = new Player(1, "player1", BigDecimal.valueOf(1000));
+        var player = new Player(1, "player1", BigDecimal.valueOf(1000), 0L, null, null, null, null);
         List<Last10TransactionResponse> transactions = new ArrayList<>();
         when(playerService.getPlayerByUsername(request.getUsername())).thenReturn(player);
         when(playerService.getLast10Transactions(player)).thenReturn(transactions);
@@ -173,4 +201,34 @@ public class PlayerControllerTest {
         // Then
         assertThrows(PlayerUserNameNotFoundException.class, () -> playerController.getLast10Transactions(request));
     }
+
+    @Test
+    public void testGetTransactionHistory_ValidRequest() {
+        // Given
+        var history = new TransactionHistoryResponse(new ArrayList<>(), "next-page");
+        when(playerService.getTransactionHistory(1, 20, null)).thenReturn(history);
+
+        // When
+        ResponseEntity<TransactionHistoryResponse> response = playerController.getTransactionHistory(1, 20, null);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(history, response.getBody());
+    }
+
+    @Test
+    public void testExportTransactions_StreamsTheExport() throws Exception {
+        // Given
+        when(transactionExportService.prepareExport(1, null, null))
+                .thenReturn(outputStream -> outputStream.write("{\"transactionId\":1}\n".getBytes()));
+
+        // When
+        ResponseEntity<StreamingResponseBody> response = playerController.exportTransactions(1, null, null);
+        var body = new ByteArrayOutputStream();
+        response.getBody().writeTo(body);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("{\"transactionId\":1}\n", body.toString());
+    }
 }
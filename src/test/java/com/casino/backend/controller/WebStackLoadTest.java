@@ -0,0 +1,203 @@
+package com.casino.backend.controller;
+
+import com.casino.backend.CasinoBackendSystemApplication;
+import com.casino.backend.entity.Player;
+import com.casino.backend.repository.PlayerRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Loads the update balance endpoint over HTTP with an increasing number of concurrent clients on each web stack:
+ * Spring MVC on the Tomcat platform thread pool, Spring MVC on virtual threads, and the reactive profile (WebFlux on Netty
+ * with R2DBC). Prints throughput, latency percentiles and the heap retained by the application after the load.
+ * The highest error-free throughput of each stack is its maximum sustained rate.
+ * Run with {@code mvn test -Pbench,java21}, on Java 17 the virtual thread stack is skipped.
+ */
+@Tag("benchmark")
+public class WebStackLoadTest {
+
+    private static final int PLAYERS = 1000;
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000.00");
+    private static final int[] CONCURRENT_CLIENTS = {50, 200, 800};
+    private static final Duration WARMUP = Duration.ofSeconds(5);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(15);
+
+    @Test
+    void compareWebStacks() throws Exception {
+        var results = new ArrayList<String>();
+        for (var stack : Stack.values()) {
+            if (stack == Stack.VIRTUAL && Runtime.version().feature() < 21) {
+                continue;
+            }
+            results.addAll(run(stack));
+        }
+        System.out.println();
+        System.out.printf("%-9s %8s %12s %10s %10s %8s %8s%n", "stack", "clients", "requests/s", "p50 ms", "p99 ms", "errors", "heap MB");
+        results.forEach(System.out::println);
+    }
+
+    private List<String> run(Stack stack) throws Exception {
+        var name = stack.name().toLowerCase(Locale.ROOT);
+        var application = new SpringApplicationBuilder(CasinoBackendSystemApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:load_test_" + name,
+                        "spring.r2dbc.url=r2dbc:h2:mem:///load_test_" + name,
+                        "spring.threads.virtual.enabled=" + (stack == Stack.VIRTUAL),
+                        "logging.level.com.casino.backend=WARN",
+                        "logging.level.org.hibernate=WARN");
+        if (stack == Stack.REACTIVE) {
+            application.profiles("reactive");
+        }
+        try (var context = application.run()) {
+            var playerIds = stack == Stack.REACTIVE ? createPlayers(context.getBean(DatabaseClient.class)) : createPlayers(context.getBean(PlayerRepository.class));
+            var baseUri = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/casino/player/";
+            var http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+            var results = new ArrayList<String>();
+            for (var clients : CONCURRENT_CLIENTS) {
+                runLoad(http, baseUri, playerIds, clients, WARMUP);
+                var start = System.nanoTime();
+                var load = runLoad(http, baseUri, playerIds, clients, MEASUREMENT);
+                var elapsedNanos = System.nanoTime() - start;
+
+                var latencies = load.latencies();
+                Arrays.sort(latencies);
+                results.add(String.format("%-9s %8d %12.0f %10.3f %10.3f %8d %8d", name, clients,
+                        latencies.length / (elapsedNanos / 1e9),
+                        percentile(latencies, 0.50), percentile(latencies, 0.99), load.errors(), retainedHeapMegabytes()));
+            }
+            return results;
+        }
+    }
+
+    private static int[] createPlayers(PlayerRepository playerRepository) {
+        var playerIds = new int[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            playerIds[i] = playerRepository.save(Player.builder()
+                    .username("load_" + i)
+                    .balance(OPENING_BALANCE)
+                    .build()).getPlayerId();
+        }
+        return playerIds;
+    }
+
+    private static int[] createPlayers(DatabaseClient databaseClient) {
+        var playerIds = new int[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            playerIds[i] = databaseClient.sql("select next value for player_seq")
+                    .map(row -> row.get(0, Long.class).intValue())
+                    .one()
+                    .block();
+            databaseClient.sql("insert into players (player_id, username, balance, version) values (:playerId, :username, :balance, 0)")
+                    .bind("playerId", playerIds[i])
+                    .bind("username", "load_" + i)
+                    .bind("balance", OPENING_BALANCE)
+                    .then()
+                    .block();
+        }
+        return playerIds;
+    }
+
+    /**
+     * Heap in use after a full collection, with the application still running, so it is what the stack retains.
+     */
+    private static long retainedHeapMegabytes() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024);
+    }
+
+    /**
+     * Runs closed-loop clients: each one sends its next request as soon as the previous response arrives.
+     */
+    private static Load runLoad(HttpClient http, String baseUri, int[] playerIds, int clients, Duration duration) {
+        var deadline = System.nanoTime() + duration.toNanos();
+        var recorders = new ArrayList<Recorder>(clients);
+        var loops = new ArrayList<CompletableFuture<Void>>(clients);
+        for (int i = 0; i < clients; i++) {
+            var recorder = new Recorder();
+            recorders.add(recorder);
+            loops.add(loop(http, baseUri, playerIds, deadline, recorder));
+        }
+        CompletableFuture.allOf(loops.toArray(CompletableFuture[]::new)).join();
+
+        var latencies = new long[recorders.stream().mapToInt(recorder -> recorder.count).sum()];
+        int errors = 0;
+        int offset = 0;
+        for (var recorder : recorders) {
+            System.arraycopy(recorder.latencies, 0, latencies, offset, recorder.count);
+            offset += recorder.count;
+            errors += recorder.errors;
+        }
+        return new Load(latencies, errors);
+    }
+
+    private static CompletableFuture<Void> loop(HttpClient http, String baseUri, int[] playerIds, long deadline, Recorder recorder) {
+        if (System.nanoTime() >= deadline) {
+            return CompletableFuture.completedFuture(null);
+        }
+        var random = ThreadLocalRandom.current();
+        var body = "{\"amount\":1,\"transactionType\":\"" + (random.nextBoolean() ? "WIN" : "WAGER") + "\"}";
+        var request = HttpRequest.newBuilder(URI.create(baseUri + playerIds[random.nextInt(playerIds.length)] + "/balance/update"))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        var begin = System.nanoTime();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    recorder.record(System.nanoTime() - begin, error == null && response.statusCode() == 200);
+                    return null;
+                })
+                .thenCompose(ignored -> loop(http, baseUri, playerIds, deadline, recorder));
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        return sortedNanos[(int) Math.ceil(percentile * sortedNanos.length) - 1] / 1e6;
+    }
+
+    private enum Stack {
+        PLATFORM,
+        VIRTUAL,
+        REACTIVE
+    }
+
+    private record Load(long[] latencies, int errors) {
+    }
+
+    /**
+     * The latencies of one client. Its requests run one after another, so it needs no synchronization.
+     */
+    private static final class Recorder {
+
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        void record(long nanos, boolean ok) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (!ok) {
+                errors++;
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.casino.backend.engine;
+
+import com.casino.backend.entity.PlayerBalanceId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BalanceSnapshotStoreTest {
+
+    private static final PlayerBalanceId FIRST = new PlayerBalanceId(1, "ZAR");
+    private static final PlayerBalanceId FIRST_IN_USD = new PlayerBalanceId(1, "USD");
+    private static final PlayerBalanceId SECOND = new PlayerBalanceId(2, "ZAR");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testLoadLatestReturnsTheLastSnapshotWritten() throws IOException {
+        // Given
+        var store = new BalanceSnapshotStore(directory);
+        store.write(10, Map.of(FIRST, new Account(10_000, 7)));
+        store.write(20, Map.of(FIRST, new Account(9_050, 15), FIRST_IN_USD, new Account(2_500, 16), SECOND, new Account(0, 0)));
+        store.write(30, Map.of(FIRST, new Account(1_234_567_899, 28), FIRST_IN_USD, new Account(1_500, 29)));
+
+        // When
+        var loaded = store.loadLatest().orElseThrow();
+
+        // Then
+        assertEquals(30, loaded.watermark());
+        assertEquals(new Account.Committed(1_234_567_899, 28), loaded.accounts().get(FIRST).committed);
+        assertEquals(new Account.Committed(1_500, 29), loaded.accounts().get(FIRST_IN_USD).committed);
+        assertEquals(2, snapshotFiles().count());
+    }
+
+    @Test
+    void testCorruptSnapshotFallsBackToThePreviousOne() throws IOException {
+        // Given
+        var store = new BalanceSnapshotStore(directory);
+        store.write(10, Map.of(FIRST, new Account(10_000, 7)));
+        store.write(20, Map.of(FIRST, new Account(9_000, 15)));
+        var latest = snapshotFiles().sorted().reduce((first, second) -> second).orElseThrow();
+        try (var channel = Files.newByteChannel(latest, StandardOpenOption.WRITE)) {
+            channel.position(Files.size(latest) - 12);
+            channel.write(ByteBuffer.wrap(new byte[]{42}));
+        }
+
+        // When
+        var loaded = store.loadLatest().orElseThrow();
+
+        // Then
+        assertEquals(10, loaded.watermark());
+        assertEquals(10_000, loaded.accounts().get(FIRST).committed.balance());
+    }
+
+    @Test
+    void testNoSnapshot() throws IOException {
+        assertTrue(new BalanceSnapshotStore(directory.resolve("missing")).loadLatest().isEmpty());
+    }
+
+    private Stream<Path> snapshotFiles() throws IOException {
+        return Files.list(directory).filter(path -> path.getFileName().toString().endsWith(".snapshot")).toList().stream();
+    }
+}
@@ -0,0 +1,146 @@
+package com.casino.backend.engine;
+
+import com.casino.backend.CasinoBackendSystemApplication;
+import com.casino.backend.cache.IdempotencyCache;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.PlayerBalanceId;
+import com.casino.backend.enums.ConcurrencyMode;
+import com.casino.backend.enums.LedgerMode;
+import com.casino.backend.ledger.TransactionLedger;
+import com.casino.backend.money.Money;
+import com.casino.backend.repository.PlayerBalanceRepository;
+import com.casino.backend.repository.PlayerRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures how long the wallet engine takes to start on a database with ten million transactions: from the
+ * {@code players} table, from a recent snapshot plus the transactions recorded after it, and from a snapshot taken
+ * before the first transaction, which replays the whole table. Run with {@code mvn test -Pbench}, and change the
+ * number of transactions with {@code -Dbenchmark.transactions=<n>}.
+ */
+@Tag("benchmark")
+public class EngineStartupBenchmarkTest {
+
+    private static final int PLAYERS = 100_000;
+    private static final int TRANSACTIONS = Integer.getInteger("benchmark.transactions", 10_000_000);
+    private static final int TAIL_TRANSACTIONS = 100_000;
+    private static final int ROWS_PER_INSERT = 1_000_000;
+    // Clear of the sample data and of the IDs the sequences hand out while the context starts
+    private static final int FIRST_ID = 1_000_000;
+
+    @Test
+    void measureStartupTime() throws Exception {
+        var directory = Path.of("target/engine-startup-benchmark", String.valueOf(System.nanoTime()));
+        try (var context = new SpringApplicationBuilder(CasinoBackendSystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "logging.level.com.casino.backend=WARN",
+                        "logging.level.org.hibernate=WARN")
+                // An argument, because the default properties above do not override application.properties.
+                // Ten million rows do not fit an in-memory database.
+                .run("--spring.datasource.url=jdbc:h2:file:./" + directory.resolve("db"))) {
+            var jdbcTemplate = context.getBean(JdbcTemplate.class);
+            var seedStart = System.nanoTime();
+            seed(jdbcTemplate);
+            var seedMillis = (System.nanoTime() - seedStart) / 1_000_000;
+
+            var lastPlayer = FIRST_ID + PLAYERS - 1;
+            var expectedBalance = jdbcTemplate.queryForObject(
+                    "select balance_after from transactions where player_id = ? order by transaction_id desc limit 1",
+                    BigDecimal.class, lastPlayer);
+            var results = new ArrayList<String>();
+
+            results.add(run(context, "players", directory.resolve("players-snapshots"), expectedBalance));
+
+            var recent = directory.resolve("recent-snapshots");
+            var watermark = FIRST_ID + TRANSACTIONS - TAIL_TRANSACTIONS - 1;
+            new BalanceSnapshotStore(recent).write(watermark, openingAccounts(jdbcTemplate, watermark));
+            results.add(run(context, "snapshot", recent, expectedBalance));
+
+            var empty = directory.resolve("empty-snapshots");
+            new BalanceSnapshotStore(empty).write(FIRST_ID - 1, openingAccounts(jdbcTemplate, FIRST_ID - 1));
+            results.add(run(context, "full", empty, expectedBalance));
+
+            System.out.println();
+            System.out.printf("%d players and %d transactions seeded in %d ms%n", PLAYERS, TRANSACTIONS, seedMillis);
+            System.out.printf("%-10s %12s %12s%n", "start", "replayed", "startup ms");
+            results.forEach(System.out::println);
+        }
+    }
+
+    private static String run(ConfigurableApplicationContext context, String name, Path snapshotDirectory,
+                              BigDecimal expectedBalance) throws Exception {
+        var properties = new WalletProperties();
+        properties.setConcurrencyMode(ConcurrencyMode.ENGINE);
+        properties.getLedger().setMode(LedgerMode.JOURNAL);
+        properties.getEngine().setSnapshotDirectory(snapshotDirectory);
+        var engine = new WalletEngine(properties,
+                context.getBean(PlayerRepository.class),
+                context.getBean(PlayerBalanceRepository.class),
+                context.getBean(TransactionLedger.class),
+                context.getBean(IdempotencyCache.class),
+                context.getBean(JdbcTemplate.class));
+        var start = System.nanoTime();
+        engine.start();
+        var startupMillis = (System.nanoTime() - start) / 1_000_000;
+        try {
+            assertEquals(0, expectedBalance.compareTo(engine.balance(FIRST_ID + PLAYERS - 1, properties.getDefaultCurrency())));
+        } finally {
+            engine.stop();
+        }
+        var replayed = switch (name) {
+            case "snapshot" -> TAIL_TRANSACTIONS;
+            case "full" -> TRANSACTIONS;
+            default -> 0;
+        };
+        return String.format("%-10s %12d %12d", name, replayed, startupMillis);
+    }
+
+    /**
+     * Every player gets the same number of transactions, each a WIN of 1.00, so the balance after the n-th one is
+     * 1000.00 + n. The {@code players} table holds the final balances, as it does once the journal is drained.
+     */
+    private static void seed(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("insert into players (player_id, username, balance, version, last_transaction_id) "
+                + "select ? + x - 1, 'startup_' || x, 1000.00, 0, null from system_range(1, ?)", FIRST_ID, PLAYERS);
+        for (int from = 0; from < TRANSACTIONS; from += ROWS_PER_INSERT) {
+            jdbcTemplate.update("insert into transactions (transaction_id, player_id, amount, transaction_type, timestamp, balance_after) "
+                            + "select ? + x, ? + mod(x, ?), 1.00, 'WIN', localtimestamp, 1000.00 + x / ? + 1 from system_range(?, ?)",
+                    FIRST_ID, FIRST_ID, PLAYERS, PLAYERS, from, Math.min(from + ROWS_PER_INSERT, TRANSACTIONS) - 1);
+        }
+        jdbcTemplate.update("update players p set (balance, last_transaction_id) = (select t.balance_after, t.transaction_id "
+                + "from transactions t where t.player_id = p.player_id order by t.transaction_id desc limit 1) "
+                + "where p.player_id >= ?", FIRST_ID);
+        jdbcTemplate.execute("alter sequence transaction_seq restart with " + (FIRST_ID + TRANSACTIONS + 1));
+    }
+
+    /**
+     * The balances as a snapshot with the given watermark would hold them.
+     */
+    private static HashMap<PlayerBalanceId, Account> openingAccounts(JdbcTemplate jdbcTemplate, int watermark) {
+        var currency = new WalletProperties().getDefaultCurrency();
+        var accounts = new HashMap<PlayerBalanceId, Account>(PLAYERS * 2);
+        for (int i = 0; i < PLAYERS; i++) {
+            accounts.put(new PlayerBalanceId(FIRST_ID + i, currency), new Account(100_000, 0));
+        }
+        jdbcTemplate.query("select player_id, max(transaction_id), max(balance_after) from transactions "
+                        + "where transaction_id between ? and ? group by player_id",
+                row -> {
+                    accounts.put(new PlayerBalanceId(row.getInt(1), currency), new Account(Money.toMinorUnits(row.getBigDecimal(3)), row.getInt(2)));
+                },
+                FIRST_ID, watermark);
+        return accounts;
+    }
+}
@@ -0,0 +1,276 @@
+package com.casino.backend.engine;
+
+import com.casino.backend.cache.IdempotencyCache;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.Player;
+import com.casino.backend.entity.Transaction;
+import com.casino.backend.enums.ConcurrencyMode;
+import com.casino.backend.enums.LedgerMode;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.exception.InsufficientBalanceException;
+import com.casino.backend.exception.InvalidTransactionException;
+import com.casino.backend.ledger.TransactionLedger;
+import com.casino.backend.repository.PlayerBalanceRepository;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.repository.TransactionRepository;
+import com.casino.backend.request.BatchUpdateBalanceRequest;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.response.UpdateBalanceResponse;
+import com.casino.backend.service.PlayerService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs the wallet in engine mode on the real H2 database.
+ */
+@SpringBootTest(properties = {
+        "casino.wallet.concurrency-mode=engine",
+        "casino.wallet.engine.partitions=4",
+        "casino.wallet.ledger.mode=journal",
+        "casino.wallet.ledger.journal-directory=target/test-journal/${random.uuid}",
+        "casino.wallet.engine.snapshot-directory=target/test-snapshots/${random.uuid}"
+})
+public class WalletEngineTest {
+
+    private static final int THREADS = 16;
+    private static final int UPDATES_PER_THREAD = 50;
+
+    @Autowired
+    private PlayerService playerService;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Autowired
+    private PlayerBalanceRepository playerBalanceRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private TransactionLedger transactionLedger;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private WalletEngine walletEngine;
+
+    @Autowired
+    private WalletProperties walletProperties;
+
+    @Test
+    void testDrainedLedgerMatchesBalanceInMemory() throws Exception {
+        // Given
+        var openingBalance = new BigDecimal("100.00");
+        var player = playerRepository.save(Player.builder().username("engine_player").balance(openingBalance).build());
+        var appliedUpdates = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                var random = ThreadLocalRandom.current();
+                for (int j = 0; j < UPDATES_PER_THREAD; j++) {
+                    var request = UpdateBalanceRequest.builder()
+                            .amount(BigDecimal.valueOf(random.nextInt(1, 2000), 2))
+                            .transactionType(random.nextInt(3) == 0 ? TransactionType.WIN : TransactionType.WAGER)
+                            .build();
+                    try {
+                        playerService.updateBalance(player.getPlayerId(), request);
+                        appliedUpdates.incrementAndGet();
+                    } catch (InsufficientBalanceException e) {
+                        // Rejected wagers leave no ledger row
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Then
+        var ledger = awaitLedgerRows(player.getPlayerId(), appliedUpdates.get());
+        var ledgerBalance = ledger.stream()
+                .map(transaction -> TransactionType.WAGER.equals(transaction.getTransactionType())
+                        ? transaction.getAmount().negate()
+                        : transaction.getAmount())
+                .reduce(openingBalance, BigDecimal::add);
+        var lastTransactionId = ledger.stream().mapToInt(Transaction::getTransactionId).max().orElseThrow();
+        var stored = awaitStoredTransaction(player.getPlayerId(), lastTransactionId);
+
+        assertEquals(appliedUpdates.get(), ledger.size());
+        assertEquals(0, ledgerBalance.compareTo(playerService.getBalance(player.getPlayerId()).getBalance()));
+        assertEquals(0, ledgerBalance.compareTo(stored.getBalance()));
+    }
+
+    @Test
+    void testConcurrentRetriesWithSameIdempotencyKeyAreAppliedOnce() throws Exception {
+        // Given
+        var player = playerRepository.save(Player.builder().username("engine_idempotent_player").balance(new BigDecimal("100.00")).build());
+        var other = playerRepository.save(Player.builder().username("engine_other_player").balance(new BigDecimal("100.00")).build());
+        var request = new UpdateBalanceRequest(new BigDecimal("10.00"), TransactionType.WAGER, "engine-wager-1");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // When
+        List<Future<UpdateBalanceResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> playerService.updateBalance(player.getPlayerId(), request)));
+        }
+        var responses = new ArrayList<UpdateBalanceResponse>();
+        for (var future : futures) {
+            responses.add(future.get());
+        }
+        executor.shutdown();
+
+        // Then
+        assertEquals(1, responses.stream().distinct().count());
+        assertEquals(0, new BigDecimal("90.00").compareTo(playerService.getBalance(player.getPlayerId()).getBalance()));
+        assertThrows(InvalidTransactionException.class, () -> playerService.updateBalance(other.getPlayerId(), request));
+        assertEquals(0, new BigDecimal("100.00").compareTo(playerService.getBalance(other.getPlayerId()).getBalance()));
+    }
+
+    @Test
+    void testBatchItemsAreAppliedOnTheirPartitions() {
+        // Given
+        var first = playerRepository.save(Player.builder().username("engine_batch_player_1").balance(new BigDecimal("50.00")).build());
+        var second = playerRepository.save(Player.builder().username("engine_batch_player_2").balance(new BigDecimal("50.00")).build());
+
+        // When
+        var results = playerService.updateBalances(List.of(
+                new BatchUpdateBalanceRequest(first.getPlayerId(), new BigDecimal("20.00"), TransactionType.WAGER),
+                new BatchUpdateBalanceRequest(second.getPlayerId(), new BigDecimal("70.00"), TransactionType.WAGER),
+                new BatchUpdateBalanceRequest(second.getPlayerId(), new BigDecimal("5.00"), TransactionType.WIN),
+                new BatchUpdateBalanceRequest(999_999, new BigDecimal("5.00"), TransactionType.WIN)));
+
+        // Then
+        assertEquals(HttpStatus.OK.value(), results.get(0).getStatus());
+        assertEquals(0, new BigDecimal("30.00").compareTo(results.get(0).getBalance()));
+        assertEquals(HttpStatus.I_AM_A_TEAPOT.value(), results.get(1).getStatus());
+        assertEquals(0, new BigDecimal("55.00").compareTo(results.get(2).getBalance()));
+        assertEquals(HttpStatus.BAD_REQUEST.value(), results.get(3).getStatus());
+        assertEquals(0, new BigDecimal("55.00").compareTo(playerService.getBalance(second.getPlayerId()).getBalance()));
+    }
+
+    @Test
+    void testRestartLoadsSnapshotAndReplaysLaterTransactions(@TempDir Path snapshotDirectory) throws Exception {
+        // Given a snapshot taken by an earlier run, after which the player was updated again
+        var player = playerRepository.save(Player.builder().username("engine_snapshot_player").balance(new BigDecimal("100.00")).build());
+        playerService.updateBalance(player.getPlayerId(), new UpdateBalanceRequest(new BigDecimal("25.00"), TransactionType.WIN));
+        awaitLedgerRows(player.getPlayerId(), 1);
+        var earlierRun = restartedEngine(snapshotDirectory);
+        earlierRun.stop();
+        playerService.updateBalance(player.getPlayerId(), new UpdateBalanceRequest(new BigDecimal("40.00"), TransactionType.WAGER));
+        var last = playerService.updateBalance(player.getPlayerId(), new UpdateBalanceRequest(new BigDecimal("5.50"), TransactionType.WIN));
+        awaitLedgerRows(player.getPlayerId(), 3);
+
+        // When
+        var restarted = restartedEngine(snapshotDirectory);
+        restarted.stop();
+
+        // Then
+        assertEquals(0, new BigDecimal("90.50").compareTo(last.getBalance()));
+        assertEquals(0, last.getBalance().compareTo(restarted.balance(player.getPlayerId(), "ZAR")));
+    }
+
+    @Test
+    void testBalancesInOtherCurrenciesAreKeptApart(@TempDir Path snapshotDirectory) throws Exception {
+        // Given
+        var player = playerRepository.save(Player.builder().username("engine_currency_player").balance(new BigDecimal("100.00")).build());
+
+        // When
+        playerService.updateBalance(player.getPlayerId(), new UpdateBalanceRequest(new BigDecimal("30.00"), TransactionType.WIN, null, "USD"));
+        var wager = playerService.updateBalance(player.getPlayerId(), new UpdateBalanceRequest(new BigDecimal("12.50"), TransactionType.WAGER, null, "USD"));
+        awaitLedgerRows(player.getPlayerId(), 2);
+        var restarted = restartedEngine(snapshotDirectory);
+        restarted.stop();
+
+        // Then
+        assertEquals("USD", wager.getCurrency());
+        assertEquals(0, new BigDecimal("17.50").compareTo(wager.getBalance()));
+        assertThrows(InsufficientBalanceException.class, () -> playerService.updateBalance(player.getPlayerId(),
+                new UpdateBalanceRequest(new BigDecimal("20.00"), TransactionType.WAGER, null, "USD")));
+        var balances = playerService.getBalance(player.getPlayerId()).getBalances();
+        assertEquals(0, new BigDecimal("100.00").compareTo(balances.get("ZAR")));
+        assertEquals(0, new BigDecimal("17.50").compareTo(balances.get("USD")));
+        assertEquals(0, BigDecimal.ZERO.compareTo(balances.get("EUR")));
+        assertEquals(0, new BigDecimal("17.50").compareTo(restarted.balance(player.getPlayerId(), "USD")));
+    }
+
+    @Test
+    void testIdlePartitionsDoNotHoldBackTheSnapshotWatermark() throws Exception {
+        // Given one update, so the other three partitions have journaled nothing since startup
+        var player = playerRepository.save(Player.builder().username("engine_idle_partitions_player").balance(new BigDecimal("100.00")).build());
+        var update = playerService.updateBalance(player.getPlayerId(), new UpdateBalanceRequest(new BigDecimal("15.00"), TransactionType.WIN));
+
+        // When
+        walletEngine.snapshot();
+
+        // Then the watermark covers the update, so a restart replays nothing before it
+        var snapshot = new BalanceSnapshotStore(walletProperties.getEngine().getSnapshotDirectory()).loadLatest().orElseThrow();
+        assertEquals(update.getTransactionId(), snapshot.watermark());
+    }
+
+    /**
+     * A second engine over the same database, which only loads the balances, so it never journals anything itself.
+     */
+    private WalletEngine restartedEngine(Path snapshotDirectory) throws IOException {
+        var properties = new WalletProperties();
+        properties.setConcurrencyMode(ConcurrencyMode.ENGINE);
+        properties.getLedger().setMode(LedgerMode.JOURNAL);
+        properties.getEngine().setPartitions(1);
+        properties.getEngine().setSnapshotDirectory(snapshotDirectory);
+        var engine = new WalletEngine(properties, playerRepository, playerBalanceRepository, transactionLedger, idempotencyCache, jdbcTemplate);
+        engine.start();
+        return engine;
+    }
+
+    private List<Transaction> awaitLedgerRows(Integer playerId, int expectedRows) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            var ledger = transactionRepository.findAll().stream()
+                    .filter(transaction -> transaction.getPlayer().getPlayerId().equals(playerId))
+                    .toList();
+            if (ledger.size() >= expectedRows || System.nanoTime() > deadline) {
+                return ledger;
+            }
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+
+    private Player awaitStoredTransaction(Integer playerId, int transactionId) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            var stored = playerRepository.findById(playerId).orElseThrow();
+            if (Integer.valueOf(transactionId).equals(stored.getLastTransactionId()) || System.nanoTime() > deadline) {
+                return stored;
+            }
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+}
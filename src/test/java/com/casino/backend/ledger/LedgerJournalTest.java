@@ -0,0 +1,127 @@
+package com.casino.backend.ledger;
+
+import com.casino.backend.enums.TransactionType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LedgerJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRecoverReturnsAppendedEntriesAndAborts() throws IOException {
+        // Given
+        var journal = startedJournal(1024 * 1024);
+        var first = entry(1, null);
+        var second = entry(2, "round-7-bet-3");
+        journal.append(List.of(first));
+        journal.append(List.of(second));
+        journal.appendAbort(2);
+        journal.close();
+
+        // When
+        var recovered = new LedgerJournal(directory, 1024 * 1024).recover();
+
+        // Then
+        assertEquals(List.of(first, second), recovered.entries());
+        assertEquals(Set.of(2), recovered.aborted());
+    }
+
+    @Test
+    void testConcurrentAppendsShareSyncs() throws Exception {
+        // Given
+        var journal = startedJournal(1024 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        // When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 1; i <= 1600; i++) {
+            var transactionId = i;
+            futures.add(executor.submit(() -> journal.append(List.of(entry(transactionId, null)))));
+        }
+        for (var future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        journal.close();
+
+        // Then
+        assertEquals(1600, journal.appends());
+        assertTrue(journal.syncs() <= journal.appends());
+        assertEquals(1600, new LedgerJournal(directory, 1024 * 1024).recover().entries().size());
+    }
+
+    @Test
+    void testResolvedSegmentsAreDeleted() throws IOException {
+        // Given a segment size small enough that every sync starts a new segment
+        var journal = startedJournal(1);
+        var firstSegment = journal.append(List.of(entry(1, null)));
+        var secondSegment = journal.append(List.of(entry(2, null)));
+        journal.append(List.of(entry(3, null)));
+
+        // When the second segment is resolved first, it must wait for the first one
+        journal.resolve(secondSegment, 1);
+        var segmentsBefore = segmentFiles();
+        journal.resolve(firstSegment, 1);
+        var segmentsAfter = segmentFiles();
+        journal.close();
+
+        // Then
+        assertEquals(4, segmentsBefore);
+        assertEquals(2, segmentsAfter);
+        assertEquals(List.of(entry(3, null)), new LedgerJournal(directory, 1).recover().entries());
+    }
+
+    @Test
+    void testTornTailIsIgnored() throws IOException {
+        // Given
+        var journal = startedJournal(1024 * 1024);
+        journal.append(List.of(entry(1, null)));
+        journal.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            var segment = files.findFirst().orElseThrow();
+            Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        // When
+        var recovered = new LedgerJournal(directory, 1024 * 1024).recover();
+
+        // Then
+        assertEquals(List.of(entry(1, null)), recovered.entries());
+    }
+
+    private LedgerJournal startedJournal(long segmentSize) throws IOException {
+        var journal = new LedgerJournal(directory, segmentSize);
+        journal.start(journal.recover());
+        return journal;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static LedgerEntry entry(int transactionId, String idempotencyKey) {
+        return new LedgerEntry(transactionId, 1, TransactionType.WAGER, new BigDecimal("12.50"), new BigDecimal("987.50"),
+                LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123_456_789), idempotencyKey, "USD");
+    }
+}
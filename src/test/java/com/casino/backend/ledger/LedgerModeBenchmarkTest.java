@@ -0,0 +1,115 @@
+package com.casino.backend.ledger;
+
+import com.casino.backend.CasinoBackendSystemApplication;
+import com.casino.backend.entity.Player;
+import com.casino.backend.enums.LedgerMode;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.service.PlayerService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the direct and journal ledger modes, and the wallet engine on top of the journal, under the same concurrent
+ * load and prints throughput and latency percentiles. Run with {@code mvn test -Pbench}.
+ */
+@Tag("benchmark")
+public class LedgerModeBenchmarkTest {
+
+    private static final int PLAYERS = 64;
+    private static final int THREADS = 32;
+    private static final int WARMUP_UPDATES_PER_THREAD = 200;
+    private static final int UPDATES_PER_THREAD = 1000;
+
+    @Test
+    void compareLedgerModes() throws Exception {
+        var results = new ArrayList<String>();
+        for (var mode : LedgerMode.values()) {
+            results.add(run(mode.name().toLowerCase(Locale.ROOT), "casino.wallet.ledger.mode=" + mode.name().toLowerCase(Locale.ROOT)));
+        }
+        results.add(run("engine", "casino.wallet.ledger.mode=journal", "casino.wallet.concurrency-mode=engine"));
+        System.out.println();
+        System.out.printf("%-8s %12s %10s %10s %10s%n", "mode", "updates/s", "p50 ms", "p99 ms", "max ms");
+        results.forEach(System.out::println);
+    }
+
+    private String run(String name, String... modeProperties) throws Exception {
+        try (var context = new SpringApplicationBuilder(CasinoBackendSystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:ledger_benchmark_" + name,
+                        "casino.wallet.ledger.journal-directory=target/benchmark-journal/" + System.nanoTime(),
+                        "casino.wallet.engine.snapshot-directory=target/benchmark-snapshots/" + System.nanoTime(),
+                        "logging.level.com.casino.backend=WARN",
+                        "logging.level.org.hibernate=WARN")
+                .properties(modeProperties)
+                .run()) {
+            var playerService = context.getBean(PlayerService.class);
+            var playerRepository = context.getBean(PlayerRepository.class);
+            var playerIds = new int[PLAYERS];
+            for (int i = 0; i < PLAYERS; i++) {
+                playerIds[i] = playerRepository.save(Player.builder()
+                        .username("bench_" + i)
+                        .balance(new BigDecimal("1000000.00"))
+                        .build()).getPlayerId();
+            }
+
+            runLoad(playerService, playerIds, WARMUP_UPDATES_PER_THREAD);
+            var start = System.nanoTime();
+            var latencies = runLoad(playerService, playerIds, UPDATES_PER_THREAD);
+            var elapsedNanos = System.nanoTime() - start;
+
+            Arrays.sort(latencies);
+            return String.format("%-8s %12.0f %10.3f %10.3f %10.3f", name,
+                    latencies.length / (elapsedNanos / 1e9),
+                    percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+        }
+    }
+
+    private static long[] runLoad(PlayerService playerService, int[] playerIds, int updatesPerThread) throws Exception {
+        var latencies = new long[THREADS * updatesPerThread];
+        var start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            var offset = t * updatesPerThread;
+            futures.add(executor.submit(() -> {
+                start.await();
+                var random = ThreadLocalRandom.current();
+                for (int i = 0; i < updatesPerThread; i++) {
+                    var request = new UpdateBalanceRequest(BigDecimal.ONE, random.nextBoolean() ? TransactionType.WIN : TransactionType.WAGER);
+                    var begin = System.nanoTime();
+                    playerService.updateBalance(playerIds[random.nextInt(playerIds.length)], request);
+                    latencies[offset + i] = System.nanoTime() - begin;
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (var future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        return latencies;
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        return sortedNanos[(int) Math.ceil(percentile * sortedNanos.length) - 1] / 1e6;
+    }
+}
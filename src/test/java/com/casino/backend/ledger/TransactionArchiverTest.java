@@ -0,0 +1,158 @@
+package com.casino.backend.ledger;
+
+import com.casino.backend.config.HistoryProperties;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.Player;
+import com.casino.backend.entity.Transaction;
+import com.casino.backend.entity.TransactionRollupId;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.exception.InvalidDateRangeException;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.repository.TransactionRepository;
+import com.casino.backend.repository.TransactionRollupRepository;
+import com.casino.backend.response.Last10TransactionResponse;
+import com.casino.backend.service.PlayerService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Archives old days of an H2 database of its own into a temporary directory.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:transaction_archiver_test")
+public class TransactionArchiverTest {
+
+    @Autowired
+    private TransactionArchiver transactionArchiver;
+
+    @Autowired
+    private PlayerService playerService;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private TransactionRollupRepository transactionRollupRepository;
+
+    @Autowired
+    private HistoryProperties historyProperties;
+
+    @Autowired
+    private WalletProperties walletProperties;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @TempDir
+    private Path archiveDirectory;
+
+    private Path configuredDirectory;
+
+    @BeforeEach
+    void useTemporaryDirectory() {
+        configuredDirectory = historyProperties.getArchive().getDirectory();
+        historyProperties.getArchive().setDirectory(archiveDirectory);
+    }
+
+    @AfterEach
+    void restoreDirectory() {
+        historyProperties.getArchive().setDirectory(configuredDirectory);
+    }
+
+    @Test
+    void testOldDayIsRolledUpAndArchivedExceptTheLatestTransactions() throws Exception {
+        // Given 15 transactions on one old day, a bonus grant followed by alternating wins and wagers
+        var player = playerRepository.save(Player.builder().username("archived_player").balance(new BigDecimal("100.00")).build());
+        var day = LocalDate.of(2019, 1, 1);
+        var transactions = new ArrayList<Transaction>();
+        for (int i = 0; i < 15; i++) {
+            transactions.add(Transaction.builder()
+                    .player(player)
+                    .amount(BigDecimal.valueOf(i + 1))
+                    .transactionType(i == 0 ? TransactionType.BONUS_GRANT : i % 2 == 0 ? TransactionType.WAGER : TransactionType.WIN)
+                    .timestamp(day.atTime(12, i))
+                    .build());
+        }
+        transactionRepository.saveAll(transactions);
+        var activityBefore = playerService.getDailyActivity(player.getPlayerId(), day, day.plusDays(1));
+        var last10Before = transactionIds(transactionRepository.findHistory(player.getPlayerId(), PageRequest.ofSize(10)));
+
+        // When
+        var archived = transactionArchiver.archiveBefore(LocalDate.of(2019, 1, 4));
+        var archivedAgain = transactionArchiver.archiveBefore(LocalDate.of(2019, 1, 4));
+
+        // Then the 5 oldest are archived, the 10 newest stay in the table
+        assertEquals(5, archived);
+        assertEquals(0, archivedAgain);
+        var oldest = transactions.subList(0, 5);
+        var last10After = transactionIds(transactionRepository.findHistory(player.getPlayerId(), PageRequest.ofSize(20)));
+        assertEquals(last10Before, last10After);
+
+        var rollup = transactionRollupRepository.findById(
+                new TransactionRollupId(player.getPlayerId(), day, walletProperties.getDefaultCurrency())).orElseThrow();
+        assertEquals(0, new BigDecimal("8").compareTo(rollup.getWagered()));
+        assertEquals(0, new BigDecimal("6").compareTo(rollup.getWon()));
+        assertEquals(0, BigDecimal.ONE.compareTo(rollup.getGranted()));
+        assertEquals(5L, rollup.getTransactionCount());
+
+        var file = archiveDirectory.resolve("2019-01").resolve("transactions-2019-01-01-" + oldest.get(0).getTransactionId() + ".ndjson.gz");
+        // Read as trees, the transaction type only deserializes the types a request may send
+        var rows = new ArrayList<JsonNode>();
+        try (var reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+                rows.add(objectMapper.readTree(line));
+            }
+        }
+        assertEquals(oldest.stream().map(Transaction::getTransactionId).toList(),
+                rows.stream().map(row -> row.get("transactionId").asInt()).toList());
+        assertEquals("BONUS_GRANT", rows.get(0).get("transactionType").asText());
+        assertEquals(day.atTime(12, 0), objectMapper.treeToValue(rows.get(0).get("timestamp"), LocalDateTime.class));
+
+        // And the activity adds the rollup to the rows left in the table
+        var activityAfter = playerService.getDailyActivity(player.getPlayerId(), day, day.plusDays(1));
+        assertEquals(1, activityAfter.getDays().size());
+        assertEquals(15L, activityAfter.getDays().get(0).getTransactions());
+        assertEquals(0, activityBefore.getDays().get(0).getWagered().compareTo(activityAfter.getDays().get(0).getWagered()));
+        assertEquals(0, activityBefore.getDays().get(0).getWon().compareTo(activityAfter.getDays().get(0).getWon()));
+        assertEquals(0, BigDecimal.ONE.compareTo(activityAfter.getDays().get(0).getGranted()));
+        assertEquals(activityBefore.getDays().get(0).getTransactions(), activityAfter.getDays().get(0).getTransactions());
+    }
+
+    @Test
+    void testActivityRejectsAnEmptyDateRange() {
+        // Given
+        var player = playerRepository.save(Player.builder().username("activity_range_player").balance(new BigDecimal("100.00")).build());
+        var day = LocalDate.of(2019, 2, 1);
+
+        // When / Then
+        assertThrows(InvalidDateRangeException.class, () -> playerService.getDailyActivity(player.getPlayerId(), day, day));
+    }
+
+    private static List<Integer> transactionIds(List<Last10TransactionResponse> transactions) {
+        return transactions.stream().map(Last10TransactionResponse::getTransactionId).toList();
+    }
+}
@@ -0,0 +1,298 @@
+package com.casino.backend.ledger;
+
+import com.casino.backend.cache.IdempotencyCache;
+import com.casino.backend.cache.RecentTransactionsCache;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.Player;
+import com.casino.backend.entity.Transaction;
+import com.casino.backend.enums.ConcurrencyMode;
+import com.casino.backend.enums.LedgerMode;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.exception.InsufficientBalanceException;
+import com.casino.backend.repository.PlayerBalanceRepository;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.repository.TransactionRepository;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.service.PlayerService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+/**
+ * Runs the wallet in journal ledger mode on the real H2 database.
+ */
+@SpringBootTest(properties = {
+        "casino.wallet.ledger.mode=journal",
+        "casino.wallet.ledger.journal-directory=target/test-journal/${random.uuid}"
+})
+public class TransactionLedgerTest {
+
+    private static final int THREADS = 16;
+    private static final int UPDATES_PER_THREAD = 50;
+
+    @Autowired
+    private PlayerService playerService;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Autowired
+    private PlayerBalanceRepository playerBalanceRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private RecentTransactionsCache recentTransactionsCache;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Test
+    void testDrainedLedgerMatchesFinalBalance() throws Exception {
+        // Given
+        var openingBalance = new BigDecimal("100.00");
+        var player = playerRepository.save(Player.builder().username("journal_player").balance(openingBalance).build());
+        var appliedUpdates = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                var random = ThreadLocalRandom.current();
+                for (int j = 0; j < UPDATES_PER_THREAD; j++) {
+                    var request = UpdateBalanceRequest.builder()
+                            .amount(BigDecimal.valueOf(random.nextInt(1, 2000), 2))
+                            .transactionType(random.nextInt(3) == 0 ? TransactionType.WIN : TransactionType.WAGER)
+                            .build();
+                    try {
+                        playerService.updateBalance(player.getPlayerId(), request);
+                        appliedUpdates.incrementAndGet();
+                    } catch (InsufficientBalanceException e) {
+                        // Rejected wagers leave no ledger row
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Then
+        var ledger = awaitLedgerRows(player.getPlayerId(), appliedUpdates.get());
+        var ledgerBalance = ledger.stream()
+                .map(transaction -> TransactionType.WAGER.equals(transaction.getTransactionType())
+                        ? transaction.getAmount().negate()
+                        : transaction.getAmount())
+                .reduce(openingBalance, BigDecimal::add);
+        var stored = playerRepository.findById(player.getPlayerId()).orElseThrow();
+
+        assertEquals(appliedUpdates.get(), ledger.size());
+        assertEquals(0, ledgerBalance.compareTo(stored.getBalance()));
+        assertEquals(ledger.stream().mapToInt(transaction -> transaction.getTransactionId()).max().orElseThrow(), stored.getLastTransactionId());
+    }
+
+    @Test
+    void testRetryMissingFromTheIdempotencyCacheIsAppliedOnce() throws Exception {
+        // Given a keyed wager, whose outcome the idempotency cache forgets before and after its row is drained
+        var player = playerRepository.save(Player.builder().username("journal_retry_player").balance(new BigDecimal("100.00")).build());
+        var request = UpdateBalanceRequest.builder()
+                .amount(new BigDecimal("10.00"))
+                .transactionType(TransactionType.WAGER)
+                .idempotencyKey("journal-retry-" + player.getPlayerId())
+                .build();
+        var first = playerService.updateBalance(player.getPlayerId(), request);
+
+        // When
+        idempotencyCache.invalidateAll();
+        var retriedBeforeDrain = playerService.updateBalance(player.getPlayerId(), request);
+        awaitLedgerRows(player.getPlayerId(), 1);
+        idempotencyCache.invalidateAll();
+        var retriedAfterDrain = playerService.updateBalance(player.getPlayerId(), request);
+
+        // Then
+        assertEquals(first.getTransactionId(), retriedBeforeDrain.getTransactionId());
+        assertEquals(first.getTransactionId(), retriedAfterDrain.getTransactionId());
+        assertEquals(0, new BigDecimal("90.00").compareTo(retriedAfterDrain.getBalance()));
+        assertEquals(0, new BigDecimal("90.00").compareTo(playerRepository.findById(player.getPlayerId()).orElseThrow().getBalance()));
+        assertEquals(1, awaitLedgerRows(player.getPlayerId(), 1).size());
+    }
+
+    @Test
+    void testReplayInsertsOnlyCommittedMissingEntries(@TempDir Path journalDirectory) throws Exception {
+        // Given a journal left behind by a crash: entry 1_000_001 was drained, 1_000_002 was committed but not drained,
+        // 1_000_003 was aborted and 1_000_004 was synced but its balance change never committed
+        var player = playerRepository.save(Player.builder().username("replay_player").balance(new BigDecimal("70.00")).build());
+        jdbcTemplate.update("update players set last_transaction_id = 1000003 where player_id = ?", player.getPlayerId());
+        var journal = new LedgerJournal(journalDirectory, 1024 * 1024);
+        journal.start(journal.recover());
+        journal.append(List.of(entry(1_000_001, player.getPlayerId(), "90.00")));
+        journal.append(List.of(entry(1_000_002, player.getPlayerId(), "80.00")));
+        journal.append(List.of(entry(1_000_003, player.getPlayerId(), "70.00")));
+        journal.appendAbort(1_000_003);
+        journal.append(List.of(entry(1_000_004, player.getPlayerId(), "60.00")));
+        journal.close();
+        jdbcTemplate.update("insert into transactions (transaction_id, player_id, amount, transaction_type, timestamp, balance_after) "
+                + "values (1000001, ?, 10.00, 'WAGER', current_timestamp, 90.00)", player.getPlayerId());
+
+        var properties = new WalletProperties();
+        properties.getLedger().setMode(LedgerMode.JOURNAL);
+        properties.getLedger().setJournalDirectory(journalDirectory);
+        var ledger = new TransactionLedger(properties, transactionRepository, playerRepository, playerBalanceRepository,
+                jdbcTemplate, namedParameterJdbcTemplate, transactionTemplate, entityManager, recentTransactionsCache);
+
+        // When
+        ledger.start();
+        ledger.stop();
+
+        // Then
+        assertTrue(transactionRepository.existsById(1_000_001));
+        assertTrue(transactionRepository.existsById(1_000_002));
+        assertFalse(transactionRepository.existsById(1_000_003));
+        assertFalse(transactionRepository.existsById(1_000_004));
+        assertEquals(new BigDecimal("80.00"), transactionRepository.findById(1_000_002).orElseThrow().getBalanceAfter());
+    }
+
+    @Test
+    void testReplayAppliesEveryEvent(@TempDir Path journalDirectory) throws Exception {
+        // Given engine events left behind by a crash: event 2_000_001 was drained, 2_000_002 was inserted but its
+        // balance was not written, and 2_000_003 was journaled only
+        var player = playerRepository.save(Player.builder().username("event_replay_player").balance(new BigDecimal("90.00")).build());
+        jdbcTemplate.update("update players set last_transaction_id = 2000001 where player_id = ?", player.getPlayerId());
+        var journal = new LedgerJournal(journalDirectory, 1024 * 1024);
+        journal.start(journal.recover());
+        journal.appendEvents(List.of(entry(2_000_001, player.getPlayerId(), "90.00"), entry(2_000_002, player.getPlayerId(), "80.00")));
+        journal.appendEvents(List.of(entry(2_000_003, player.getPlayerId(), "70.00")));
+        journal.close();
+        jdbcTemplate.update("insert into transactions (transaction_id, player_id, amount, transaction_type, timestamp, balance_after) "
+                + "values (2000001, ?, 10.00, 'WAGER', current_timestamp, 90.00), (2000002, ?, 10.00, 'WAGER', current_timestamp, 80.00)",
+                player.getPlayerId(), player.getPlayerId());
+
+        var properties = new WalletProperties();
+        properties.setConcurrencyMode(ConcurrencyMode.ENGINE);
+        properties.getLedger().setMode(LedgerMode.JOURNAL);
+        properties.getLedger().setJournalDirectory(journalDirectory);
+        var ledger = new TransactionLedger(properties, transactionRepository, playerRepository, playerBalanceRepository,
+                jdbcTemplate, namedParameterJdbcTemplate, transactionTemplate, entityManager, recentTransactionsCache);
+
+        // When
+        ledger.start();
+        ledger.stop();
+
+        // Then
+        assertTrue(transactionRepository.existsById(2_000_003));
+        var stored = playerRepository.findById(player.getPlayerId()).orElseThrow();
+        assertEquals(0, new BigDecimal("70.00").compareTo(stored.getBalance()));
+        assertEquals(2_000_003, stored.getLastTransactionId());
+    }
+
+    @Test
+    void testDrainingResumesOnceTheDatabaseIsBack(@TempDir Path journalDirectory) throws Exception {
+        // Given a ledger whose first insert finds the database down
+        var player = playerRepository.save(Player.builder().username("drain_retry_player").balance(new BigDecimal("100.00")).build());
+        var failingJdbcTemplate = spy(jdbcTemplate);
+        doThrow(new CannotGetJdbcConnectionException("The database is down"))
+                .doCallRealMethod()
+                .when(failingJdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+        var properties = new WalletProperties();
+        properties.getLedger().setMode(LedgerMode.JOURNAL);
+        properties.getLedger().setJournalDirectory(journalDirectory);
+        var ledger = new TransactionLedger(properties, transactionRepository, playerRepository, playerBalanceRepository,
+                failingJdbcTemplate, namedParameterJdbcTemplate, transactionTemplate, entityManager, recentTransactionsCache);
+        ledger.start();
+
+        // When
+        Transaction first;
+        Transaction second;
+        try {
+            first = transactionTemplate.execute(status -> ledger.record(transaction(player, "10.00", "90.00")));
+            awaitStored(first.getTransactionId());
+            second = transactionTemplate.execute(status -> ledger.record(transaction(player, "5.00", "95.00")));
+            awaitStored(second.getTransactionId());
+        } finally {
+            ledger.stop();
+        }
+
+        // Then the failed batch was retried, and the ledger still accepts and drains rows
+        assertTrue(transactionRepository.existsById(first.getTransactionId()));
+        assertTrue(transactionRepository.existsById(second.getTransactionId()));
+    }
+
+    private void awaitStored(int transactionId) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!transactionRepository.existsById(transactionId) && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+
+    private static Transaction transaction(Player player, String amount, String balanceAfter) {
+        return Transaction.builder()
+                .player(player)
+                .amount(new BigDecimal(amount))
+                .transactionType(TransactionType.WAGER)
+                .timestamp(LocalDateTime.now())
+                .balanceAfter(new BigDecimal(balanceAfter))
+                .build();
+    }
+
+    private List<Transaction> awaitLedgerRows(Integer playerId, int expectedRows) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            var ledger = transactionRepository.findAll().stream()
+                    .filter(transaction -> transaction.getPlayer().getPlayerId().equals(playerId))
+                    .toList();
+            if (ledger.size() >= expectedRows || System.nanoTime() > deadline) {
+                return ledger;
+            }
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+
+    private static LedgerEntry entry(int transactionId, int playerId, String balanceAfter) {
+        return new LedgerEntry(transactionId, playerId, TransactionType.WAGER, new BigDecimal("10.00"),
+                new BigDecimal(balanceAfter), LocalDateTime.now(), null, null);
+    }
+}
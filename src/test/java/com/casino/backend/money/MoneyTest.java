@@ -0,0 +1,29 @@
+package com.casino.backend.money;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MoneyTest {
+
+    @Test
+    void testConversionsAreExact() {
+        assertEquals(1050, Money.toMinorUnits(new BigDecimal("10.50")));
+        assertEquals(1050, Money.toMinorUnits(new BigDecimal("10.500")));
+        assertEquals(1000, Money.toMinorUnits(BigDecimal.TEN));
+        assertEquals(-1, Money.toMinorUnits(new BigDecimal("-0.01")));
+        assertEquals(new BigDecimal("10.50"), Money.toDecimal(1050));
+        assertEquals(new BigDecimal("92233720368547758.07"), Money.toDecimal(Long.MAX_VALUE));
+    }
+
+    @Test
+    void testAmountsThatCannotBeRepresentedAreNotRounded() {
+        assertThrows(ArithmeticException.class, () -> Money.toMinorUnits(new BigDecimal("10.005")));
+        assertThrows(ArithmeticException.class, () -> Money.toMinorUnits(new BigDecimal("92233720368547758.08")));
+        assertThrows(ArithmeticException.class, () -> Money.add(Long.MAX_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Money.subtract(Long.MIN_VALUE, 1));
+    }
+}
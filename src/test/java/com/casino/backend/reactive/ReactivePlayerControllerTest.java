@@ -0,0 +1,147 @@
+package com.casino.backend.reactive;
+
+import com.casino.backend.customError.ErrorDetail;
+import com.casino.backend.response.BalanceResponse;
+import com.casino.backend.response.UpdateBalanceResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Runs the reactive profile on Netty and R2DBC and checks that the balance endpoints answer like the servlet ones.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+public class ReactivePlayerControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Test
+    void testWinAndWagerUpdateTheBalance() {
+        // Given
+        var playerId = createPlayer("reactive_player", "100.00");
+
+        // When
+        update(playerId, "{\"amount\":50,\"transactionType\":\"win\"}").expectStatus().isOk();
+        var response = update(playerId, "{\"amount\":30,\"transactionType\":\"WAGER\"}")
+                .expectStatus().isOk()
+                .expectBody(UpdateBalanceResponse.class).returnResult().getResponseBody();
+
+        // Then
+        assertNotNull(response.getTransactionId());
+        assertEquals(0, new BigDecimal("120.00").compareTo(response.getBalance()));
+        var balance = webTestClient.get().uri("/casino/player/{playerId}/balance", playerId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BalanceResponse.class).returnResult().getResponseBody();
+        assertEquals(0, new BigDecimal("120.00").compareTo(balance.getBalance()));
+    }
+
+    @Test
+    void testBalancesInOtherCurrenciesAreKeptApart() {
+        // Given
+        var playerId = createPlayer("reactive_currency_player", "100.00");
+
+        // When
+        update(playerId, "{\"amount\":40,\"transactionType\":\"WIN\",\"currency\":\"USD\"}").expectStatus().isOk();
+        var response = update(playerId, "{\"amount\":15,\"transactionType\":\"WAGER\",\"currency\":\"USD\"}")
+                .expectStatus().isOk()
+                .expectBody(UpdateBalanceResponse.class).returnResult().getResponseBody();
+        update(playerId, "{\"amount\":1,\"transactionType\":\"WAGER\",\"currency\":\"EUR\"}").expectStatus().isEqualTo(HttpStatus.I_AM_A_TEAPOT);
+        update(playerId, "{\"amount\":1,\"transactionType\":\"WIN\",\"currency\":\"GBP\"}").expectStatus().isBadRequest();
+
+        // Then
+        assertEquals("USD", response.getCurrency());
+        assertEquals(0, new BigDecimal("25.00").compareTo(response.getBalance()));
+        var balance = webTestClient.get().uri("/casino/player/{playerId}/balance", playerId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BalanceResponse.class).returnResult().getResponseBody();
+        assertEquals(0, new BigDecimal("100.00").compareTo(balance.getBalance()));
+        assertEquals(0, new BigDecimal("25.00").compareTo(balance.getBalances().get("USD")));
+        assertEquals(0, BigDecimal.ZERO.compareTo(balance.getBalances().get("EUR")));
+    }
+
+    @Test
+    void testWagerAboveBalanceIsRejected() {
+        // Given
+        var playerId = createPlayer("reactive_poor_player", "10.00");
+
+        // When
+        var error = update(playerId, "{\"amount\":20,\"transactionType\":\"WAGER\"}")
+                .expectStatus().isEqualTo(HttpStatus.I_AM_A_TEAPOT)
+                .expectBody(ErrorDetail.class).returnResult().getResponseBody();
+
+        // Then
+        assertEquals(HttpStatus.I_AM_A_TEAPOT.name(), error.getError());
+        assertEquals("/casino/player/" + playerId + "/balance/update", error.getPath());
+        assertEquals(0, new BigDecimal("10.00").compareTo(balanceOf(playerId)));
+    }
+
+    @Test
+    void testInvalidRequestsAreRejected() {
+        update(999_999, "{\"amount\":20,\"transactionType\":\"WIN\"}").expectStatus().isBadRequest();
+        update(1, "{\"amount\":0,\"transactionType\":\"WIN\"}").expectStatus().isBadRequest();
+        update(1, "{\"amount\":5,\"transactionType\":\"BONUS\"}").expectStatus().isBadRequest();
+        webTestClient.get().uri("/casino/player/{playerId}/balance", 999_999).exchange().expectStatus().isBadRequest();
+    }
+
+    @Test
+    void testRetryWithSameIdempotencyKeyIsAppliedOnce() {
+        // Given
+        var playerId = createPlayer("reactive_idempotent_player", "100.00");
+        var body = "{\"amount\":10,\"transactionType\":\"WAGER\",\"idempotencyKey\":\"reactive-wager-1\"}";
+
+        // When
+        var first = update(playerId, body).expectStatus().isOk()
+                .expectBody(UpdateBalanceResponse.class).returnResult().getResponseBody();
+        var retried = update(playerId, body).expectStatus().isOk()
+                .expectBody(UpdateBalanceResponse.class).returnResult().getResponseBody();
+
+        // Then
+        assertEquals(first, retried);
+        assertEquals(0, new BigDecimal("90.00").compareTo(balanceOf(playerId)));
+    }
+
+    private WebTestClient.ResponseSpec update(Integer playerId, String body) {
+        return webTestClient.post().uri("/casino/player/{playerId}/balance/update", playerId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange();
+    }
+
+    private Integer createPlayer(String username, String balance) {
+        return databaseClient.sql("select next value for player_seq")
+                .map(row -> row.get(0, Long.class).intValue())
+                .one()
+                .flatMap(playerId -> databaseClient.sql("insert into players (player_id, username, balance, version) values (:playerId, :username, :balance, 0)")
+                        .bind("playerId", playerId)
+                        .bind("username", username)
+                        .bind("balance", new BigDecimal(balance))
+                        .then()
+                        .thenReturn(playerId))
+                .block();
+    }
+
+    private BigDecimal balanceOf(Integer playerId) {
+        return databaseClient.sql("select balance from players where player_id = :playerId")
+                .bind("playerId", playerId)
+                .map(row -> row.get(0, BigDecimal.class))
+                .one()
+                .block();
+    }
+}
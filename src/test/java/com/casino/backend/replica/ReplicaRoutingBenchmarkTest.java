@@ -0,0 +1,185 @@
+package com.casino.backend.replica;
+
+import com.casino.backend.CasinoBackendSystemApplication;
+import com.casino.backend.entity.Player;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.service.PlayerService;
+import com.casino.backend.service.TransactionExportService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures balance updates while admin reports (transaction exports) run against the same database, and against a
+ * read replica. The replica is a second H2 database holding a copy of the primary. Both databases share the JVM, so
+ * the gain measured is the primary's connection pool and tables no longer being shared with the reports, not CPU.
+ * Run with {@code mvn test -Pbench}.
+ */
+@Tag("benchmark")
+public class ReplicaRoutingBenchmarkTest {
+
+    private static final int WRITE_PLAYERS = 64;
+    private static final int REPORT_PLAYERS = 16;
+    private static final int TRANSACTIONS_PER_REPORT_PLAYER = 20_000;
+    private static final int WRITE_THREADS = 16;
+    private static final int REPORT_THREADS = 4;
+    private static final int WARMUP_UPDATES_PER_THREAD = 200;
+    private static final int UPDATES_PER_THREAD = 2000;
+
+    @Test
+    void compareReportsOnPrimaryAndReplica() throws Exception {
+        var results = new ArrayList<String>();
+        results.add(run("writes only", 0, false));
+        results.add(run("reports on primary", REPORT_THREADS, false));
+        results.add(run("reports on replica", REPORT_THREADS, true));
+        System.out.println();
+        System.out.printf("%-20s %12s %10s %10s %12s%n", "load", "updates/s", "p50 ms", "p99 ms", "exports/s");
+        results.forEach(System.out::println);
+    }
+
+    private String run(String name, int reportThreads, boolean replica) throws Exception {
+        var database = "replica_benchmark_" + name.replace(' ', '_');
+        var application = new SpringApplicationBuilder(CasinoBackendSystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:" + database,
+                        "logging.level.com.casino.backend=WARN",
+                        "logging.level.org.hibernate=WARN");
+        if (replica) {
+            application.properties(
+                    "casino.datasource.replica.url=jdbc:h2:mem:" + database + "_replica;DB_CLOSE_DELAY=-1",
+                    "casino.datasource.replica.username=sa",
+                    "casino.datasource.replica.password=password");
+        }
+        try (var context = application.run()) {
+            var playerService = context.getBean(PlayerService.class);
+            var exportService = context.getBean(TransactionExportService.class);
+            var playerRepository = context.getBean(PlayerRepository.class);
+            var writePlayerIds = new int[WRITE_PLAYERS];
+            for (int i = 0; i < WRITE_PLAYERS; i++) {
+                writePlayerIds[i] = playerRepository.save(Player.builder()
+                        .username("bench_" + i)
+                        .balance(new BigDecimal("1000000.00"))
+                        .build()).getPlayerId();
+            }
+            var reportPlayerIds = seedReportPlayers(context.getBean(JdbcTemplate.class));
+            if (replica) {
+                copyToReplica(context);
+            }
+
+            runLoad(playerService, exportService, writePlayerIds, reportPlayerIds, WARMUP_UPDATES_PER_THREAD, 0, new LongAdder());
+            var exports = new LongAdder();
+            var start = System.nanoTime();
+            var latencies = runLoad(playerService, exportService, writePlayerIds, reportPlayerIds, UPDATES_PER_THREAD, reportThreads, exports);
+            var elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            return String.format("%-20s %12.0f %10.3f %10.3f %12.1f", name,
+                    latencies.length / elapsedSeconds,
+                    percentile(latencies, 0.50), percentile(latencies, 0.99), exports.sum() / elapsedSeconds);
+        }
+    }
+
+    /**
+     * Players with a long history, which only the reports read.
+     */
+    private static int[] seedReportPlayers(JdbcTemplate jdbcTemplate) {
+        var firstId = 10_000_000;
+        var playerIds = new int[REPORT_PLAYERS];
+        for (int i = 0; i < REPORT_PLAYERS; i++) {
+            playerIds[i] = firstId + i;
+            jdbcTemplate.update("insert into players (player_id, username, balance, version) values (?, ?, 1000.00, 0)",
+                    playerIds[i], "report_" + i);
+            jdbcTemplate.update("insert into transactions (transaction_id, player_id, amount, transaction_type, timestamp, balance_after) "
+                            + "select ? + x, ?, 1.00, 'WIN', dateadd('SECOND', -x, localtimestamp), 1000.00 from system_range(1, ?)",
+                    100_000_000L + (long) i * TRANSACTIONS_PER_REPORT_PLAYER, playerIds[i], TRANSACTIONS_PER_REPORT_PLAYER);
+        }
+        return playerIds;
+    }
+
+    /**
+     * Stands in for replication: the replica starts as a copy of the primary. The reports only read players that are
+     * not written during the run, so the copy does not go stale for them.
+     */
+    private static void copyToReplica(ConfigurableApplicationContext context) throws Exception {
+        var script = Files.createTempFile("replica-benchmark", ".sql");
+        try {
+            context.getBean(JdbcTemplate.class).execute("script to '" + script + "'");
+            new JdbcTemplate(context.getBean("replicaDataSource", DataSource.class)).execute("runscript from '" + script + "'");
+        } finally {
+            Files.deleteIfExists(script);
+        }
+    }
+
+    private static long[] runLoad(PlayerService playerService, TransactionExportService exportService, int[] writePlayerIds,
+                                  int[] reportPlayerIds, int updatesPerThread, int reportThreads, LongAdder exports) throws Exception {
+        var latencies = new long[WRITE_THREADS * updatesPerThread];
+        var start = new CountDownLatch(1);
+        var writing = new AtomicBoolean(true);
+        var executor = Executors.newFixedThreadPool(WRITE_THREADS + reportThreads);
+        List<Future<?>> writers = new ArrayList<>();
+        List<Future<?>> reporters = new ArrayList<>();
+        for (int t = 0; t < WRITE_THREADS; t++) {
+            var offset = t * updatesPerThread;
+            writers.add(executor.submit(() -> {
+                start.await();
+                var random = ThreadLocalRandom.current();
+                for (int i = 0; i < updatesPerThread; i++) {
+                    var request = new UpdateBalanceRequest(BigDecimal.ONE, random.nextBoolean() ? TransactionType.WIN : TransactionType.WAGER);
+                    var begin = System.nanoTime();
+                    playerService.updateBalance(writePlayerIds[random.nextInt(writePlayerIds.length)], request);
+                    latencies[offset + i] = System.nanoTime() - begin;
+                }
+                return null;
+            }));
+        }
+        for (int t = 0; t < reportThreads; t++) {
+            reporters.add(executor.submit(() -> {
+                start.await();
+                var random = ThreadLocalRandom.current();
+                while (writing.get()) {
+                    exportService.prepareExport(reportPlayerIds[random.nextInt(reportPlayerIds.length)], null, null)
+                            .writeTo(OutputStream.nullOutputStream());
+                    exports.increment();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (var writer : writers) {
+            writer.get();
+        }
+        writing.set(false);
+        for (var reporter : reporters) {
+            reporter.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        return latencies;
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        return sortedNanos[(int) Math.ceil(percentile * sortedNanos.length) - 1] / 1e6;
+    }
+}
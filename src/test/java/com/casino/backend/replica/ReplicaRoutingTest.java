@@ -0,0 +1,100 @@
+package com.casino.backend.replica;
+
+import com.casino.backend.concurrency.PlayerLockStripes;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.Player;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.service.PlayerService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Routes reads with a replica configured. Both pools point at the same in-memory database, so the reads succeed, and
+ * the connection counters tell which pool served them.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:replica_routing_test",
+        "casino.datasource.replica.url=jdbc:h2:mem:replica_routing_test",
+        "casino.datasource.replica.username=sa",
+        "casino.datasource.replica.password=password",
+        "casino.datasource.replica.max-lag=2s"
+})
+public class ReplicaRoutingTest {
+
+    @Autowired
+    private PlayerService playerService;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PlayerLockStripes playerLocks;
+
+    @Autowired
+    private WalletProperties walletProperties;
+
+    @Test
+    void testReadsGoToTheReplicaUntilThePlayerWrites() {
+        // Given
+        var player = playerRepository.save(Player.builder().username("replica_player").balance(new BigDecimal("100.00")).build());
+
+        // When
+        var replicaBefore = connections("replica");
+        playerService.getTransactionHistory(player.getPlayerId(), 10, null);
+        var replicaAfterRead = connections("replica");
+        playerService.updateBalance(player.getPlayerId(), new UpdateBalanceRequest(new BigDecimal("10.00"), TransactionType.WAGER));
+        var primaryBeforeReadAfterWrite = connections("primary");
+        var history = playerService.getTransactionHistory(player.getPlayerId(), 10, null);
+
+        // Then the read after the player's own write is served by the primary
+        assertEquals(replicaBefore + 1, replicaAfterRead);
+        assertEquals(replicaAfterRead, connections("replica"));
+        assertTrue(connections("primary") > primaryBeforeReadAfterWrite);
+        assertEquals(1, history.getTransactions().size());
+    }
+
+    @Test
+    void testReadAfterAnUpdateThatWaitedLongerThanTheLagGoesToThePrimary() throws Exception {
+        // Given an update that waits longer than the replica's lag for the player's lock
+        var player = playerRepository.save(Player.builder().username("replica_slow_player").balance(new BigDecimal("100.00")).build());
+        var executor = Executors.newSingleThreadExecutor();
+        Future<?> update;
+        var lock = playerLocks.lock(player.getPlayerId(), walletProperties.getDefaultCurrency());
+        try {
+            update = executor.submit(() -> playerService.updateBalance(player.getPlayerId(),
+                    new UpdateBalanceRequest(new BigDecimal("10.00"), TransactionType.WAGER)));
+            TimeUnit.SECONDS.sleep(3);
+        } finally {
+            lock.unlock();
+        }
+        update.get();
+        executor.shutdown();
+
+        // When
+        var replicaBefore = connections("replica");
+        var history = playerService.getTransactionHistory(player.getPlayerId(), 10, null);
+
+        // Then the lag is counted from the commit, so the primary serves the read
+        assertEquals(replicaBefore, connections("replica"));
+        assertEquals(1, history.getTransactions().size());
+    }
+
+    private double connections(String target) {
+        return meterRegistry.get("casino.datasource.connections").tag("target", target).counter().count();
+    }
+}
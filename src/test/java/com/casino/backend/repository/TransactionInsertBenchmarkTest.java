@@ -0,0 +1,83 @@
+package com.casino.backend.repository;
+
+import com.casino.backend.CasinoBackendSystemApplication;
+import com.casino.backend.entity.Player;
+import com.casino.backend.entity.Transaction;
+import com.casino.backend.enums.TransactionType;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how fast transaction rows are inserted through JPA with an IDENTITY ID (one round trip per row,
+ * no batching) and with the pooled sequence, without and with JDBC batching. Run with {@code mvn test -Pbench}.
+ */
+@Tag("benchmark")
+public class TransactionInsertBenchmarkTest {
+
+    private static final int WARMUP_ROWS = 20_000;
+    private static final int ROWS = 100_000;
+    private static final int ROWS_PER_TRANSACTION = 1000;
+
+    @Test
+    void compareIdGenerationStrategies() {
+        var results = List.of(
+                run("identity", "spring.jpa.mapping-resources=benchmark/identity-transaction-orm.xml"),
+                run("sequence", "spring.jpa.properties.hibernate.jdbc.batch_size=0"),
+                run("sequence+batch", "spring.jpa.properties.hibernate.jdbc.batch_size=50"));
+        System.out.println();
+        System.out.printf("%-16s %12s %14s%n", "strategy", "inserts/s", "prepared");
+        results.forEach(System.out::println);
+    }
+
+    private String run(String name, String property) {
+        try (var context = new SpringApplicationBuilder(CasinoBackendSystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:insert_benchmark_" + name.replace('+', '_'),
+                        "spring.jpa.properties.hibernate.generate_statistics=true",
+                        "logging.level.com.casino.backend=WARN",
+                        "logging.level.org.hibernate=WARN",
+                        property)
+                .run()) {
+            var transactionRepository = context.getBean(TransactionRepository.class);
+            var transactionTemplate = context.getBean(TransactionTemplate.class);
+            var statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+            var player = context.getBean(PlayerRepository.class)
+                    .save(Player.builder().username("insert_benchmark").balance(new BigDecimal("1000.00")).build());
+
+            insert(transactionRepository, transactionTemplate, player, WARMUP_ROWS);
+            statistics.clear();
+            var start = System.nanoTime();
+            insert(transactionRepository, transactionTemplate, player, ROWS);
+            var elapsedNanos = System.nanoTime() - start;
+
+            return String.format("%-16s %12.0f %14d", name, ROWS / (elapsedNanos / 1e9), statistics.getPrepareStatementCount());
+        }
+    }
+
+    private static void insert(TransactionRepository transactionRepository, TransactionTemplate transactionTemplate, Player player, int rows) {
+        for (int from = 0; from < rows; from += ROWS_PER_TRANSACTION) {
+            var transactions = new ArrayList<Transaction>(ROWS_PER_TRANSACTION);
+            for (int i = 0; i < ROWS_PER_TRANSACTION; i++) {
+                transactions.add(Transaction.builder()
+                        .player(player)
+                        .amount(BigDecimal.ONE)
+                        .transactionType(TransactionType.WIN)
+                        .timestamp(LocalDateTime.now())
+                        .balanceAfter(BigDecimal.ONE)
+                        .build());
+            }
+            transactionTemplate.executeWithoutResult(status -> transactionRepository.saveAll(transactions));
+        }
+    }
+}
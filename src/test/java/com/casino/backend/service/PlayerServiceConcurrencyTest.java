@@ -0,0 +1,267 @@
+package com.casino.backend.service;
+
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.entity.Player;
+import com.casino.backend.entity.PlayerBalance;
+import com.casino.backend.entity.PlayerBalanceId;
+import com.casino.backend.enums.ConcurrencyMode;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.exception.ConcurrentBalanceUpdateException;
+import com.casino.backend.exception.InsufficientBalanceException;
+import com.casino.backend.repository.PlayerBalanceRepository;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.repository.TransactionRepository;
+import com.casino.backend.request.BatchUpdateBalanceRequest;
+import com.casino.backend.request.GrantBonusRequest;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.response.UpdateBalanceResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs many concurrent wagers and wins against one player on the real H2 database
+ * and checks that the stored balance matches the ledger, in every concurrency mode.
+ */
+@SpringBootTest
+public class PlayerServiceConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int UPDATES_PER_THREAD = 50;
+
+    @Autowired
+    private PlayerService playerService;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Autowired
+    private PlayerBalanceRepository playerBalanceRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private WalletProperties walletProperties;
+
+    @Test
+    void testFinalBalanceEqualsLedgerSum() throws Exception {
+        hammerPlayerAndCompareWithLedger("atomic_player");
+    }
+
+    @Test
+    void testFinalBalanceEqualsLedgerSum_Optimistic() throws Exception {
+        walletProperties.setConcurrencyMode(ConcurrencyMode.OPTIMISTIC);
+        try {
+            hammerPlayerAndCompareWithLedger("optimistic_player");
+        } finally {
+            walletProperties.setConcurrencyMode(ConcurrencyMode.ATOMIC);
+        }
+    }
+
+    @Test
+    void testCurrencyBalanceEqualsLedgerSum() throws Exception {
+        hammerPlayerAndCompareWithLedger("atomic_currency_player", "USD");
+    }
+
+    @Test
+    void testCurrencyBalanceEqualsLedgerSum_Optimistic() throws Exception {
+        walletProperties.setConcurrencyMode(ConcurrencyMode.OPTIMISTIC);
+        try {
+            hammerPlayerAndCompareWithLedger("optimistic_currency_player", "EUR");
+        } finally {
+            walletProperties.setConcurrencyMode(ConcurrencyMode.ATOMIC);
+        }
+    }
+
+    @Test
+    void testBatchMovesBalancesInSeveralCurrencies() {
+        // Given
+        var player = playerRepository.save(Player.builder().username("batch_currency_player").balance(new BigDecimal("100.00")).build());
+        var win = new BatchUpdateBalanceRequest(player.getPlayerId(), new BigDecimal("40.00"), TransactionType.WIN);
+        win.setCurrency("USD");
+        var wager = new BatchUpdateBalanceRequest(player.getPlayerId(), new BigDecimal("15.00"), TransactionType.WAGER);
+        wager.setCurrency("USD");
+        var tooHigh = new BatchUpdateBalanceRequest(player.getPlayerId(), new BigDecimal("1.00"), TransactionType.WAGER);
+        tooHigh.setCurrency("EUR");
+
+        // When
+        var results = playerService.updateBalances(List.of(win, wager, tooHigh,
+                new BatchUpdateBalanceRequest(player.getPlayerId(), new BigDecimal("10.00"), TransactionType.WAGER)));
+
+        // Then
+        assertEquals(0, new BigDecimal("40.00").compareTo(results.get(0).getBalance()));
+        assertEquals("USD", results.get(1).getCurrency());
+        assertEquals(0, new BigDecimal("25.00").compareTo(results.get(1).getBalance()));
+        assertEquals(HttpStatus.I_AM_A_TEAPOT.value(), results.get(2).getStatus());
+        assertEquals(walletProperties.getDefaultCurrency(), results.get(3).getCurrency());
+        assertEquals(0, new BigDecimal("90.00").compareTo(results.get(3).getBalance()));
+        var balances = playerService.getBalance(player.getPlayerId()).getBalances();
+        assertEquals(0, new BigDecimal("90.00").compareTo(balances.get(walletProperties.getDefaultCurrency())));
+        assertEquals(0, new BigDecimal("25.00").compareTo(balances.get("USD")));
+        assertEquals(0, BigDecimal.ZERO.compareTo(balances.get("EUR")));
+    }
+
+    @Test
+    void testBonusIsTrackedOnEveryBet() {
+        trackBonus("atomic_bonus_player");
+    }
+
+    @Test
+    void testBonusIsTrackedOnEveryBet_Optimistic() {
+        walletProperties.setConcurrencyMode(ConcurrencyMode.OPTIMISTIC);
+        try {
+            trackBonus("optimistic_bonus_player");
+        } finally {
+            walletProperties.setConcurrencyMode(ConcurrencyMode.ATOMIC);
+        }
+    }
+
+    @Test
+    void testConcurrentRetriesWithSameIdempotencyKeyAreAppliedOnce() throws Exception {
+        // Given
+        var player = playerRepository.save(Player.builder().username("idempotent_player").balance(new BigDecimal("100.00")).build());
+        var request = new UpdateBalanceRequest(new BigDecimal("10.00"), TransactionType.WAGER, "idempotent-wager-1");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // When
+        List<Future<UpdateBalanceResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> playerService.updateBalance(player.getPlayerId(), request)));
+        }
+        var responses = new ArrayList<UpdateBalanceResponse>();
+        for (var future : futures) {
+            responses.add(future.get());
+        }
+        executor.shutdown();
+
+        // Then
+        assertTrue(responses.stream().allMatch(responses.get(0)::equals));
+        assertEquals(0, new BigDecimal("90.00").compareTo(playerRepository.findBalanceByPlayerId(player.getPlayerId()).orElseThrow()));
+        assertTrue(transactionRepository.findByIdempotencyKey("idempotent-wager-1").isPresent());
+    }
+
+    /**
+     * With the default 30 times wagering and cash spent first.
+     */
+    private void trackBonus(String username) {
+        // Given
+        var player = playerRepository.save(Player.builder().username(username).balance(new BigDecimal("100.00")).build());
+        var playerId = player.getPlayerId();
+
+        // When
+        playerService.grantBonus(playerId, new GrantBonusRequest(new BigDecimal("10.00"), username + "-grant"));
+        playerService.grantBonus(playerId, new GrantBonusRequest(new BigDecimal("10.00"), username + "-grant"));
+        playerService.updateBalance(playerId, new UpdateBalanceRequest(new BigDecimal("95.00"), TransactionType.WAGER));
+        var afterWager = playerService.getBonus(playerId);
+        playerService.updateBalances(List.of(new BatchUpdateBalanceRequest(playerId, new BigDecimal("15.00"), TransactionType.WIN)));
+        var afterWin = playerService.getBonus(playerId);
+        playerService.updateBalance(playerId, new UpdateBalanceRequest(new BigDecimal("70.00"), TransactionType.WIN));
+        for (int i = 0; i < 8; i++) {
+            playerService.updateBalance(playerId, new UpdateBalanceRequest(new BigDecimal("25.00"), TransactionType.WAGER));
+            playerService.updateBalance(playerId, new UpdateBalanceRequest(new BigDecimal("25.00"), TransactionType.WIN));
+        }
+        var beforeRelease = playerService.getBonus(playerId);
+        playerService.updateBalance(playerId, new UpdateBalanceRequest(new BigDecimal("5.00"), TransactionType.WAGER));
+        var released = playerService.getBonus(playerId);
+
+        // Then the grant was applied once, the wager spent cash first and the win was split by the bonus share
+        assertEquals(new BigDecimal("10.00"), afterWager.getBonusBalance());
+        assertEquals(new BigDecimal("5.00"), afterWager.getCashBalance());
+        assertEquals(new BigDecimal("300.00"), afterWager.getWageringRequired());
+        assertEquals(new BigDecimal("95.00"), afterWager.getWageringProgress());
+        assertEquals(new BigDecimal("20.00"), afterWin.getBonusBalance());
+        assertEquals(new BigDecimal("10.00"), afterWin.getCashBalance());
+        assertEquals(new BigDecimal("295.00"), beforeRelease.getWageringProgress());
+        assertTrue(beforeRelease.getBonusBalance().signum() > 0);
+        // 300.00 wagered in total, so the bonus is cash now
+        assertEquals(new BigDecimal("95.00"), released.getBalance());
+        assertEquals(new BigDecimal("95.00"), released.getCashBalance());
+        assertEquals(new BigDecimal("0.00"), released.getBonusBalance());
+        assertEquals(new BigDecimal("0.00"), released.getWageringRequired());
+        assertTrue(transactionRepository.findByIdempotencyKey(username + "-grant").isPresent());
+    }
+
+    private void hammerPlayerAndCompareWithLedger(String username) throws Exception {
+        hammerPlayerAndCompareWithLedger(username, walletProperties.getDefaultCurrency());
+    }
+
+    /**
+     * In another currency than the default one the player starts without a balance, the first wins open it
+     * while wagers are rejected, and the balance in the default currency must not move.
+     */
+    private void hammerPlayerAndCompareWithLedger(String username, String currency) throws Exception {
+        // Given
+        var defaultCurrency = walletProperties.isDefaultCurrency(currency);
+        var playerBalance = new BigDecimal("100.00");
+        var openingBalance = defaultCurrency ? playerBalance : BigDecimal.ZERO;
+        var player = playerRepository.save(Player.builder().username(username).balance(playerBalance).build());
+        var rejectedUpdates = new AtomicInteger();
+        var start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                var random = ThreadLocalRandom.current();
+                for (int j = 0; j < UPDATES_PER_THREAD; j++) {
+                    var request = UpdateBalanceRequest.builder()
+                            .amount(BigDecimal.valueOf(random.nextInt(1, 2000), 2))
+                            .transactionType(random.nextInt(3) == 0 ? TransactionType.WIN : TransactionType.WAGER)
+                            .currency(currency)
+                            .build();
+                    try {
+                        playerService.updateBalance(player.getPlayerId(), request);
+                    } catch (InsufficientBalanceException | ConcurrentBalanceUpdateException e) {
+                        rejectedUpdates.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Then
+        var ledger = transactionRepository.findAll().stream()
+                .filter(transaction -> transaction.getPlayer().getPlayerId().equals(player.getPlayerId()))
+                .filter(transaction -> currency.equals(transaction.getCurrency()))
+                .toList();
+        var ledgerBalance = ledger.stream()
+                .map(transaction -> TransactionType.WAGER.equals(transaction.getTransactionType())
+                        ? transaction.getAmount().negate()
+                        : transaction.getAmount())
+                .reduce(openingBalance, BigDecimal::add);
+        var finalBalance = defaultCurrency
+                ? playerRepository.findBalanceByPlayerId(player.getPlayerId()).orElseThrow()
+                : playerBalanceRepository.findById(new PlayerBalanceId(player.getPlayerId(), currency)).map(PlayerBalance::getBalance).orElse(BigDecimal.ZERO);
+
+        assertEquals(THREADS * UPDATES_PER_THREAD, ledger.size() + rejectedUpdates.get());
+        assertEquals(0, ledgerBalance.compareTo(finalBalance), "ledger " + ledgerBalance + " vs balance " + finalBalance);
+        assertTrue(finalBalance.signum() >= 0);
+        var balances = playerService.getBalance(player.getPlayerId()).getBalances();
+        assertEquals(0, finalBalance.compareTo(balances.get(currency)), "cached balance is stale");
+        if (!defaultCurrency) {
+            assertEquals(0, playerBalance.compareTo(balances.get(walletProperties.getDefaultCurrency())));
+        }
+    }
+}
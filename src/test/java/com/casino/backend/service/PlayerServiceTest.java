@@ -1,30 +1,72 @@
 package com.casino.backend.service;
 
 
+import com.casino.backend.bonus.BonusWallet;
+import com.casino.backend.cache.BalanceCache;
+import com.casino.backend.cache.IdempotencyCache;
+import com.casino.backend.cache.RecentTransactionsCache;
+import com.casino.backend.cache.UsernameCache;
+import com.casino.backend.concurrency.PlayerLockStripes;
+import com.casino.backend.config.HistoryProperties;
+import com.casino.backend.config.WalletProperties;
+import com.casino.backend.engine.WalletEngine;
 import com.casino.backend.entity.Player;
+import com.casino.backend.entity.PlayerBalance;
+import com.casino.backend.entity.PlayerBalanceId;
 import com.casino.backend.entity.Transaction;
+import com.casino.backend.enums.ConcurrencyMode;
 import com.casino.backend.enums.TransactionType;
+import com.casino.backend.exception.ConcurrentBalanceUpdateException;
+import com.casino.backend.exception.InsufficientBalanceException;
+import com.casino.backend.exception.InvalidTransactionException;
+import com.casino.backend.ledger.TransactionLedger;
+import com.casino.backend.metrics.WalletMetrics;
+import com.casino.backend.replica.ReplicaReads;
+import com.casino.backend.repository.PlayerBalanceRepository;
 import com.casino.backend.repository.PlayerRepository;
 import com.casino.backend.repository.TransactionRepository;
+import com.casino.backend.repository.TransactionRollupRepository;
+import com.casino.backend.request.BatchUpdateBalanceRequest;
 import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.shard.PlayerDirectory;
+import com.casino.backend.shard.ShardRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import static junit.framework.TestCase.assertEquals;
+import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -36,15 +78,85 @@ public class PlayerServiceTest {
     @Mock
     private PlayerRepository playerRepository;
 
+    @Mock
+    private PlayerBalanceRepository playerBalanceRepository;
+
     @Mock
     private TransactionRepository transactionRepository;
 
+    @Mock
+    private TransactionRollupRepository transactionRollupRepository;
+
+    @Spy
+    private PlayerLockStripes playerLocks = new PlayerLockStripes(new WalletProperties());
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Spy
+    private WalletProperties walletProperties = new WalletProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private WalletMetrics walletMetrics = new WalletMetrics(meterRegistry);
+
+    @Spy
+    private IdempotencyCache idempotencyCache = new IdempotencyCache(new WalletProperties());
+
+    @Mock
+    private TransactionLedger transactionLedger;
+
+    @Spy
+    private BalanceCache balanceCache = new BalanceCache(new WalletProperties());
+
+    @Spy
+    private HistoryProperties historyProperties = new HistoryProperties();
+
+    @Mock
+    private WalletEngine walletEngine;
+
+    @Spy
+    private BonusWallet bonusWallet = new BonusWallet(new WalletProperties());
+
+    @Spy
+    private RecentTransactionsCache recentTransactionsCache = new RecentTransactionsCache(new HistoryProperties());
+
+    @Mock
+    private UsernameCache usernameCache;
+
+    @Mock
+    private ReplicaReads replicaReads;
+
+    @Mock
+    private ShardRouter shardRouter;
+
+    @Mock
+    private PlayerDirectory playerDirectory;
+
     @Before
     public void setUp() {
         // Initialize the player repository and transaction repository
         Player player = Player.builder().playerId(1).username("test_user").balance(BigDecimal.valueOf(1000)).build();
-        when(playerRepository.findById(1)).thenReturn(Optional.of(player));
-        when(transactionRepository.save(any(Transaction.class))).thenReturn(new Transaction());
+        lenient().when(playerRepository.findById(1)).thenReturn(Optional.of(player));
+        // Simulate the guarded UPDATE: the wager is only applied when the balance covers it
+        lenient().when(playerRepository.debitBalance(eq(1), any(BigDecimal.class))).thenAnswer(invocation -> {
+            BigDecimal amount = invocation.getArgument(1);
+            if (player.getBalance().compareTo(amount) < 0) {
+                return 0;
+            }
+            player.setBalance(player.getBalance().subtract(amount));
+            return 1;
+        });
+        lenient().when(transactionLedger.record(any(Transaction.class))).thenReturn(new Transaction());
+        // Run reads inline, as they run without a replica
+        lenient().when(replicaReads.read(anyInt(), any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+        lenient().when(replicaReads.read(any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+        // Run player work inline, as it runs without shards
+        lenient().when(shardRouter.onShardOf(anyInt(), any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+        // Run the transaction callback inline, as the real template would inside a database transaction
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
     }
 
     @Test
@@ -76,4 +188,194 @@ public class PlayerServiceTest {
         var player = playerRepository.findById(1).orElseThrow();
         assertEquals(new BigDecimal("450.00"), player.getBalance());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testUpdateBalanceOptimistic_RetriesAfterVersionConflict() {
+        // Given
+        walletProperties.setConcurrencyMode(ConcurrencyMode.OPTIMISTIC);
+        walletProperties.getOptimistic().setInitialBackoff(Duration.ofMillis(1));
+        // Every attempt reads a fresh copy, as it would after the failed transaction was rolled back
+        when(playerRepository.findById(1)).thenAnswer(invocation -> Optional.of(
+                Player.builder().playerId(1).username("test_user").balance(BigDecimal.valueOf(1000)).build()));
+        when(playerRepository.save(any(Player.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Player.class, 1))
+                .then(returnsFirstArg());
+
+        // When
+        var response = playerService.updateBalance(1, UpdateBalanceRequest.builder()
+                .amount(BigDecimal.valueOf(100))
+                .transactionType(TransactionType.WIN)
+                .build());
+
+        // Then
+        assertEquals(new BigDecimal("1100.00"), response.getBalance());
+        verify(walletMetrics).optimisticConflict();
+        verify(walletMetrics).optimisticRetry();
+        verify(playerRepository, times(2)).save(any(Player.class));
+    }
+
+    @Test(expected = ConcurrentBalanceUpdateException.class)
+    public void testUpdateBalanceOptimistic_GivesUpAfterMaxAttempts() {
+        // Given
+        walletProperties.setConcurrencyMode(ConcurrencyMode.OPTIMISTIC);
+        walletProperties.getOptimistic().setInitialBackoff(Duration.ofMillis(1));
+        walletProperties.getOptimistic().setMaxAttempts(3);
+        when(playerRepository.save(any(Player.class))).thenThrow(new ObjectOptimisticLockingFailureException(Player.class, 1));
+
+        // When
+        playerService.updateBalance(1, UpdateBalanceRequest.builder()
+                .amount(BigDecimal.valueOf(100))
+                .transactionType(TransactionType.WIN)
+                .build());
+    }
+
+    @Test
+    public void testUpdateBalance_RecordsTimersAndRejections() {
+        // Given
+        when(playerRepository.existsById(1)).thenReturn(true);
+
+        // When
+        playerService.updateBalance(1, UpdateBalanceRequest.builder()
+                .amount(BigDecimal.valueOf(100))
+                .transactionType(TransactionType.WAGER)
+                .build());
+        assertThrows(InsufficientBalanceException.class, () -> playerService.updateBalance(1, UpdateBalanceRequest.builder()
+                .amount(BigDecimal.valueOf(5000))
+                .transactionType(TransactionType.WAGER)
+                .build()));
+
+        // Then
+        assertEquals(1L, meterRegistry.get("casino.wallet.updates").tags("type", "WAGER", "outcome", "success").timer().count());
+        assertEquals(1L, meterRegistry.get("casino.wallet.updates").tags("type", "WAGER", "outcome", "insufficient_balance").timer().count());
+        assertEquals(1.0, meterRegistry.get("casino.wallet.rejections").tag("reason", "insufficient_balance").counter().count());
+        assertEquals(2L, meterRegistry.get("casino.wallet.lock.wait").timer().count());
+        assertEquals(2L, meterRegistry.get("casino.wallet.db.operation").tag("operation", "balance_update").timer().count());
+        assertEquals(1L, meterRegistry.get("casino.wallet.db.operation").tag("operation", "ledger_write").timer().count());
+    }
+
+    @Test
+    public void testUpdateBalance_RejectsAmountsFinerThanACent() {
+        // When
+        var rejected = assertThrows(InvalidTransactionException.class, () -> playerService.updateBalance(1, UpdateBalanceRequest.builder()
+                .amount(new BigDecimal("10.005"))
+                .transactionType(TransactionType.WIN)
+                .build()));
+        playerService.updateBalance(1, UpdateBalanceRequest.builder()
+                .amount(new BigDecimal("10.500"))
+                .transactionType(TransactionType.WAGER)
+                .build());
+
+        // Then
+        assertEquals("The amount must not have more than 2 decimal places. Please enter a valid amount.", rejected.getMessage());
+        verify(playerRepository).debitBalance(1, new BigDecimal("10.500"));
+    }
+
+    @Test
+    public void testUpdateBalances_ReportsFailuresPerItem() {
+        // Given
+        var player = playerRepository.findById(1).orElseThrow();
+        when(playerRepository.findAllByIdForUpdate(anyCollection())).thenReturn(List.of(player));
+        when(transactionLedger.recordAll(anyList())).then(returnsFirstArg());
+        var requests = List.of(
+                new BatchUpdateBalanceRequest(1, BigDecimal.valueOf(100), TransactionType.WIN),
+                new BatchUpdateBalanceRequest(1, BigDecimal.valueOf(5000), TransactionType.WAGER),
+                new BatchUpdateBalanceRequest(2, BigDecimal.valueOf(10), TransactionType.WIN),
+                new BatchUpdateBalanceRequest(1, BigDecimal.valueOf(-1), TransactionType.WAGER),
+                new BatchUpdateBalanceRequest(1, BigDecimal.valueOf(600), TransactionType.WAGER));
+
+        // When
+        var results = playerService.updateBalances(requests);
+
+        // Then
+        assertEquals(5, results.size());
+        assertEquals(Integer.valueOf(200), results.get(0).getStatus());
+        assertEquals(new BigDecimal("1100.00"), results.get(0).getBalance());
+        assertEquals(Integer.valueOf(418), results.get(1).getStatus());
+        assertEquals(Integer.valueOf(400), results.get(2).getStatus());
+        assertEquals(Integer.valueOf(400), results.get(3).getStatus());
+        assertEquals(Integer.valueOf(200), results.get(4).getStatus());
+        assertEquals(new BigDecimal("500.00"), results.get(4).getBalance());
+        assertEquals(new BigDecimal("500.00"), player.getBalance());
+        verify(transactionLedger).recordAll(argThat(transactions -> ((List<?>) transactions).size() == 2));
+    }
+
+    @Test
+    public void testUpdateBalances_OptimisticBatchRecordsNoLockTimes() {
+        // Given
+        walletProperties.setConcurrencyMode(ConcurrencyMode.OPTIMISTIC);
+        var player = playerRepository.findById(1).orElseThrow();
+        when(playerRepository.findAllByIdForUpdate(anyCollection())).thenReturn(List.of(player));
+        when(transactionLedger.recordAll(anyList())).then(returnsFirstArg());
+
+        // When
+        playerService.updateBalances(List.of(new BatchUpdateBalanceRequest(1, BigDecimal.valueOf(100), TransactionType.WIN)));
+
+        // Then
+        verify(walletMetrics, never()).lockWaited(anyLong());
+        verify(walletMetrics, never()).lockHeld(anyLong());
+        assertEquals(new BigDecimal("1100.00"), player.getBalance());
+    }
+
+    @Test
+    public void testUpdateBalance_RetryWithSameIdempotencyKeyIsAppliedOnce() {
+        // Given
+        var request = new UpdateBalanceRequest(BigDecimal.valueOf(100), TransactionType.WAGER, "round-42-bet-1");
+
+        // When
+        var first = playerService.updateBalance(1, request);
+        var retry = playerService.updateBalance(1, request);
+
+        // Then
+        assertEquals(first, retry);
+        assertEquals(BigDecimal.valueOf(900), retry.getBalance());
+        verify(playerRepository, times(1)).debitBalance(eq(1), any(BigDecimal.class));
+        verify(transactionTemplate, times(1)).execute(any());
+    }
+
+    @Test
+    public void testGetBalance_IsServedFromCacheAfterUpdate() {
+        // Given
+        playerService.updateBalance(1, new UpdateBalanceRequest(BigDecimal.valueOf(100), TransactionType.WAGER));
+
+        // When
+        var first = playerService.getBalance(1);
+        var second = playerService.getBalance(1);
+
+        // Then
+        assertEquals(new BigDecimal("900.00"), first.getBalance());
+        assertEquals(new BigDecimal("900.00"), second.getBalance());
+        // Only the read back of the update touched the database
+        verify(playerRepository, times(1)).findById(1);
+    }
+
+    @Test
+    public void testUpdateBalance_MovesTheBalanceInTheRequestedCurrency() {
+        // Given
+        walletProperties.setCurrencies(List.of("USD"));
+        when(playerBalanceRepository.creditBalance(1, "USD", new BigDecimal("50.00"))).thenReturn(1);
+        when(playerBalanceRepository.findById(new PlayerBalanceId(1, "USD")))
+                .thenReturn(Optional.of(new PlayerBalance(1, "USD", new BigDecimal("50.00"), 0L, null)));
+
+        // When
+        var response = playerService.updateBalance(1, new UpdateBalanceRequest(new BigDecimal("50.00"), TransactionType.WIN, null, "USD"));
+
+        // Then
+        assertEquals("USD", response.getCurrency());
+        assertEquals(new BigDecimal("50.00"), response.getBalance());
+        verify(playerRepository, never()).creditBalance(any(), any());
+        verify(transactionLedger).record(argThat(transaction -> "USD".equals(transaction.getCurrency())));
+    }
+
+    @Test
+    public void testUpdateBalance_RejectsCurrenciesThatAreNotAccepted() {
+        // When
+        var rejected = assertThrows(InvalidTransactionException.class, () -> playerService.updateBalance(1,
+                new UpdateBalanceRequest(new BigDecimal("50.00"), TransactionType.WAGER, null, "GBP")));
+        var response = playerService.updateBalance(1, new UpdateBalanceRequest(new BigDecimal("50.00"), TransactionType.WAGER, null, "ZAR"));
+
+        // Then
+        assertEquals("The currency you provided is not supported. Please use one of ZAR.", rejected.getMessage());
+        assertEquals("ZAR", response.getCurrency());
+        verify(transactionTemplate, times(1)).execute(any());
+    }
+}
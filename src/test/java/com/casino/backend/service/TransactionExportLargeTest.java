@@ -0,0 +1,83 @@
+package com.casino.backend.service;
+
+import com.casino.backend.entity.Player;
+import com.casino.backend.repository.PlayerRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Exports a few million rows over HTTP in a JVM with a small heap (see the {@code large} Maven profile),
+ * which only succeeds if neither the database read nor the response is buffered in memory.
+ * The database is file based, an in-memory one would not fit in the heap. Run with {@code mvn test -Plarge}.
+ */
+@Tag("large")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/large-export/${random.uuid}",
+        "logging.level.com.casino.backend=WARN"
+})
+public class TransactionExportLargeTest {
+
+    private static final int ROWS = 3_000_000;
+    private static final int FIRST_ID = 100_000_000;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void testExportOfMillionsOfRowsRunsInConstantMemory() throws Exception {
+        // Given
+        var player = playerRepository.save(Player.builder().username("export_player").balance(new BigDecimal("100.00")).build());
+        jdbcTemplate.update("insert into transactions (transaction_id, player_id, amount, transaction_type, timestamp, balance_after) "
+                        + "select ? + x, ?, 1.00, 'WIN', dateadd('SECOND', x, timestamp '2020-01-01 00:00:00'), 100.00 + x "
+                        + "from system_range(1, ?)",
+                FIRST_ID, player.getPlayerId(), ROWS);
+
+        // When
+        var connection = (HttpURLConnection) URI.create("http://localhost:" + port
+                + "/casino/admin/player/" + player.getPlayerId() + "/transactions/export").toURL().openConnection();
+        long lines = 0;
+        String firstLine = null;
+        String lastLine = null;
+        try (var reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (firstLine == null) {
+                    firstLine = line;
+                }
+                lastLine = line;
+                lines++;
+            }
+        }
+
+        // Then
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("application/x-ndjson"));
+        assertEquals(ROWS, lines);
+        assertEquals(FIRST_ID + ROWS, objectMapper.readTree(firstLine).get("transactionId").asInt());
+        assertEquals(FIRST_ID + 1, objectMapper.readTree(lastLine).get("transactionId").asInt());
+        assertTrue(Runtime.getRuntime().maxMemory() < 128L * 1024 * 1024, "run with the large profile to limit the heap");
+    }
+}
@@ -0,0 +1,149 @@
+package com.casino.backend.service;
+
+import com.casino.backend.entity.Player;
+import com.casino.backend.entity.Transaction;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.exception.InvalidPageRequestException;
+import com.casino.backend.exception.PlayerUserNameNotFoundException;
+import com.casino.backend.repository.PlayerRepository;
+import com.casino.backend.repository.TransactionRepository;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.response.Last10TransactionResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Scrolls a player's history page by page on the real H2 database.
+ */
+@SpringBootTest
+public class TransactionHistoryTest {
+
+    @Autowired
+    private PlayerService playerService;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Test
+    void testCursorPagesCoverTheHistoryOnceNewestFirst() {
+        // Given 25 transactions, several sharing a timestamp so the ID has to break ties
+        var player = playerRepository.save(Player.builder().username("history_player").balance(new BigDecimal("100.00")).build());
+        var start = LocalDateTime.of(2024, 1, 1, 12, 0);
+        var transactions = new ArrayList<Transaction>();
+        for (int i = 0; i < 25; i++) {
+            transactions.add(Transaction.builder()
+                    .player(player)
+                    .amount(BigDecimal.valueOf(i + 1))
+                    .transactionType(TransactionType.WIN)
+                    .timestamp(start.plusMinutes(i / 3))
+                    .build());
+        }
+        transactionRepository.saveAll(transactions);
+
+        // When
+        var pages = new ArrayList<List<Last10TransactionResponse>>();
+        String cursor = null;
+        do {
+            var page = playerService.getTransactionHistory(player.getPlayerId(), 10, cursor);
+            pages.add(page.getTransactions());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        // Then
+        assertEquals(List.of(10, 10, 5), pages.stream().map(List::size).toList());
+        var scrolled = pages.stream().flatMap(List::stream).map(Last10TransactionResponse::getTransactionId).toList();
+        var expected = transactions.stream()
+                .sorted(Comparator.comparing(Transaction::getTimestamp).reversed().thenComparing(Transaction::getTransactionId))
+                .map(Transaction::getTransactionId)
+                .toList();
+        assertEquals(expected, scrolled);
+    }
+
+    @Test
+    void testLastPageHasNoCursor() {
+        // Given
+        var player = playerRepository.save(Player.builder().username("short_history_player").balance(new BigDecimal("100.00")).build());
+
+        // When
+        var page = playerService.getTransactionHistory(player.getPlayerId(), null, null);
+
+        // Then
+        assertEquals(0, page.getTransactions().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void testInvalidCursorAndPageSizeAreRejected() {
+        var player = playerRepository.save(Player.builder().username("invalid_cursor_player").balance(new BigDecimal("100.00")).build());
+
+        assertThrows(InvalidPageRequestException.class, () -> playerService.getTransactionHistory(player.getPlayerId(), 10, "not-a-cursor"));
+        assertThrows(InvalidPageRequestException.class, () -> playerService.getTransactionHistory(player.getPlayerId(), 0, null));
+    }
+
+    @Test
+    void testLast10TransactionsFollowUpdatesAfterTheFirstRead() {
+        // Given 12 transactions stored before the first read, and so not seen by the recent transactions cache
+        var player = playerRepository.save(Player.builder().username("recent_player").balance(new BigDecimal("100.00")).build());
+        var start = LocalDateTime.now().minusDays(1);
+        var transactions = new ArrayList<Transaction>();
+        for (int i = 0; i < 12; i++) {
+            transactions.add(Transaction.builder()
+                    .player(player)
+                    .amount(BigDecimal.valueOf(i + 1))
+                    .transactionType(TransactionType.WIN)
+                    .timestamp(start.plusMinutes(i / 3))
+                    .build());
+        }
+        transactionRepository.saveAll(transactions);
+        var firstRead = playerService.getLast10Transactions(player);
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            playerService.updateBalance(player.getPlayerId(), new UpdateBalanceRequest(new BigDecimal("5.00"), TransactionType.WAGER));
+        }
+        var secondRead = playerService.getLast10Transactions(player);
+
+        // Then both reads match the database
+        var expected = transactions.stream()
+                .sorted(Comparator.comparing(Transaction::getTimestamp).reversed().thenComparing(Transaction::getTransactionId))
+                .map(Transaction::getTransactionId)
+                .limit(10)
+                .toList();
+        assertEquals(expected, firstRead.stream().map(Last10TransactionResponse::getTransactionId).toList());
+        assertEquals(transactionRepository.findHistory(player.getPlayerId(), PageRequest.ofSize(10)).stream().map(Last10TransactionResponse::getTransactionId).toList(),
+                secondRead.stream().map(Last10TransactionResponse::getTransactionId).toList());
+    }
+
+    @Test
+    void testUsernameLookupFollowsCreationAndRename() {
+        // Given an unknown username, remembered as unknown
+        assertThrows(PlayerUserNameNotFoundException.class, () -> playerService.getPlayerByUsername("renamed_player"));
+        assertThrows(PlayerUserNameNotFoundException.class, () -> playerService.getPlayerByUsername("renamed_player"));
+
+        // When a player is created with it, and then renamed
+        var player = playerRepository.save(Player.builder().username("renamed_player").balance(new BigDecimal("100.00")).build());
+        var found = playerService.getPlayerByUsername("renamed_player");
+        player.setUsername("renamed_player_2");
+        playerRepository.save(player);
+
+        // Then
+        assertEquals(player.getPlayerId(), found.getPlayerId());
+        assertThrows(PlayerUserNameNotFoundException.class, () -> playerService.getPlayerByUsername("renamed_player"));
+        assertEquals(player.getPlayerId(), playerService.getPlayerByUsername("renamed_player_2").getPlayerId());
+    }
+}
@@ -0,0 +1,36 @@
+package com.casino.backend.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PlayerDirectoryTest {
+
+    @Test
+    void testNewShardSplitsTheUnusedPartOfTheRangeWithTheMostUnusedIds() {
+        // Given two shards whose ranges were assigned when there were two, shard 0 has used most of its own
+        var ranges = List.of(
+                new PlayerDirectory.IdRange(0, 1, 1_000_000_000),
+                new PlayerDirectory.IdRange(1, 1_073_741_824, 1_073_800_000));
+
+        // When
+        var start = PlayerDirectory.newRangeStart(ranges);
+
+        // Then the new range starts halfway between shard 1's next ID and the end of the ID space
+        assertEquals(1_610_641_824L, start);
+    }
+
+    @Test
+    void testNoNewRangeWhenEveryRangeIsUsedUp() {
+        // Given
+        var ranges = List.of(
+                new PlayerDirectory.IdRange(0, 1, 1_073_741_800),
+                new PlayerDirectory.IdRange(1, 1_073_741_824, Integer.MAX_VALUE - 10L));
+
+        // When / Then
+        assertThrows(IllegalStateException.class, () -> PlayerDirectory.newRangeStart(ranges));
+    }
+}
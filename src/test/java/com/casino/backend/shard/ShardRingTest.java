@@ -0,0 +1,48 @@
+package com.casino.backend.shard;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardRingTest {
+
+    private static final int PLAYERS = 100_000;
+
+    @Test
+    void testPlayersAreSpreadEvenly() {
+        // Given
+        var ring = new ShardRing(4, 256);
+
+        // When
+        var counts = new int[4];
+        for (int playerId = 1; playerId <= PLAYERS; playerId++) {
+            counts[ring.shardFor(playerId)]++;
+        }
+
+        // Then every shard holds close to a quarter of the players
+        for (var count : counts) {
+            assertTrue(Math.abs(count - PLAYERS / 4) < PLAYERS / 4 / 5, "players per shard: " + count);
+        }
+    }
+
+    @Test
+    void testAddingAShardOnlyMovesPlayersToIt() {
+        // Given
+        var before = new ShardRing(4, 256);
+        var after = new ShardRing(5, 256);
+
+        // When
+        var moved = 0;
+        for (int playerId = 1; playerId <= PLAYERS; playerId++) {
+            var shard = after.shardFor(playerId);
+            if (shard != before.shardFor(playerId)) {
+                assertEquals(4, shard);
+                moved++;
+            }
+        }
+
+        // Then about one player in five moves, all of them to the new shard
+        assertTrue(Math.abs(moved - PLAYERS / 5) < PLAYERS / 5 / 5, "moved players: " + moved);
+    }
+}
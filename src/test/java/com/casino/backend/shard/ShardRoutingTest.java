@@ -0,0 +1,155 @@
+package com.casino.backend.shard;
+
+import com.casino.backend.entity.Player;
+import com.casino.backend.enums.TransactionType;
+import com.casino.backend.request.BatchUpdateBalanceRequest;
+import com.casino.backend.request.UpdateBalanceRequest;
+import com.casino.backend.service.PlayerService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Shards players over three in-memory databases.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:shard_routing_test_0",
+        "casino.datasource.shards.urls=jdbc:h2:mem:shard_routing_test_1,jdbc:h2:mem:shard_routing_test_2"
+})
+public class ShardRoutingTest {
+
+    @Autowired
+    private PlayerService playerService;
+
+    @Autowired
+    private PlayerDirectory playerDirectory;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ShardRebalancer shardRebalancer;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testPlayersAndTheirTransactionsLiveOnTheirShard() {
+        // Given
+        var players = createPlayers("routed", 12);
+
+        // When
+        for (var player : players) {
+            playerService.updateBalance(player.getPlayerId(), new UpdateBalanceRequest(new BigDecimal("10.00"), TransactionType.WAGER));
+        }
+
+        // Then each player's rows are only on the shard the ring placed it on
+        var shardsUsed = new HashSet<Integer>();
+        for (var player : players) {
+            var shard = shardRouter.placementOf(player.getPlayerId());
+            shardsUsed.add(shard);
+            for (int other = 0; other < shardRouter.shardCount(); other++) {
+                var expected = other == shard ? 1 : 0;
+                assertEquals(expected, count(other, "players", player.getPlayerId()));
+                assertEquals(expected, count(other, "transactions", player.getPlayerId()));
+            }
+            assertEquals(0, new BigDecimal("90.00").compareTo(playerService.getBalance(player.getPlayerId()).getBalance()));
+            assertEquals(player.getPlayerId(), playerService.getPlayerByUsername(player.getUsername()).getPlayerId());
+        }
+        assertEquals(3, shardsUsed.size());
+    }
+
+    @Test
+    void testTransactionIdsAreUniqueAcrossShards() {
+        // Given
+        var players = createPlayers("unique", 12);
+
+        // When
+        var transactionIds = new HashSet<Integer>();
+        for (var player : players) {
+            transactionIds.add(playerService.updateBalance(player.getPlayerId(),
+                    new UpdateBalanceRequest(new BigDecimal("1.00"), TransactionType.WIN)).getTransactionId());
+        }
+
+        // Then
+        assertEquals(players.size(), transactionIds.size());
+        var firstTransactionIds = shardRouter.directory().queryForList("select first_transaction_id from shard_transaction_ids", Long.class);
+        assertEquals(shardRouter.shardCount(), new HashSet<>(firstTransactionIds).size());
+    }
+
+    @Test
+    void testBatchSettlesPlayersOnEveryShard() {
+        // Given
+        var players = createPlayers("batch", 12);
+        var requests = new ArrayList<BatchUpdateBalanceRequest>();
+        for (var player : players) {
+            requests.add(new BatchUpdateBalanceRequest(player.getPlayerId(), new BigDecimal("25.00"), TransactionType.WIN));
+        }
+        requests.add(new BatchUpdateBalanceRequest(Integer.MAX_VALUE - 1, new BigDecimal("25.00"), TransactionType.WIN));
+
+        // When
+        var results = playerService.updateBalances(requests);
+
+        // Then every item is answered in request order, the unknown player is rejected
+        for (int i = 0; i < players.size(); i++) {
+            assertEquals(players.get(i).getPlayerId(), results.get(i).getPlayerId());
+            assertEquals(200, results.get(i).getStatus());
+            assertEquals(0, new BigDecimal("125.00").compareTo(results.get(i).getBalance()));
+        }
+        assertEquals(400, results.get(players.size()).getStatus());
+    }
+
+    @Test
+    void testMovedPlayerKeepsItsBalanceAndHistory() {
+        // Given
+        var player = createPlayers("moved", 1).get(0);
+        var playerId = player.getPlayerId();
+        for (int i = 0; i < 5; i++) {
+            playerService.updateBalance(playerId, new UpdateBalanceRequest(new BigDecimal("10.00"), TransactionType.WAGER));
+        }
+        playerService.updateBalance(playerId, new UpdateBalanceRequest(new BigDecimal("5.00"), TransactionType.WIN, null, "USD"));
+        var source = shardRouter.shardOf(playerId);
+        var target = (source + 1) % shardRouter.shardCount();
+
+        // When
+        shardRebalancer.move(playerId, target);
+        playerService.updateBalance(playerId, new UpdateBalanceRequest(new BigDecimal("1.00"), TransactionType.WIN));
+
+        // Then the rows left the source, and the player carries on on the target
+        assertEquals(target, shardRouter.shardOf(playerId));
+        assertEquals(0, count(source, "players", playerId));
+        assertEquals(0, count(source, "transactions", playerId));
+        assertEquals(7, count(target, "transactions", playerId));
+        var balance = playerService.getBalance(playerId);
+        assertEquals(0, new BigDecimal("51.00").compareTo(balance.getBalance()));
+        assertEquals(0, new BigDecimal("5.00").compareTo(balance.getBalances().get("USD")));
+        assertEquals(7, playerService.getTransactionHistory(playerId, 50, null).getTransactions().size());
+
+        // And rebalancing puts it back where the ring places it
+        assertTrue(shardRebalancer.rebalance() >= 1);
+        assertEquals(shardRouter.placementOf(playerId), shardRouter.shardOf(playerId));
+        assertEquals(7, playerService.getTransactionHistory(playerId, 50, null).getTransactions().size());
+    }
+
+    private List<Player> createPlayers(String prefix, int count) {
+        var players = new ArrayList<Player>();
+        for (int i = 0; i < count; i++) {
+            players.add(playerDirectory.create(Player.builder().username(prefix + "_" + i).balance(new BigDecimal("100.00")).build()));
+        }
+        return players;
+    }
+
+    private int count(int shard, String table, int playerId) {
+        return shardRouter.onShard(shard, () ->
+                jdbcTemplate.queryForObject("select count(*) from " + table + " where player_id = ?", Integer.class, playerId));
+    }
+}